@@ -2,19 +2,22 @@ package net.jr.codegen.java;
 
 import net.jr.lexer.Lexer;
 import net.jr.lexer.Terminal;
+import net.jr.lexer.automaton.Automaton;
 import net.jr.lexer.automaton.State;
 import net.jr.lexer.automaton.Transition;
 import net.jr.lexer.impl.CharConstraint;
-import net.jr.lexer.impl.MergingLexerStreamImpl;
+import net.jr.lexer.impl.LexerAutomata;
+import net.jr.lexer.impl.TerminalImpl;
 import net.jr.parser.Grammar;
 import net.jr.test.Assert;
 import net.jr.text.IndentPrintWriter;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
 
 public class ParserGenerator {
 
@@ -37,9 +40,11 @@ public class ParserGenerator {
     }
 
     private void withFile(String filename, FileCallback cb) {
-        IndentPrintWriter pw = new IndentPrintWriter(new PrintWriter(System.out));
-        cb.withWriter(pw);
-        pw.flush();
+        try (IndentPrintWriter pw = new IndentPrintWriter(new PrintWriter(Files.newBufferedWriter(dest.resolve(filename))))) {
+            cb.withWriter(pw);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     public void generateTokenTypes() {
@@ -62,13 +67,32 @@ public class ParserGenerator {
     }
 
     public void generateLexer(Lexer lexer) {
-        MergingLexerStreamImpl lexerStream = (MergingLexerStreamImpl) lexer.iterator(new StringReader(""));
+        //the generated lexer has no keywords table : all the literals must be part of the automaton. The automata are built
+        //apart, as the lexer may be compiled or shared
+        List<Automaton> automatons = lexer.getTokenTypes().stream()
+                .map(t -> ((TerminalImpl) t).getAutomaton())
+                .collect(Collectors.toList());
+        State<Character> initialState = LexerAutomata.forAutomatons(automatons, false).getMergedInitialState();
 
         withFile("Lexer.java", (pw) -> {
             pw.println("package " + packageName + ";");
             pw.println("public class Lexer {");
             pw.indent();
-            makeTransitions(pw, lexerStream.getInitialState());
+            //the states that are reachable from the initial state, each one once
+            Set<State<Character>> seen = new HashSet<>();
+            Deque<State<Character>> todo = new ArrayDeque<>();
+            seen.add(initialState);
+            todo.add(initialState);
+            while (!todo.isEmpty()) {
+                State<Character> state = todo.poll();
+                pw.println("// lexer_state_" + state.getId() + (state.getTerminal() == null ? "" : " : " + state.getTerminal()));
+                makeTransitions(pw, state);
+                for (Transition<Character> transition : state.getOutgoingTransitions()) {
+                    if (seen.add(transition.getNextState())) {
+                        todo.add(transition.getNextState());
+                    }
+                }
+            }
             pw.deindent();
             pw.println("}");
         });
@@ -87,7 +111,6 @@ public class ParserGenerator {
             pw.println(") {");
             pw.indent();
             pw.println("return lexer_state_" + transition.getNextState().getId() + ";");
-            pw.println("// " + state.getTerminal());
             pw.deindent();
             pw.println("}");
             n++;
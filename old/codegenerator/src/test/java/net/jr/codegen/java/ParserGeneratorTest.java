@@ -1,10 +1,14 @@
 package net.jr.codegen.java;
 
 import net.jr.grammar.c.CGrammar;
+import net.jr.lexer.Lexer;
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 
 public class ParserGeneratorTest {
 
@@ -18,4 +22,19 @@ public class ParserGeneratorTest {
 
     }
 
+    @Test
+    public void testCompiledLexer() throws IOException {
+        CGrammar grammar = new CGrammar();
+        Lexer lexer = grammar.getLexer().compile();
+        Path dest = Files.createTempDirectory("test");
+        ParserGenerator generator = new ParserGenerator(grammar, dest, "com.test");
+        generator.generateLexer(lexer);
+        Assert.assertTrue(lexer.isKeywordsLookup());
+        //the keywords are found by the generated lexer, that has no lookup table : they must have their own states
+        String code = new String(Files.readAllBytes(dest.resolve("Lexer.java")), StandardCharsets.UTF_8);
+        for (String keyword : new String[]{"while", "typedef", "return"}) {
+            Assert.assertTrue(keyword, code.contains(" : " + keyword + System.lineSeparator()));
+        }
+    }
+
 }
@@ -0,0 +1,121 @@
+package net.jr.collection;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.RandomAccess;
+
+/**
+ * A list whose items are kept in an array with a gap, that is moved to the place where items are added or removed : a change
+ * costs the number of items it adds or removes, plus the distance between it and the previous change. This suits the lists that
+ * are changed around the same place many times, like the tokens of a text that is being edited.
+ *
+ * @param <E> type of the items
+ */
+public class GapList<E> extends AbstractList<E> implements RandomAccess {
+
+    private Object[] items = new Object[16];
+
+    private int gapStart;
+
+    private int gapEnd = items.length;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        checkIndex(index, size());
+        return (E) items[index < gapStart ? index : index - gapStart + gapEnd];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set(int index, E item) {
+        checkIndex(index, size());
+        int i = index < gapStart ? index : index - gapStart + gapEnd;
+        E old = (E) items[i];
+        items[i] = item;
+        return old;
+    }
+
+    @Override
+    public int size() {
+        return items.length - gapEnd + gapStart;
+    }
+
+    @Override
+    public void add(int index, E item) {
+        checkIndex(index, size() + 1);
+        moveGap(index);
+        ensureGap(1);
+        items[gapStart++] = item;
+        modCount++;
+    }
+
+    @Override
+    public E remove(int index) {
+        E old = get(index);
+        replace(index, index + 1, Collections.emptyList());
+        return old;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        replace(fromIndex, toIndex, Collections.emptyList());
+    }
+
+    /**
+     * Replaces some items by other ones.
+     *
+     * @param fromIndex index of the first item to remove
+     * @param toIndex   index just after the last item to remove
+     * @param newItems  the items that are inserted in their place
+     */
+    public void replace(int fromIndex, int toIndex, Collection<? extends E> newItems) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException(String.format("fromIndex=%d, toIndex=%d, size=%d", fromIndex, toIndex, size()));
+        }
+        moveGap(fromIndex);
+        int removed = toIndex - fromIndex;
+        Arrays.fill(items, gapEnd, gapEnd + removed, null);
+        gapEnd += removed;
+        ensureGap(newItems.size());
+        for (E item : newItems) {
+            items[gapStart++] = item;
+        }
+        modCount++;
+    }
+
+    private void moveGap(int index) {
+        if (index < gapStart) {
+            int n = gapStart - index;
+            System.arraycopy(items, index, items, gapEnd - n, n);
+            Arrays.fill(items, index, Math.min(gapStart, gapEnd - n), null);
+            gapStart = index;
+            gapEnd -= n;
+        } else if (index > gapStart) {
+            int n = index - gapStart;
+            System.arraycopy(items, gapEnd, items, gapStart, n);
+            Arrays.fill(items, Math.max(gapEnd, index), gapEnd + n, null);
+            gapStart = index;
+            gapEnd += n;
+        }
+    }
+
+    private void ensureGap(int n) {
+        if (gapEnd - gapStart < n) {
+            int tail = items.length - gapEnd;
+            Object[] array = new Object[Math.max(items.length * 2, size() + n)];
+            System.arraycopy(items, 0, array, 0, gapStart);
+            System.arraycopy(items, gapEnd, array, array.length - tail, tail);
+            gapEnd = array.length - tail;
+            items = array;
+        }
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
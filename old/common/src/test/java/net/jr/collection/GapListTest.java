@@ -0,0 +1,40 @@
+package net.jr.collection;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class GapListTest {
+
+    @Test
+    public void testSameAsArrayList() {
+        Random random = new Random(7);
+        List<Integer> expected = new ArrayList<>();
+        GapList<Integer> list = new GapList<>();
+        for (int n = 0; n < 2000; n++) {
+            int from = random.nextInt(expected.size() + 1);
+            int to = Math.min(expected.size(), from + random.nextInt(4));
+            List<Integer> items = new ArrayList<>();
+            for (int i = random.nextInt(5); i > 0; i--) {
+                items.add(n * 10 + i);
+            }
+            expected.subList(from, to).clear();
+            expected.addAll(from, items);
+            list.replace(from, to, items);
+            Assert.assertEquals(expected, list);
+        }
+        list.add(3, -1);
+        list.remove(0);
+        list.set(1, -2);
+        expected.add(3, -1);
+        expected.remove(0);
+        expected.set(1, -2);
+        Assert.assertEquals(expected, list);
+        list.subList(2, 10).clear();
+        expected.subList(2, 10).clear();
+        Assert.assertEquals(expected, list);
+    }
+}
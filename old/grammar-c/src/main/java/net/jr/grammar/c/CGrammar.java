@@ -1,12 +1,9 @@
 package net.jr.grammar.c;
 
-import net.jr.common.Symbol;
 import net.jr.lexer.*;
 import net.jr.parser.Grammar;
 import net.jr.parser.NonTerminal;
-import net.jr.parser.Parser;
 import net.jr.parser.ast.AstNode;
-import net.jr.parser.impl.LRParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -184,6 +181,10 @@ public class CGrammar extends Grammar {
         addRule(Declaration, DeclarationSpecifiers, InitDeclaratorList, Tokens.DotComma).withAction(parsingContext -> {
 
             AstNode astNode = parsingContext.getAstNode();
+            if (astNode == null) {
+                //no tree is built (see Parser#parse(Reader, Reducer, ParseOptions)), unless the reducer makes one
+                return;
+            }
             AstNode storageClass = astNode.getChildOfType(DeclarationSpecifiers).getChildOfType(StorageClassSpecifier);
 
             //when the declaration is a typedef
@@ -199,8 +200,10 @@ public class CGrammar extends Grammar {
 
                     //update lexer context
                     LexerStream lexerStream = parsingContext.getLexerStream();
-                    LexerHack lh = (LexerHack) lexerStream.getLexer().getTokenListener();
-                    lh.addTypeName(name);
+                    TokenListener tokenListener = lexerStream.getTokenListener();
+                    if (tokenListener instanceof LexerHack) {
+                        ((LexerHack) tokenListener).addTypeName(name);
+                    }
                 }
             }
 
@@ -366,7 +369,8 @@ public class CGrammar extends Grammar {
         lexer.setFilteredOut(Lexemes.lineComment("//").withName("lineComment"));
         lexer.setFilteredOut(Lexemes.whitespace());
         lexer.setFilteredOut(Lexemes.newLine());
-        lexer.setTokenListener(new LexerHack());
+        //each stream knows its own type names
+        lexer.setTokenListenerFactory(LexerHack::new);
 
     }
 
@@ -392,11 +396,12 @@ public class CGrammar extends Grammar {
         }
     }
 
+    /**
+     * @return the lexer of the C language, that filters out the comments and the spaces, and tracks the type names
+     */
     @Override
-    public Parser createParser(Symbol targetSymbol, boolean useCache) {
-        LRParser parser = (LRParser) super.createParser(targetSymbol, useCache);
-        parser.setLexer(lexer);
-        return parser;
+    public Lexer getLexer() {
+        return lexer;
     }
 
     public static final class Tokens {
@@ -1,6 +1,10 @@
 package net.jr.grammar.c;
 
 import net.jr.lexer.Token;
+import net.jr.parser.ParseOptions;
+import net.jr.parser.Parser;
+import net.jr.parser.ast.AstNode;
+import net.jr.parser.ast.CompactAstNodeFactory;
 import org.junit.Assert;
 import org.junit.Test;
 import org.reflections.Reflections;
@@ -9,6 +13,7 @@ import org.reflections.scanners.ResourcesScanner;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
@@ -30,6 +35,28 @@ public class CFilesTest {
     }
 
 
+    @Test
+    public void testCompactTree() {
+        Parser parser = new CGrammar().createParser();
+        getResources().stream().sorted().forEach(rsc -> {
+            AstNode expected = parser.parse(new InputStreamReader(CFilesTest.class.getClassLoader().getResourceAsStream(rsc)));
+            CompactAstNodeFactory factory = new CompactAstNodeFactory();
+            AstNode actual = parser.parse(new InputStreamReader(CFilesTest.class.getClassLoader().getResourceAsStream(rsc)),
+                    ParseOptions.defaults().withAstNodeFactory(factory));
+            Iterator<AstNode> itExpected = expected.preOrderIterator();
+            Iterator<AstNode> itActual = actual.preOrderIterator();
+            while (itExpected.hasNext()) {
+                AstNode e = itExpected.next();
+                AstNode a = itActual.next();
+                Assert.assertEquals(rsc, e.getSymbol(), a.getSymbol());
+                Assert.assertSame(rsc, e.getRule(), a.getRule());
+                Assert.assertEquals(rsc, e.getChildren().size(), a.getChildren().size());
+            }
+            Assert.assertFalse(itActual.hasNext());
+            Assert.assertEquals(rsc, expected.repr(), actual.repr());
+        });
+    }
+
     @Test
     public void testParser() throws IOException {
         Reader reader = new InputStreamReader(CFilesTest.class.getClassLoader().getResourceAsStream("7_arrays.c"));
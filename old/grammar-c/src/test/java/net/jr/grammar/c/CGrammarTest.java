@@ -6,17 +6,22 @@ import net.jr.lexer.Lexer;
 import net.jr.lexer.LexicalError;
 import net.jr.lexer.Token;
 import net.jr.parser.ParseError;
+import net.jr.parser.ParseOptions;
 import net.jr.parser.Parser;
 import net.jr.parser.ast.AstNode;
 import net.jr.parser.ast.VisitorHelper;
 import net.jr.parser.ast.annotations.After;
+import net.jr.parser.impl.GLRParser;
+import net.jr.parser.impl.ParseForest;
 import net.jr.test.TestUtil;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -99,6 +104,23 @@ public class CGrammarTest {
         Assert.assertEquals(grammar.getTargetSymbol(), ast.getSymbol());
     }
 
+    @Test
+    public void testGLRParser() {
+        CGrammar grammar = new CGrammar();
+        GLRParser glrParser = grammar.createGLRParser();
+        Parser parser = grammar.createParser(useCache);
+        for (String rsc : Arrays.asList("1_basic.c", "2_atoi.c", "5_nestedloops.c", "7_arrays.c")) {
+            AstNode expected = parser.parse(new InputStreamReader(CGrammarTest.class.getClassLoader().getResourceAsStream(rsc)));
+            ParseForest forest = glrParser.parseForest(new InputStreamReader(CGrammarTest.class.getClassLoader().getResourceAsStream(rsc)), ParseOptions.defaults());
+            Assert.assertEquals(expected.repr(), forest.getRoot().repr());
+        }
+
+        //the 'dangling else' : the else may belong to any of the ifs
+        ParseForest forest = glrParser.parseForest("int main() { if(a) if(b) f(); else g(); }");
+        Assert.assertTrue(forest.isAmbiguous());
+        Assert.assertFalse(glrParser.parseForest("int main() { if(a) { if(b) f(); } else g(); }").isAmbiguous());
+    }
+
     @Test
     public void testTypedef() {
         CGrammar grammar = new CGrammar();
@@ -106,6 +128,19 @@ public class CGrammarTest {
         parser.parse("typedef unsigned int size_t, *ptr_size_t; ptr_size_t pointer = 0;");
     }
 
+    @Test
+    public void testTypedefIsLocalToParse() {
+        Parser parser = new CGrammar().createParser(useCache).compile();
+        parser.parse("typedef unsigned int size_t; size_t n = 0;");
+        try {
+            //size_t was defined by another parse
+            parser.parse("size_t n = 0;");
+            Assert.fail();
+        } catch (ParseError e) {
+            //expected
+        }
+    }
+
     @Test
     public void testFunc() {
         AstNode root = new CGrammar().createParser(useCache).parse("int recursivefactorial(int n) { return n==0||n==1?1: n * fibo(n-1); }");
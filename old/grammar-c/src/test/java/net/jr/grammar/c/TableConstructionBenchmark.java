@@ -0,0 +1,47 @@
+package net.jr.grammar.c;
+
+import net.jr.parser.TableConstruction;
+import net.jr.parser.impl.ActionTable;
+import net.jr.parser.impl.ActionTableCaching;
+import net.jr.test.TestUtil;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Builds the tables of the C grammar with each construction, and reports their size and build time.
+ * <p>
+ * This is not run with the other tests : use <code>mvn test -Dtest=TableConstructionBenchmark</code>.
+ * </p>
+ */
+public class TableConstructionBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    @BeforeClass
+    public static void setupClass() {
+        TestUtil.configureLogging();
+    }
+
+    @Test
+    public void benchmark() {
+        boolean cacheEnabled = ActionTableCaching.isEnabled();
+        ActionTableCaching.setEnabled(false);
+        try {
+            for (TableConstruction construction : TableConstruction.values()) {
+                CGrammar grammar = new CGrammar();
+                grammar.setTableConstruction(construction);
+                ActionTable table = null;
+                long best = Long.MAX_VALUE;
+                for (int i = 0; i < ROUNDS; i++) {
+                    long start = System.nanoTime();
+                    table = grammar.getActionTable();
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                System.out.println(String.format("%-12s : %5d states, %7d ints, built in %d ms",
+                        construction, table.getStatesCount(), table.getCompressedSize(), best / 1000000));
+            }
+        } finally {
+            ActionTableCaching.setEnabled(cacheEnabled);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package net.jr.grammar.c;
+
+import net.jr.parser.Parser;
+import net.jr.parser.TableConstruction;
+import net.jr.parser.impl.ActionTable;
+import net.jr.parser.impl.ActionTableCaching;
+import net.jr.parser.impl.LRParser;
+import net.jr.test.TestUtil;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the tables of the C grammar with each construction, and checks that they recognize the same language.
+ *
+ * @see TableConstructionBenchmark
+ */
+public class TableConstructionTest {
+
+    private static final List<String> RESOURCES = Arrays.asList("1_basic.c", "2_atoi.c", "3_carmack.c", "4_duffdevice.c",
+            "5_nestedloops.c", "6_fn_ptr.c", "7_arrays.c");
+
+    private static final Map<TableConstruction, ActionTable> tables = new EnumMap<>(TableConstruction.class);
+
+    private static final Map<TableConstruction, Parser> parsers = new EnumMap<>(TableConstruction.class);
+
+    private static boolean cacheEnabled;
+
+    @BeforeClass
+    public static void setupClass() {
+        TestUtil.configureLogging();
+        cacheEnabled = ActionTableCaching.isEnabled();
+        //each table is really built, once
+        ActionTableCaching.setEnabled(false);
+        for (TableConstruction construction : TableConstruction.values()) {
+            CGrammar grammar = new CGrammar();
+            grammar.setTableConstruction(construction);
+            ActionTable table = grammar.getActionTable();
+            tables.put(construction, table);
+            parsers.put(construction, new LRParser(grammar, grammar.getLexer(), table));
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        ActionTableCaching.setEnabled(cacheEnabled);
+    }
+
+    @Test
+    public void testStatesCount() {
+        int lalr1 = tables.get(TableConstruction.Lalr1).getStatesCount();
+        int canonicalLr1 = tables.get(TableConstruction.CanonicalLr1).getStatesCount();
+        int minimalLr1 = tables.get(TableConstruction.MinimalLr1).getStatesCount();
+        Assert.assertTrue(canonicalLr1 > lalr1);
+        Assert.assertTrue(minimalLr1 < canonicalLr1);
+        Assert.assertTrue(minimalLr1 >= lalr1);
+    }
+
+    @Test
+    public void testSameTrees() {
+        Parser expectedParser = parsers.get(TableConstruction.Lalr1);
+        for (TableConstruction construction : TableConstruction.values()) {
+            Parser parser = parsers.get(construction);
+            for (String rsc : RESOURCES) {
+                String expected = expectedParser.parse(new InputStreamReader(TableConstructionTest.class.getClassLoader().getResourceAsStream(rsc))).repr();
+                String actual = parser.parse(new InputStreamReader(TableConstructionTest.class.getClassLoader().getResourceAsStream(rsc))).repr();
+                Assert.assertEquals(construction + " " + rsc, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testParse() {
+        String code = "int main(int argc, char **argv) { for (int i = 0; i < argc; i++) { puts(argv[i]); } return 0; }";
+        for (TableConstruction construction : TableConstruction.values()) {
+            Parser parser = parsers.get(construction);
+            Assert.assertEquals(construction.toString(), code.replaceAll("\\s", ""), parser.parse(code).repr().replaceAll("\\s", ""));
+        }
+    }
+}
@@ -60,7 +60,7 @@ public class Transition implements net.jr.lexer.automaton.Transition<Character>
 
     @Override
     public boolean isValid(Character c) {
-        return charConstraint.apply(c);
+        return charConstraint.test(c);
     }
 
     @Override
@@ -0,0 +1,234 @@
+package net.jr.lexer;
+
+import net.jr.collection.GapList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The tokens of a text, that are kept up to date when the text is edited.
+ * <p>
+ * The {@link LexerState state} of the lexer after each token is recorded. When the text is edited, the lexing is resumed from
+ * the last state that did not read any changed char, and it stops as soon as the new tokens are the same as the old ones
+ * again, so that only the tokens around the edit are read again.
+ * </p>
+ * <p>
+ * The text must not change behind the back of this object : each version of the text should be a new (immutable) char
+ * sequence, as the tokens that are kept are backed by the text they were read from. A stateful {@link TokenListener} only sees
+ * the tokens that are read again, and starts from a new state each time.
+ * </p>
+ * <p>
+ * (Implementation note) : an edit does not touch the tokens that follow it. The line index is patched with the edit, and the
+ * tokens are moved the next time they are used (see {@link LineIndex#beginEdit(TextEdit, CharSequence)}) : when the new text
+ * cannot be lexed, they are left unchanged. The states are kept
+ * relative to the offset of their token, so that they follow it, and both lists are {@link GapList gap lists}, so that
+ * replacing the tokens around an edit does not shift the ones after it.
+ * </p>
+ */
+public class LexedText {
+
+    private final Lexer lexer;
+
+    private CharSequence text;
+
+    private final LineIndex lineIndex;
+
+    private final GapList<Token> tokens = new GapList<>();
+
+    /**
+     * the state of the lexer after each token, relative to the offset of the token
+     */
+    private final GapList<LexerState> states = new GapList<>();
+
+    /**
+     * @param lexer the lexer
+     * @param text  the initial text
+     */
+    public LexedText(Lexer lexer, CharSequence text) {
+        this.lexer = lexer;
+        this.text = text;
+        this.lineIndex = LineIndex.forText(text);
+        LexerStream stream = lexer.iterator(text, lineIndex, 0);
+        while (stream.hasNext()) {
+            Token token = stream.next();
+            tokens.add(token);
+            states.add(relative(stream.getState(), token));
+            if (token.getTokenType().equals(Lexemes.eof())) {
+                break;
+            }
+        }
+    }
+
+    public Lexer getLexer() {
+        return lexer;
+    }
+
+    public CharSequence getText() {
+        return text;
+    }
+
+    public LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    /**
+     * @return the tokens of the text, including the final eof token
+     */
+    public List<Token> getTokens() {
+        return Collections.unmodifiableList(tokens);
+    }
+
+    /**
+     * @param index index of a token
+     * @return the state of the lexer just after the token
+     */
+    public LexerState getState(int index) {
+        return states.get(index).moveBy(tokens.get(index).getOffset());
+    }
+
+    private static LexerState relative(LexerState state, Token token) {
+        return state.moveBy(-token.getOffset());
+    }
+
+    /**
+     * Same as {@link #edit(CharSequence, TextEdit)}, for several edits that were applied one after the other.
+     *
+     * @param newText the text after the edits
+     * @param edits   the edits, in the order they were applied
+     * @return the tokens that were replaced
+     */
+    public Change edit(CharSequence newText, List<TextEdit> edits) {
+        return edit(newText, TextEdit.merge(edits));
+    }
+
+    /**
+     * Updates the tokens after the text has been edited.
+     *
+     * @param newText the text after the edit
+     * @param edit    the edit
+     * @return the tokens that were replaced
+     */
+    public Change edit(CharSequence newText, TextEdit edit) {
+        int first = getRestartIndex(edit);
+        LexerState restart = first == 0 ? new LexerState(0, 0) : getState(first - 1);
+        //the old tokens that may be kept : they begin after the edit
+        int kept = indexOf(edit.getOldEnd(), first);
+        int delta = edit.getDelta();
+        //the old tokens are moved once the new ones are read
+        lineIndex.beginEdit(edit, newText);
+        int resync = tokens.size();
+        List<Token> newTokens = new ArrayList<>();
+        List<LexerState> newStates = new ArrayList<>();
+        try {
+            LexerStream stream = lexer.iterator(newText, lineIndex, restart);
+            while (stream.hasNext()) {
+                Token token = stream.next();
+                if (token.getTokenType().equals(Lexemes.eof())) {
+                    newTokens.add(token);
+                    newStates.add(relative(stream.getState(), token));
+                    break;
+                }
+                //a token that begins after the edit, at the same place than an old token : the lexer is at the same point
+                //as before, and all the following tokens are the same
+                if (token.getOffset() >= edit.getNewEnd()) {
+                    int j = indexOf(token.getOffset() - delta, kept);
+                    if (j < tokens.size() && tokens.get(j).getOffset() + delta == token.getOffset()
+                            && tokens.get(j).getTokenType().equals(token.getTokenType())) {
+                        resync = j;
+                        break;
+                    }
+                }
+                newTokens.add(token);
+                newStates.add(relative(stream.getState(), token));
+            }
+        } catch (RuntimeException e) {
+            lineIndex.cancelEdit();
+            throw e;
+        }
+        lineIndex.commitEdit();
+
+        int removedCount = resync - first;
+        tokens.replace(first, resync, newTokens);
+        states.replace(first, resync, newStates);
+        this.text = newText;
+        return new Change(first, removedCount, newTokens);
+    }
+
+    /**
+     * @return the number of tokens at the beginning of the text that are not changed by the edit
+     */
+    private int getRestartIndex(TextEdit edit) {
+        //the reach of the states never decreases
+        int lo = 0, hi = states.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getState(mid).isValidAfter(edit)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return the index of the first token (from some index) that begins at or after an offset, or the number of tokens
+     */
+    private int indexOf(int offset, int from) {
+        int lo = from, hi = tokens.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tokens.get(mid).getOffset() < offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * The tokens that were replaced after an edit.
+     */
+    public static final class Change {
+
+        private final int index;
+
+        private final int removedCount;
+
+        private final List<Token> insertedTokens;
+
+        Change(int index, int removedCount, List<Token> insertedTokens) {
+            this.index = index;
+            this.removedCount = removedCount;
+            this.insertedTokens = Collections.unmodifiableList(insertedTokens);
+        }
+
+        /**
+         * @return the index of the first token that was replaced
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the number of old tokens that were removed
+         */
+        public int getRemovedCount() {
+            return removedCount;
+        }
+
+        /**
+         * @return the new tokens, that were inserted in their place
+         */
+        public List<Token> getInsertedTokens() {
+            return insertedTokens;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Change(index=%d, removed=%d, inserted=%d)", index, removedCount, insertedTokens.size());
+        }
+    }
+}
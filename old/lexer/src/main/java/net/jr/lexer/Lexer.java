@@ -3,19 +3,25 @@ package net.jr.lexer;
 import net.jr.common.Symbol;
 import net.jr.lexer.automaton.Automaton;
 import net.jr.lexer.basicterminals.Word;
-import net.jr.lexer.impl.MergingLexerStreamImpl;
-import net.jr.lexer.impl.TerminalImpl;
+import net.jr.lexer.impl.*;
 
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * {@link Lexer} reference all the valid Terminal that can be scanned, and can produce tokens by analyzing input text, searching
  * for matches in the list of the referenced Lexemes.
+ * <p>
+ * A lexer is configured by calling its setters, and then may be {@link #compile() compiled} into an immutable copy that can be
+ * used by any number of threads at the same time. The lexer never changes its terminals, that may be shared with other lexers
+ * and grammars.
+ * </p>
  */
 public class Lexer {
 
@@ -25,9 +31,24 @@ public class Lexer {
 
     private TokenListener tokenListener = t -> t;
 
-    private int maxId = 0;
+    private Supplier<? extends TokenListener> tokenListenerFactory;
+
+    private LexerAlgorithm algorithm = LexerAlgorithm.Merged;
+
+    private boolean keywordsLookup = true;
+
+    /**
+     * built on first use, and shared by all the streams
+     */
+    private LexerAutomata automata;
+
+    /**
+     * true for the lexers returned by {@link #compile()}
+     */
+    private final boolean compiled;
 
     private <L extends Symbol> Lexer(Collection<L> tokenTypes) {
+        compiled = false;
         automatons = new ArrayList<>(tokenTypes.size());
         for (Symbol tokenType : tokenTypes) {
 
@@ -36,7 +57,6 @@ public class Lexer {
             }
 
             if (!tokenType.equals(Lexemes.eof())) {
-                tokenType.setId(maxId++);
                 Automaton a = ((TerminalImpl) tokenType).getAutomaton();
                 automatons.add(a);
             }
@@ -44,6 +64,23 @@ public class Lexer {
 
     }
 
+    private Lexer(Lexer lexer) {
+        compiled = true;
+        automatons = Collections.unmodifiableList(new ArrayList<>(lexer.automatons));
+        filteredOut = Collections.unmodifiableSet(new HashSet<>(lexer.filteredOut));
+        tokenListener = lexer.tokenListener;
+        tokenListenerFactory = lexer.tokenListenerFactory;
+        algorithm = lexer.algorithm;
+        keywordsLookup = lexer.keywordsLookup;
+        automata = lexer.getAutomata();
+        //build the automaton now, rather than in the first stream
+        if (algorithm == LexerAlgorithm.Dfa) {
+            automata.getDfa();
+        } else {
+            automata.getMergedInitialState();
+        }
+    }
+
     /**
      * Creates a new {@link Lexer} that can recognize the passed Lexemes
      *
@@ -74,6 +111,34 @@ public class Lexer {
         return automatons.stream().map(a -> a.getTokenType()).collect(Collectors.toList());
     }
 
+    /**
+     * Makes an immutable copy of this lexer. The automatons are built once for all, and all the setters of the copy
+     * throw an {@link IllegalStateException}, so it can be shared by any number of threads. The priorities of the terminals
+     * should not be changed afterwards.
+     * <p>
+     * A {@link TokenListener} that holds some state should be given using {@link #setTokenListenerFactory(Supplier)}
+     * (or by calling {@link #iterator(Reader, TokenListener)}), so that each stream gets its own.
+     * </p>
+     *
+     * @return the compiled lexer (this lexer if it is already compiled)
+     */
+    public Lexer compile() {
+        return compiled ? this : new Lexer(this);
+    }
+
+    /**
+     * @return true if this lexer was returned by {@link #compile()}
+     */
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    private void checkNotCompiled() {
+        if (compiled) {
+            throw new IllegalStateException("This lexer is compiled, and cannot be modified");
+        }
+    }
+
     /**
      * gets the associated {@link TokenListener}.
      * <p>
@@ -86,12 +151,96 @@ public class Lexer {
     }
 
     /**
-     * associates a {@link TokenListener} with this {@link Lexer}
+     * associates a {@link TokenListener} with this {@link Lexer}. The same listener is used by all the streams.
      *
      * @param tokenListener
      */
     public void setTokenListener(TokenListener tokenListener) {
+        checkNotCompiled();
         this.tokenListener = tokenListener;
+        this.tokenListenerFactory = null;
+    }
+
+    /**
+     * Makes each stream use a new {@link TokenListener}, given by a factory. This is the way to go for the listeners that
+     * hold some state, as the state of a stream cannot leak in another one.
+     *
+     * @param tokenListenerFactory
+     */
+    public void setTokenListenerFactory(Supplier<? extends TokenListener> tokenListenerFactory) {
+        checkNotCompiled();
+        this.tokenListenerFactory = tokenListenerFactory;
+        this.tokenListener = null;
+    }
+
+    /**
+     * @return the listener for a new stream
+     */
+    private TokenListener newTokenListener() {
+        TokenListener listener = tokenListenerFactory == null ? tokenListener : tokenListenerFactory.get();
+        return listener == null ? t -> t : listener;
+    }
+
+    /**
+     * gets the algorithm used for token recognition.
+     *
+     * @return
+     */
+    public LexerAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Selects the algorithm used for token recognition ({@link LexerAlgorithm#Merged} by default).
+     *
+     * @param algorithm
+     */
+    public void setAlgorithm(LexerAlgorithm algorithm) {
+        if (algorithm == null) {
+            throw new IllegalArgumentException();
+        }
+        checkNotCompiled();
+        this.algorithm = algorithm;
+    }
+
+    public boolean isKeywordsLookup() {
+        return keywordsLookup;
+    }
+
+    /**
+     * When enabled (the default), the {@link net.jr.lexer.basicterminals.Literal}s that are also matched by an identifier
+     * terminal are not part of the automaton, but are found by looking up the text of the identifiers in a table.
+     *
+     * @param keywordsLookup
+     * @see Keywords
+     */
+    public void setKeywordsLookup(boolean keywordsLookup) {
+        checkNotCompiled();
+        this.keywordsLookup = keywordsLookup;
+        this.automata = null;
+    }
+
+    /**
+     * The keywords that are resolved after an identifier is matched.
+     *
+     * @return
+     */
+    public Keywords getKeywords() {
+        return getAutomata().getKeywords();
+    }
+
+    /**
+     * The automata used by the streams of this lexer. They are built once, and then shared, unless the lexer is changed (or
+     * the priority of one of its terminals, for a lexer that is not compiled).
+     *
+     * @return
+     */
+    public LexerAutomata getAutomata() {
+        LexerAutomata a = automata;
+        if (a == null || (!compiled && !a.isUpToDate())) {
+            automata = a = LexerAutomata.forAutomatons(automatons, keywordsLookup);
+        }
+        return a;
     }
 
     /**
@@ -153,16 +302,119 @@ public class Lexer {
      * @return
      */
     public LexerStream iterator(final Reader reader) {
-        List<Automaton> clonedAutomatons = new ArrayList<>(automatons.size());
-        try {
-            for (Automaton a : automatons) {
-                clonedAutomatons.add((Automaton) a.clone());
-            }
-        } catch (CloneNotSupportedException e) {
-            throw new RuntimeException(e);
+        return iterator(new ReaderCharSource(reader), newTokenListener());
+    }
+
+    /**
+     * builds a {@link LexerStream} that uses a particular {@link TokenListener}, instead of the one of this lexer.
+     *
+     * @param reader
+     * @param tokenListener
+     * @return
+     */
+    public LexerStream iterator(final Reader reader, TokenListener tokenListener) {
+        return iterator(new ReaderCharSource(reader), tokenListener == null ? t -> t : tokenListener);
+    }
+
+    /**
+     * builds a {@link LexerStream} for an input whose tokens are handled as soon as they are read, and then forgotten : the
+     * stream only keeps the chars (and the lines) of the current token, so the memory that it uses does not depend on the size
+     * of the input. The texts of the tokens are copies, and their positions are computed when they are read.
+     *
+     * @param reader
+     * @param tokenListener a particular {@link TokenListener}, or null for the one of this lexer
+     * @return
+     */
+    public LexerStream streamingIterator(final Reader reader, TokenListener tokenListener) {
+        return iterator(new ReaderCharSource(reader, true), tokenListener == null ? newTokenListener() : tokenListener);
+    }
+
+    /**
+     * builds a {@link LexerStream} that reads a file. The file is memory-mapped, and decoded as UTF-8.
+     * <p>
+     * The offsets of the tokens are expressed in bytes, while the columns of their positions are counted in chars (as when the
+     * file is read with a {@link Reader}).
+     * </p>
+     *
+     * @param path path of an UTF-8 (or ASCII) file
+     * @return
+     * @throws IOException if the file cannot be mapped
+     */
+    public LexerStream iterator(Path path) throws IOException {
+        return iterator(new MappedCharSource(path), newTokenListener());
+    }
+
+    /**
+     * same as {@link #iterator(Path)}, with a particular {@link TokenListener}.
+     *
+     * @param path
+     * @param tokenListener
+     * @return
+     * @throws IOException if the file cannot be mapped
+     */
+    public LexerStream iterator(Path path, TokenListener tokenListener) throws IOException {
+        return iterator(new MappedCharSource(path), tokenListener == null ? t -> t : tokenListener);
+    }
+
+    /**
+     * same as {@link #iterator(Path, TokenListener)}, for a file that uses some charset (see
+     * {@link MappedCharSource#open(Path, Charset)}).
+     *
+     * @param path
+     * @param charset       the charset of the file
+     * @param tokenListener a particular {@link TokenListener}, or null for the one of this lexer
+     * @return
+     * @throws IOException if the file cannot be mapped
+     */
+    public LexerStream iterator(Path path, Charset charset, TokenListener tokenListener) throws IOException {
+        return iterator(MappedCharSource.open(path, charset), tokenListener == null ? newTokenListener() : tokenListener);
+    }
+
+    /**
+     * builds a {@link LexerStream} that reads a text from some offset, that must be the beginning of a token (or the end of the
+     * previous one). The offsets of the tokens are offsets in the whole text.
+     *
+     * @param text      the whole text
+     * @param lineIndex the line index of the text (see {@link LineIndex#forText(CharSequence)})
+     * @param offset    offset of the first char to read
+     * @return
+     */
+    public LexerStream iterator(CharSequence text, LineIndex lineIndex, int offset) {
+        return iterator(new CharSequenceCharSource(text, lineIndex, offset), newTokenListener());
+    }
+
+    /**
+     * same as {@link #iterator(CharSequence, LineIndex, int)}, with a particular {@link TokenListener}.
+     *
+     * @param text
+     * @param lineIndex
+     * @param offset
+     * @param tokenListener
+     * @return
+     */
+    public LexerStream iterator(CharSequence text, LineIndex lineIndex, int offset, TokenListener tokenListener) {
+        return iterator(new CharSequenceCharSource(text, lineIndex, offset), tokenListener == null ? t -> t : tokenListener);
+    }
+
+    /**
+     * Resumes the lexing of a text from a state that was recorded by a stream (see {@link LexerStream#getState()}). The text may
+     * have been edited since, as long as the state is still {@link LexerState#isValidAfter(TextEdit) valid}.
+     *
+     * @param text      the whole text
+     * @param lineIndex the line index of the text
+     * @param state     the state to resume from
+     * @return
+     */
+    public LexerStream iterator(CharSequence text, LineIndex lineIndex, LexerState state) {
+        return iterator(text, lineIndex, state.getOffset());
+    }
+
+    private LexerStream iterator(CharSource charSource, TokenListener listener) {
+        LexerAutomata automata = getAutomata();
+        if (algorithm == LexerAlgorithm.Dfa) {
+            return new DfaLexerStreamImpl(this, automata.getDfa(), listener, charSource);
         }
-        Function<Token, Token> listener = tokenListener == null ? t -> t : t -> tokenListener.onNewToken(t);
-        return new MergingLexerStreamImpl(this, clonedAutomatons, listener, reader);
+        return new MergingLexerStreamImpl(this, automata.getMergedInitialState(), listener, charSource);
     }
 
     public Set<Terminal> getFilteredOut() {
@@ -179,6 +431,7 @@ public class Lexer {
         if (tokenType == null) {
             throw new IllegalArgumentException();
         }
+        checkNotCompiled();
 
         if (tokenType.equals(Lexemes.eof())) {
             filteredOut.add(tokenType);
@@ -192,10 +445,10 @@ public class Lexer {
             }
         }
 
-        tokenType.setId(maxId++);
         Automaton added = ((TerminalImpl) tokenType).getAutomaton();
         automatons.add(added);
         filteredOut.add(tokenType);
+        automata = null;
 
         return this;
     }
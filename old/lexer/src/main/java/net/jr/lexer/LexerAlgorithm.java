@@ -2,5 +2,10 @@ package net.jr.lexer;
 
 public enum LexerAlgorithm {
     Basic,
-    Merged
+    Merged,
+
+    /**
+     * Same rules as {@link #Merged}, using a determinized automaton (a single active state at any time)
+     */
+    Dfa
 }
@@ -0,0 +1,84 @@
+package net.jr.lexer;
+
+/**
+ * The state of a {@link LexerStream} between two tokens.
+ * <p>
+ * At a token boundary the automaton of the stream is back in its initial state, and no candidate token is pending, so the
+ * stream is fully described by the offset it reads from. The state also records how far the stream had to read ahead to find
+ * the tokens before the boundary : as long as an edit of the text does not change any char before that point, the lexing can
+ * be resumed from the boundary (see {@link Lexer#iterator(CharSequence, LineIndex, LexerState)}).
+ * </p>
+ * <p>
+ * The state of the {@link TokenListener} is not part of the snapshot.
+ * </p>
+ */
+public final class LexerState {
+
+    private final int offset;
+
+    private final int reach;
+
+    /**
+     * @param offset the offset of the next char to read
+     * @param reach  the offset just after the last char that was read to find the previous tokens
+     */
+    public LexerState(int offset, int reach) {
+        if (offset < 0 || reach < offset) {
+            throw new IllegalArgumentException(String.format("offset=%d, reach=%d", offset, reach));
+        }
+        this.offset = offset;
+        this.reach = reach;
+    }
+
+    /**
+     * @return the offset of the next char to read, I.e. the end of the previous token
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the offset just after the last char that was read to find the tokens before this state (reading the end of the
+     * input counts as reading the char at the end of the text)
+     */
+    public int getReach() {
+        return reach;
+    }
+
+    /**
+     * Tells whether the lexing can be resumed from this state once a text is edited.
+     *
+     * @param edit an edit of the text
+     * @return true if the edit only changes chars that were not read to reach this state
+     */
+    public boolean isValidAfter(TextEdit edit) {
+        return reach <= edit.getOffset();
+    }
+
+    /**
+     * @param delta how much the chars that follow an edit are moved
+     * @return the same state, for a text where some chars have been inserted or removed before the state
+     */
+    public LexerState moveBy(int delta) {
+        return delta == 0 ? this : new LexerState(offset + delta, reach + delta);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || !obj.getClass().equals(LexerState.class)) {
+            return false;
+        }
+        LexerState o = (LexerState) obj;
+        return offset == o.offset && reach == o.reach;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * offset + reach;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LexerState(offset=%d, reach=%d)", offset, reach);
+    }
+}
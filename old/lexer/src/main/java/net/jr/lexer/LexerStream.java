@@ -6,6 +6,19 @@ public interface LexerStream extends PushbackIterator<Token> {
 
     Lexer getLexer();
 
+    /**
+     * @return the listener that receives the tokens of this stream (it may be specific to this stream, see {@link Lexer#setTokenListenerFactory})
+     */
+    TokenListener getTokenListener();
+
+    /**
+     * The state of the stream just after the last token returned by {@link #next()} (or before the first one). The tokens that
+     * are {@link #pushback(Token) pushed back} do not change it.
+     *
+     * @return the state, from which the lexing can be resumed
+     */
+    LexerState getState();
+
     @Override
     void pushback(Token item);
 
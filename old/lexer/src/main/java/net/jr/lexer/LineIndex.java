@@ -0,0 +1,307 @@
+package net.jr.lexer;
+
+import net.jr.common.Position;
+
+/**
+ * Offsets of the beginning of each line of a source, so that the {@link Position} of a char can be computed from its offset
+ * only when it is needed.
+ * <p>
+ * Lines are numbered from 1, and so are columns.
+ * </p>
+ * <p>
+ * When a source is read only once, the lines that are before the current token can be {@link #release(int) released}, so that
+ * the index does not grow with the size of the source.
+ * </p>
+ * <p>
+ * When a text is {@link #edit(TextEdit, CharSequence) edited}, only the lines of the edit are scanned again. The offsets are
+ * kept in a gap buffer, whose gap follows the edits : the offsets after the gap are relative to a shift that is changed by each
+ * edit, so that an edit costs its own size plus the number of lines between it and the previous one. Each edit also makes a new
+ * version of the text, so that the tokens that were read from the previous versions are moved the next time they are used
+ * (see {@link Token#getOffset()}).
+ * </p>
+ */
+public class LineIndex {
+
+    /**
+     * the beginning of the lines that are kept, from the line {@link #firstLine} : the ones before {@link #gapStart} are
+     * offsets, and the ones from {@link #gapEnd} are offsets minus {@link #shift}
+     */
+    private int[] lineStarts = new int[64];
+
+    private int gapStart = 1;
+
+    private int gapEnd = lineStarts.length;
+
+    private int shift;
+
+    private int linesCount = 1;
+
+    private int firstLine = 1;
+
+    private String filename = Position.UNKNOWN_FILENAME;
+
+    private Version version = new Version();
+
+    /**
+     * the edit that was begun and not committed yet, see {@link #beginEdit(TextEdit, CharSequence)}
+     */
+    private TextEdit pendingEdit;
+
+    private Version previousVersion;
+
+    private int[] removedStarts;
+
+    private int insertedCount;
+
+    /**
+     * A version of the text : the offsets that were read in a version are moved by the edits that lead to the current one.
+     */
+    static final class Version {
+
+        /**
+         * the edit that gives the next version, and the next version (null for the current one)
+         */
+        TextEdit edit;
+
+        Version next;
+
+        /**
+         * @param offset an offset in this version
+         * @return the offset in the next version. The offsets of the chars that are changed by the edit are kept.
+         */
+        int moveToNext(int offset) {
+            return offset >= edit.getOldEnd() ? offset + edit.getDelta() : offset;
+        }
+    }
+
+    public LineIndex() {
+    }
+
+    public LineIndex(String filename) {
+        this.filename = filename;
+    }
+
+    /**
+     * @param text a whole text
+     * @return the line index of the text
+     */
+    public static LineIndex forText(CharSequence text) {
+        LineIndex lineIndex = new LineIndex();
+        for (int i = 0, length = text.length(); i < length; i++) {
+            if (text.charAt(i) == '\n') {
+                lineIndex.addLineStart(i + 1);
+            }
+        }
+        return lineIndex;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * @return the current version of the text
+     */
+    Version getVersion() {
+        return version;
+    }
+
+    private int keptCount() {
+        return gapStart + lineStarts.length - gapEnd;
+    }
+
+    private int get(int i) {
+        return i < gapStart ? lineStarts[i] : lineStarts[i - gapStart + gapEnd] + shift;
+    }
+
+    private void moveGap(int index) {
+        while (gapStart > index) {
+            lineStarts[--gapEnd] = lineStarts[--gapStart] - shift;
+        }
+        while (gapStart < index) {
+            lineStarts[gapStart++] = lineStarts[gapEnd++] + shift;
+        }
+    }
+
+    private void ensureGap() {
+        if (gapStart == gapEnd) {
+            int[] array = new int[lineStarts.length * 2];
+            System.arraycopy(lineStarts, 0, array, 0, gapStart);
+            int tail = lineStarts.length - gapEnd;
+            System.arraycopy(lineStarts, gapEnd, array, array.length - tail, tail);
+            gapEnd = array.length - tail;
+            lineStarts = array;
+        }
+    }
+
+    /**
+     * Records that a new line begins at some offset. Lines must be added in ascending order.
+     *
+     * @param offset offset of the first char of the line (I.e. the offset just after the '\n')
+     */
+    public void addLineStart(int offset) {
+        moveGap(keptCount());
+        ensureGap();
+        lineStarts[gapStart++] = offset;
+        linesCount++;
+    }
+
+    /**
+     * Forgets the beginning of the lines that are before the line of some offset : the positions of the offsets before this
+     * line cannot be computed anymore.
+     *
+     * @param offset an offset in the source
+     */
+    public void release(int offset) {
+        int line = getLine(offset);
+        int dropped = line - firstLine;
+        if (dropped > 0) {
+            moveGap(keptCount());
+            System.arraycopy(lineStarts, dropped, lineStarts, 0, gapStart - dropped);
+            gapStart -= dropped;
+            firstLine = line;
+        }
+    }
+
+    /**
+     * Updates the index after a change of the text : same as {@link #beginEdit(TextEdit, CharSequence)} followed by
+     * {@link #commitEdit()}.
+     *
+     * @param edit    the change
+     * @param newText the text after the change
+     */
+    public void edit(TextEdit edit, CharSequence newText) {
+        beginEdit(edit, newText);
+        commitEdit();
+    }
+
+    /**
+     * Updates the index after a change of the text, so that it gives the positions in the new text. The tokens that are made
+     * from now on belong to the new version of the text, but the old tokens are only moved once the edit is
+     * {@link #commitEdit() committed} : until then, they keep their old offsets (and their positions should not be computed).
+     * A pending edit can be {@link #cancelEdit() cancelled} instead.
+     *
+     * @param edit    the change
+     * @param newText the text after the change
+     */
+    public void beginEdit(TextEdit edit, CharSequence newText) {
+        if (pendingEdit != null) {
+            throw new IllegalStateException("An edit is pending");
+        }
+        //the lines that begin after the edit start, or inside it
+        moveGap(getLine(edit.getOffset()) - firstLine + 1);
+        int removed = 0;
+        while (gapEnd + removed < lineStarts.length && lineStarts[gapEnd + removed] + shift <= edit.getOldEnd()) {
+            removed++;
+        }
+        removedStarts = new int[removed];
+        for (int i = 0; i < removed; i++) {
+            removedStarts[i] = lineStarts[gapEnd++] + shift;
+        }
+        shift += edit.getDelta();
+        insertedCount = 0;
+        for (int i = edit.getOffset(), end = edit.getNewEnd(); i < end; i++) {
+            if (newText.charAt(i) == '\n') {
+                ensureGap();
+                lineStarts[gapStart++] = i + 1;
+                insertedCount++;
+            }
+        }
+        linesCount += insertedCount - removed;
+        pendingEdit = edit;
+        previousVersion = version;
+        version = new Version();
+    }
+
+    /**
+     * Moves the tokens of the previous versions of the text by the pending edit.
+     */
+    public void commitEdit() {
+        if (pendingEdit == null) {
+            throw new IllegalStateException("No pending edit");
+        }
+        previousVersion.edit = pendingEdit;
+        previousVersion.next = version;
+        pendingEdit = null;
+        previousVersion = null;
+        removedStarts = null;
+    }
+
+    /**
+     * Gives back the index of the text before the pending edit : the tokens that were made since it was begun are lost.
+     */
+    public void cancelEdit() {
+        if (pendingEdit == null) {
+            throw new IllegalStateException("No pending edit");
+        }
+        gapStart -= insertedCount;
+        shift -= pendingEdit.getDelta();
+        for (int i = removedStarts.length - 1; i >= 0; i--) {
+            lineStarts[--gapEnd] = removedStarts[i] - shift;
+        }
+        linesCount += removedStarts.length - insertedCount;
+        version = previousVersion;
+        pendingEdit = null;
+        previousVersion = null;
+        removedStarts = null;
+    }
+
+    public int getLinesCount() {
+        return linesCount;
+    }
+
+    /**
+     * @param offset an offset in the source
+     * @return the number of the line that contains this offset
+     */
+    public int getLine(int offset) {
+        //the last line that starts at or before the offset
+        int lo = 0, hi = keptCount();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (get(mid) <= offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo == 0) {
+            throw new IllegalArgumentException(String.format("The line of offset %d has been released", offset));
+        }
+        return firstLine + lo - 1;
+    }
+
+    /**
+     * @param line a line number
+     * @return The offset of the first char of this line
+     */
+    public int getLineStart(int line) {
+        if (line < firstLine) {
+            throw new IllegalArgumentException(String.format("Line %d has been released", line));
+        }
+        if (line > linesCount) {
+            throw new IndexOutOfBoundsException(Integer.toString(line));
+        }
+        return get(line - firstLine);
+    }
+    /**
+     * @param offset an offset in the source
+     * @return the corresponding position
+     */
+    public Position getPosition(int offset) {
+        int line = getLine(offset);
+        return new Position(line, getColumn(line, offset), filename);
+    }
+
+    /**
+     * The column of an offset, counted in chars. The offsets of a source are char indexes by default : a source whose
+     * offsets are not (like a file that is read as bytes) overrides this method.
+     *
+     * @param line   the line of the offset
+     * @param offset an offset in the source
+     * @return the column of the offset
+     */
+    protected int getColumn(int line, int offset) {
+        return offset - getLineStart(line) + 1;
+    }
+}
@@ -22,6 +22,15 @@ public interface Terminal extends Symbol {
 
     void setName(String name);
 
+    /**
+     * When all the tokens of this type have the same text (keywords, punctuation...), this text can be shared by all of them.
+     *
+     * @return the text of all the tokens of this type, or null
+     */
+    default String getConstantText() {
+        return null;
+    }
+
     default Terminal withName(String name) {
         setName(name);
         return this;
@@ -0,0 +1,107 @@
+package net.jr.lexer;
+
+import java.util.List;
+
+/**
+ * A change of a text : some chars are replaced by other ones.
+ * <p>
+ * When several edits are applied one after the other, the offset of each edit is an offset in the text that is given by the
+ * previous ones (see {@link #merge(List)}).
+ * </p>
+ */
+public final class TextEdit {
+
+    private final int offset;
+
+    private final int removedLength;
+
+    private final int insertedLength;
+
+    /**
+     * @param offset         offset of the first char that is changed
+     * @param removedLength  number of chars that are removed
+     * @param insertedLength number of chars that are inserted in their place
+     */
+    public TextEdit(int offset, int removedLength, int insertedLength) {
+        if (offset < 0 || removedLength < 0 || insertedLength < 0) {
+            throw new IllegalArgumentException(String.format("offset=%d, removed=%d, inserted=%d", offset, removedLength, insertedLength));
+        }
+        this.offset = offset;
+        this.removedLength = removedLength;
+        this.insertedLength = insertedLength;
+    }
+
+    public static TextEdit insert(int offset, String text) {
+        return new TextEdit(offset, 0, text.length());
+    }
+
+    public static TextEdit delete(int offset, int length) {
+        return new TextEdit(offset, length, 0);
+    }
+
+    public static TextEdit replace(int offset, int length, String text) {
+        return new TextEdit(offset, length, text.length());
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getRemovedLength() {
+        return removedLength;
+    }
+
+    public int getInsertedLength() {
+        return insertedLength;
+    }
+
+    /**
+     * @return the offset of the first char after the edit, in the text before the edit
+     */
+    public int getOldEnd() {
+        return offset + removedLength;
+    }
+
+    /**
+     * @return the offset of the first char after the edit, in the text after the edit
+     */
+    public int getNewEnd() {
+        return offset + insertedLength;
+    }
+
+    /**
+     * @return how much the chars that follow the edit are moved
+     */
+    public int getDelta() {
+        return insertedLength - removedLength;
+    }
+
+    /**
+     * Gives a single edit that has the same effect as several edits, applied one after the other : it replaces all the chars that
+     * are changed by any of them (and the unchanged chars between them).
+     *
+     * @param edits the edits, in the order they are applied
+     * @return the edit that covers all of them
+     */
+    public static TextEdit merge(List<TextEdit> edits) {
+        if (edits.isEmpty()) {
+            throw new IllegalArgumentException("no edit");
+        }
+        TextEdit first = edits.get(0);
+        //the changed part, in the current text : the chars before it have not moved, the ones after it have moved by delta
+        int start = first.getOffset();
+        int end = first.getNewEnd();
+        int delta = first.getDelta();
+        for (TextEdit edit : edits.subList(1, edits.size())) {
+            start = Math.min(start, edit.getOffset());
+            end = Math.max(end, edit.getOldEnd()) + edit.getDelta();
+            delta += edit.getDelta();
+        }
+        return new TextEdit(start, end - delta - start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TextEdit(offset=%d, removed=%d, inserted=%d)", offset, removedLength, insertedLength);
+    }
+}
@@ -11,21 +11,61 @@ public class Token {
 
     private Position position;
 
+    private int offset = -1;
+
+    private LineIndex lineIndex;
+
+    /**
+     * the version of the text that the offset refers to
+     */
+    private LineIndex.Version version;
+
     private String matchedText;
 
+    private CharSequence text;
+
     public Token(Terminal tokenType, Position position, String matchedText) {
         this.tokenType = tokenType;
         this.position = position;
         this.matchedText = matchedText;
     }
 
+    /**
+     * Creates a token whose position is computed from its offset, the first time {@link #getPosition()} is called. The token
+     * belongs to the current version of the text, and is moved by the edits that are recorded in the line index from now on.
+     *
+     * @param tokenType   the type of the token
+     * @param offset      offset of the first char of the token
+     * @param lineIndex   the line index of the source
+     * @param text        the matched text, that is only converted to a String when {@link #getText()} is called
+     */
+    public Token(Terminal tokenType, int offset, LineIndex lineIndex, CharSequence text) {
+        this.tokenType = tokenType;
+        this.offset = offset;
+        this.lineIndex = lineIndex;
+        this.version = lineIndex == null ? null : lineIndex.getVersion();
+        this.text = text;
+    }
+
     /**
      * @return The matched text
      */
     public String getText() {
+        if (matchedText == null && text != null) {
+            matchedText = text.toString();
+        }
         return matchedText;
     }
 
+    /**
+     * Same as {@link #getText()}, without copying the text when it is still backed by the input buffer.
+     *
+     * @return The matched text
+     */
+    public CharSequence getTextSequence() {
+        return text == null ? matchedText : text;
+    }
+
     /**
      * @return the type of this token
      */
@@ -39,15 +79,50 @@ public class Token {
      * @return
      */
     public Position getPosition() {
+        if (lineIndex != null) {
+            int offset = getOffset();
+            if (position == null) {
+                position = lineIndex.getPosition(offset);
+            }
+        }
         return position;
     }
 
+    /**
+     * The offset of this token in the original stream, if known. When the text has been edited since the token was read
+     * (see {@link LineIndex#edit(TextEdit, CharSequence)}), this is its offset in the current text.
+     *
+     * @return the offset, or -1
+     */
+    public int getOffset() {
+        if (version != null && version.next != null) {
+            LineIndex.Version v = version;
+            int o = offset;
+            do {
+                o = v.moveToNext(o);
+                v = v.next;
+            } while (v.next != null);
+            offset = o;
+            version = v;
+            //the lines before it may have changed
+            position = null;
+        }
+        return offset;
+    }
+
+    /**
+     * @return the line index of the text of this token, or null if it was made with a position
+     */
+    public LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
     public void setPosition(Position position) {
         this.position = position;
     }
 
     @Override
     public String toString() {
-        return tokenType.toString() + "@" + position.toString();
+        return tokenType.toString() + "@" + getPosition().toString();
     }
 }
@@ -2,7 +2,8 @@ package net.jr.lexer;
 
 /**
  * {@link TokenListener} receives the newly detected tokens, and may modify or discard them before they are "officialy" emitted.
- * a {@link TokenListener} is assigned to a Lexer using the {@link Lexer#setTokenListener(TokenListener)} method
+ * a {@link TokenListener} is assigned to a Lexer using the {@link Lexer#setTokenListener(TokenListener)} method, or created for
+ * each stream by the factory given to {@link Lexer#setTokenListenerFactory}
  */
 public interface TokenListener {
 
@@ -132,7 +132,7 @@ public class DefaultAutomaton implements Automaton {
         }
 
         public boolean isValid(Character c) {
-            return condition.apply(c);
+            return condition.test(c);
         }
 
         public StateImpl getNextState() {
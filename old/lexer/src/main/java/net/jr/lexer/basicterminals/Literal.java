@@ -31,6 +31,15 @@ public class Literal extends TerminalImpl {
         return l;
     }
 
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String getConstantText() {
+        return value;
+    }
+
     @Override
     public Automaton getAutomaton() {
         DefaultAutomaton.Builder builder = DefaultAutomaton.Builder.forTokenType(this);
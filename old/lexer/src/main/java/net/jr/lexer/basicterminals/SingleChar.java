@@ -28,6 +28,15 @@ public class SingleChar extends TerminalImpl {
         return s;
     }
 
+    public char getCharacter() {
+        return character;
+    }
+
+    @Override
+    public String getConstantText() {
+        return Character.toString(character);
+    }
+
     @Override
     public Automaton getAutomaton() {
         DefaultAutomaton.Builder builder = DefaultAutomaton.Builder.forTokenType(this);
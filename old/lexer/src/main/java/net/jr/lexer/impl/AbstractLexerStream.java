@@ -1,38 +1,59 @@
 package net.jr.lexer.impl;
 
 import net.jr.lexer.Lexer;
+import net.jr.lexer.LexerState;
+import net.jr.lexer.LineIndex;
+import net.jr.lexer.Terminal;
 import net.jr.lexer.LexerStream;
 import net.jr.lexer.Token;
+import net.jr.lexer.TokenListener;
 
 import java.io.IOException;
-import java.io.PushbackReader;
 import java.io.Reader;
 import java.util.LinkedList;
 import java.util.function.Consumer;
-import java.util.function.Function;
 
 public abstract class AbstractLexerStream implements LexerStream {
 
     private Lexer lexer;
 
-    private PushbackReader pushbackReader;
+    private CharSource charSource;
 
-    private Function<Token, Token> tokenListener;
+    private Keywords keywords;
+
+    private TokenListener tokenListener;
 
     private boolean go = true;
 
     private LinkedList<Token> buffer = new LinkedList<>();
 
+    /**
+     * the state after each token of the buffer (null for the tokens that are pushed back)
+     */
+    private LinkedList<LexerState> states = new LinkedList<>();
+
+    private LexerState state;
 
-    public AbstractLexerStream(Lexer lexer, Function<Token, Token> tokenListener, Reader reader) {
+    /**
+     * offset just after the last char that was read
+     */
+    private int reach;
+
+    public AbstractLexerStream(Lexer lexer, TokenListener tokenListener, Reader reader) {
+        this(lexer, tokenListener, new ReaderCharSource(reader));
+    }
+
+    public AbstractLexerStream(Lexer lexer, TokenListener tokenListener, CharSource charSource) {
         assert lexer != null;
         assert tokenListener != null;
-        assert reader != null;
+        assert charSource != null;
 
         this.lexer = lexer;
         this.tokenListener = tokenListener;
-        this.pushbackReader = reader instanceof PushbackReader ? (PushbackReader) reader : new PushbackReader(reader);
-
+        this.charSource = charSource;
+        this.keywords = lexer.getKeywords();
+        this.reach = charSource.getIndex();
+        this.state = new LexerState(reach, reach);
     }
 
     @Override
@@ -42,7 +63,11 @@ public abstract class AbstractLexerStream implements LexerStream {
 
     @Override
     public void pushback(Token item) {
-        buffer.addFirst(tokenListener.apply(item));
+        Token token = tokenListener.onNewToken(item);
+        if (token != null) {
+            buffer.addFirst(token);
+            states.addFirst(null);
+        }
     }
 
     @Override
@@ -58,19 +83,97 @@ public abstract class AbstractLexerStream implements LexerStream {
     public Token next() {
         try {
             while (buffer.isEmpty()) {
-                go = step(pushbackReader, token ->
+                //each step reads one char
+                reach = Math.max(reach, charSource.getIndex() + 1);
+                go = step(charSource, token ->
                         buffer.addLast(token)
                 );
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        LexerState s = states.removeFirst();
+        if (s != null) {
+            state = s;
+        }
         return buffer.removeFirst();
     }
 
-    protected Function<Token, Token> getTokenListener() {
+    @Override
+    public LexerState getState() {
+        return state;
+    }
+
+    /**
+     * Same as {@link #emitToken(Consumer, Token, int)}, for a token that has no text (like eof).
+     */
+    protected void emitToken(Consumer<Token> callback, Token token) {
+        emitToken(callback, token, token.getOffset());
+    }
+
+    /**
+     * Sends a recognized token to the callback, unless its type is filtered out by the lexer, or it is discarded by the
+     * token listener.
+     *
+     * @param end the index of the char source just after the token (which is not always its offset plus the length of its
+     *            text, see {@link MappedCharSource})
+     */
+    protected void emitToken(Consumer<Token> callback, Token token, int end) {
+        if (!lexer.isFilteredOut(token.getTokenType())) {
+            if (charSource.isStreaming()) {
+                //while its line is still known
+                token.getPosition();
+            }
+            token = tokenListener.onNewToken(token);
+            if (token != null) {
+                callback.accept(token);
+                states.addLast(new LexerState(end, Math.max(end, reach)));
+            }
+        }
+        charSource.release(end);
+    }
+
+    /**
+     * @return the index of the next char to be read
+     */
+    protected int getOffset() {
+        return charSource.getIndex();
+    }
+
+    /**
+     * Creates a token for some text that was read. The text of the token is not copied. Identifiers that are actually
+     * keywords get the type of the keyword.
+     *
+     * @param tokenType   type of the token
+     * @param startOffset offset of the first char of the token
+     * @param length      length of the token
+     * @return the token
+     */
+    protected Token newToken(Terminal tokenType, int startOffset, int length) {
+        String constantText = tokenType.getConstantText();
+        if (constantText != null && constantText.length() == length) {
+            return new Token(tokenType, startOffset, charSource.getLineIndex(), constantText);
+        }
+        CharSequence text = charSource.subSequence(startOffset, startOffset + length);
+        Terminal keyword = keywords.resolve(tokenType, text);
+        if (keyword != null) {
+            tokenType = keyword;
+            text = keyword.getConstantText();
+        }
+        return new Token(tokenType, startOffset, charSource.getLineIndex(), text);
+    }
+
+    /**
+     * The line index of the source, that is filled as the chars are read.
+     */
+    protected LineIndex getLineIndex() {
+        return charSource.getLineIndex();
+    }
+
+    @Override
+    public TokenListener getTokenListener() {
         return tokenListener;
     }
 
-    protected abstract boolean step(PushbackReader pushbackReader, Consumer<Token> callback) throws IOException;
+    protected abstract boolean step(CharSource charSource, Consumer<Token> callback) throws IOException;
 }
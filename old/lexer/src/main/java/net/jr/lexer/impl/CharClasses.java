@@ -0,0 +1,153 @@
+package net.jr.lexer.impl;
+
+import net.jr.lexer.automaton.Automaton;
+import net.jr.lexer.automaton.State;
+import net.jr.lexer.automaton.Transition;
+
+import java.util.*;
+
+/**
+ * Partition of the chars into equivalence classes : two chars are in the same class if no {@link CharConstraint} of the
+ * analyzed automatons can tell them apart. Transitions can then be indexed by class id instead of by char.
+ * <p>
+ * (Implementation note) : Latin-1 chars are classified with a plain table lookup, the rest of the BMP with a binary search
+ * in a list of intervals.
+ * </p>
+ */
+public class CharClasses {
+
+    private static final int DENSE_CHARS = 256;
+
+    private final int[] dense = new int[DENSE_CHARS];
+
+    /**
+     * lower bounds of the intervals, in ascending order
+     */
+    private final char[] intervalStarts;
+
+    private final int[] intervalClasses;
+
+    private final char[] representatives;
+
+    public CharClasses(Collection<CharConstraint> constraints) {
+        List<CharConstraint> list = new ArrayList<>(constraints);
+
+        //each constraint is a union of intervals, whose bounds split the alphabet
+        TreeSet<Integer> bounds = new TreeSet<>();
+        bounds.add((int) Character.MIN_VALUE);
+        for (CharConstraint constraint : list) {
+            int[] ranges = constraint.getRanges();
+            for (int i = 0; i < ranges.length; i += 2) {
+                bounds.add(ranges[i]);
+                if (ranges[i + 1] < Character.MAX_VALUE) {
+                    bounds.add(ranges[i + 1] + 1);
+                }
+            }
+        }
+
+        intervalStarts = new char[bounds.size()];
+        intervalClasses = new int[bounds.size()];
+
+        //intervals that satisfy the same constraints belong to the same class
+        Map<BitSet, Integer> classIds = new HashMap<>();
+        List<Character> reprs = new ArrayList<>();
+        int i = 0;
+        for (int start : bounds) {
+            char c = (char) start;
+            BitSet signature = new BitSet(list.size());
+            for (int j = 0; j < list.size(); j++) {
+                if (list.get(j).test(c)) {
+                    signature.set(j);
+                }
+            }
+            Integer classId = classIds.get(signature);
+            if (classId == null) {
+                classId = classIds.size();
+                classIds.put(signature, classId);
+                reprs.add(c);
+            }
+            intervalStarts[i] = c;
+            intervalClasses[i] = classId;
+            i++;
+        }
+
+        representatives = new char[reprs.size()];
+        for (int j = 0; j < representatives.length; j++) {
+            representatives[j] = reprs.get(j);
+        }
+
+        for (int c = 0; c < DENSE_CHARS; c++) {
+            dense[c] = lookup((char) c);
+        }
+    }
+
+    /**
+     * Computes the char classes for all the constraints used in some automatons.
+     *
+     * @param automatons the automatons
+     * @return the char classes
+     */
+    @SuppressWarnings("unchecked")
+    public static CharClasses forAutomatons(Collection<Automaton> automatons) {
+        Set<CharConstraint> constraints = new HashSet<>();
+        Set<State<Character>> viewed = new HashSet<>();
+        Deque<State<Character>> toVisit = new ArrayDeque<>();
+        for (Automaton a : automatons) {
+            State<Character> s = a.getInitialState();
+            if (s != null && viewed.add(s)) {
+                toVisit.push(s);
+            }
+        }
+        while (!toVisit.isEmpty()) {
+            State<Character> current = toVisit.pop();
+            Set<Transition<Character>> transitions = current.getOutgoingTransitions();
+            Transition<Character> fallback = current.getFallbackTransition();
+            if (fallback != null) {
+                //fallbacks are taken without consuming any char, so their constraint does not matter
+                if (viewed.add(fallback.getNextState())) {
+                    toVisit.push(fallback.getNextState());
+                }
+            }
+            for (Transition<Character> t : transitions == null ? Collections.<Transition<Character>>emptySet() : transitions) {
+                Object constraint = t.getConstraint();
+                if (!(constraint instanceof CharConstraint)) {
+                    throw new IllegalArgumentException("Unsupported constraint : " + constraint);
+                }
+                constraints.add((CharConstraint) constraint);
+                if (viewed.add(t.getNextState())) {
+                    toVisit.push(t.getNextState());
+                }
+            }
+        }
+        return new CharClasses(constraints);
+    }
+
+    public int getClassesCount() {
+        return representatives.length;
+    }
+
+    /**
+     * @param c a char
+     * @return the id of its class, between 0 and {@link #getClassesCount()} (excluded)
+     */
+    public int classOf(char c) {
+        return c < DENSE_CHARS ? dense[c] : lookup(c);
+    }
+
+    /**
+     * @param classId a class id
+     * @return a char that belongs to this class
+     */
+    public char getRepresentative(int classId) {
+        return representatives[classId];
+    }
+
+    private int lookup(char c) {
+        int index = Arrays.binarySearch(intervalStarts, c);
+        if (index < 0) {
+            //not a lower bound : take the interval that starts just before
+            index = -index - 2;
+        }
+        return intervalClasses[index];
+    }
+}
@@ -2,11 +2,11 @@ package net.jr.lexer.impl;
 
 import net.jr.util.StringUtil;
 
+import java.util.Arrays;
 import java.util.function.Function;
 
 public class CharConstraint implements Function<Character, Boolean> {
 
-    private Function<Character, Boolean> fn;
     private Nature nature;
     private Object subject;
 
@@ -15,6 +15,14 @@ public class CharConstraint implements Function<Character, Boolean> {
         this.subject = subject;
     }
 
+    public Nature getNature() {
+        return nature;
+    }
+
+    public Object getSubject() {
+        return subject;
+    }
+
     public String getExpr() {
         switch (nature) {
             case ANY:
@@ -44,7 +52,126 @@ public class CharConstraint implements Function<Character, Boolean> {
 
     @Override
     public Boolean apply(Character character) {
-        return fn.apply(character);
+        return test(character);
+    }
+
+    /**
+     * Same as {@link #apply(Character)}, without boxing.
+     *
+     * @param c the char to test
+     * @return whether the constraint is satisfied
+     */
+    public boolean test(char c) {
+        switch (nature) {
+            case ANY:
+                return true;
+            case EQ:
+                return c == (int) subject;
+            case INRANGE:
+                char[] range = (char[]) subject;
+                return c >= range[0] && c <= range[1];
+            case INLIST:
+                for (char p : (char[]) subject) {
+                    if (p == c) {
+                        return true;
+                    }
+                }
+                return false;
+            case NOT:
+                return !((CharConstraint) subject).test(c);
+            case OR:
+                CharConstraint[] or = (CharConstraint[]) subject;
+                return or[0].test(c) || or[1].test(c);
+            case AND:
+                CharConstraint[] and = (CharConstraint[]) subject;
+                return and[0].test(c) && and[1].test(c);
+        }
+        throw new IllegalStateException("unknown nature : " + nature);
+    }
+
+    /**
+     * The set of chars that satisfy this constraint, as sorted, disjoint and non-adjacent intervals.
+     *
+     * @return {min0, max0, min1, max1, ...} (bounds are inclusive)
+     */
+    public int[] getRanges() {
+        switch (nature) {
+            case ANY:
+                return new int[]{Character.MIN_VALUE, Character.MAX_VALUE};
+            case EQ:
+                return new int[]{(int) subject, (int) subject};
+            case INRANGE:
+                char[] range = (char[]) subject;
+                return range[0] > range[1] ? new int[0] : new int[]{range[0], range[1]};
+            case INLIST:
+                char[] list = ((char[]) subject).clone();
+                Arrays.sort(list);
+                int[] ranges = new int[list.length * 2];
+                for (int i = 0; i < list.length; i++) {
+                    ranges[2 * i] = ranges[2 * i + 1] = list[i];
+                }
+                return normalize(ranges, ranges.length);
+            case NOT:
+                return complement(((CharConstraint) subject).getRanges());
+            case OR:
+                CharConstraint[] or = (CharConstraint[]) subject;
+                return union(or[0].getRanges(), or[1].getRanges());
+            case AND:
+                CharConstraint[] and = (CharConstraint[]) subject;
+                //a && b <=> !(!a || !b)
+                return complement(union(complement(and[0].getRanges()), complement(and[1].getRanges())));
+        }
+        throw new IllegalStateException("unknown nature : " + nature);
+    }
+
+    private static int[] complement(int[] ranges) {
+        int[] result = new int[ranges.length + 2];
+        int len = 0;
+        int next = Character.MIN_VALUE;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                result[len++] = next;
+                result[len++] = ranges[i] - 1;
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= Character.MAX_VALUE) {
+            result[len++] = next;
+            result[len++] = Character.MAX_VALUE;
+        }
+        return Arrays.copyOf(result, len);
+    }
+
+    private static int[] union(int[] r1, int[] r2) {
+        int[] all = new int[r1.length + r2.length];
+        int i = 0, j = 0, len = 0;
+        while (i < r1.length || j < r2.length) {
+            if (j == r2.length || (i < r1.length && r1[i] <= r2[j])) {
+                all[len++] = r1[i++];
+                all[len++] = r1[i++];
+            } else {
+                all[len++] = r2[j++];
+                all[len++] = r2[j++];
+            }
+        }
+        return normalize(all, len);
+    }
+
+    /**
+     * merges overlapping or adjacent intervals, that must be sorted by lower bound
+     */
+    private static int[] normalize(int[] ranges, int len) {
+        int[] result = new int[len];
+        int rLen = 0;
+        for (int i = 0; i < len; i += 2) {
+            if (rLen > 0 && ranges[i] <= result[rLen - 1] + 1) {
+                result[rLen - 1] = Math.max(result[rLen - 1], ranges[i + 1]);
+            } else {
+                result[rLen++] = ranges[i];
+                result[rLen++] = ranges[i + 1];
+            }
+        }
+        return Arrays.copyOf(result, rLen);
     }
 
     @Override
@@ -73,28 +200,25 @@ public class CharConstraint implements Function<Character, Boolean> {
 
         private Object subject;
 
-        private Function<Character, Boolean> fn;
-
-        private Builder(Function<Character, Boolean> fn, Nature nature, Object subject) {
-            this.fn = fn;
+        private Builder(Nature nature, Object subject) {
             this.nature = nature;
             this.subject = subject;
         }
 
         public static Builder any() {
-            return new Builder(x -> true, Nature.ANY, null);
+            return new Builder(Nature.ANY, null);
         }
 
         public static Builder eq(int c) {
-            return new Builder(x -> x == c, Nature.EQ, c);
+            return new Builder(Nature.EQ, c);
         }
 
         public static Builder inRange(int min, int max) {
-            return new Builder(x -> x >= min && x <= max, Nature.INRANGE, new char[]{(char) min, (char) max});
+            return new Builder(Nature.INRANGE, new char[]{(char) min, (char) max});
         }
 
         public static Builder inList(String possibleChars) {
-            return new Builder(x -> possibleChars.contains(Character.toString(x)), Nature.INLIST, possibleChars.toCharArray());
+            return new Builder(Nature.INLIST, possibleChars.toCharArray());
         }
 
         public static Builder inList(char[] possibleChars) {
@@ -102,27 +226,19 @@ public class CharConstraint implements Function<Character, Boolean> {
         }
 
         public static Builder not(Builder builder) {
-            return new Builder(x -> !builder.fn.apply(x), Nature.NOT, builder.build());
+            return new Builder(Nature.NOT, builder.build());
         }
 
         public static Builder or(Builder b1, Builder b2) {
-            return new Builder(x -> b1.fn.apply(x) || b2.fn.apply(x),
-                    Nature.OR,
-                    new CharConstraint[]{b1.build(), b2.build()}
-            );
+            return new Builder(Nature.OR, new CharConstraint[]{b1.build(), b2.build()});
         }
 
         public static Builder and(Builder b1, Builder b2) {
-            return new Builder(x -> b1.fn.apply(x) && b2.fn.apply(x),
-                    Nature.AND,
-                    new CharConstraint[]{b1.build(), b2.build()}
-            );
+            return new Builder(Nature.AND, new CharConstraint[]{b1.build(), b2.build()});
         }
 
         public CharConstraint build() {
-            CharConstraint charConstraint = new CharConstraint(nature, subject);
-            charConstraint.fn = fn;
-            return charConstraint;
+            return new CharConstraint(nature, subject);
         }
     }
 
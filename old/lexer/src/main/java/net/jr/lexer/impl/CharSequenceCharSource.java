@@ -0,0 +1,55 @@
+package net.jr.lexer.impl;
+
+import net.jr.lexer.LineIndex;
+
+/**
+ * {@link CharSource} over a text that is already in memory. The reading may start at any offset of the text, so that only a part
+ * of it is lexed again when it is edited.
+ */
+public class CharSequenceCharSource implements CharSource {
+
+    private final CharSequence text;
+
+    private final LineIndex lineIndex;
+
+    private int index;
+
+    /**
+     * @param text      the whole text
+     * @param lineIndex the line index of the whole text (see {@link LineIndex#forText(CharSequence)})
+     * @param index     index of the first char to read
+     */
+    public CharSequenceCharSource(CharSequence text, LineIndex lineIndex, int index) {
+        this.text = text;
+        this.lineIndex = lineIndex;
+        rewind(index);
+    }
+
+    @Override
+    public int read() {
+        return index == text.length() ? -1 : text.charAt(index++);
+    }
+
+    @Override
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public void rewind(int index) {
+        if (index < 0 || index > text.length()) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        this.index = index;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public LineIndex getLineIndex() {
+        return lineIndex;
+    }
+}
@@ -0,0 +1,56 @@
+package net.jr.lexer.impl;
+
+/**
+ * A read-only view over a part of a char array, that is only copied into a {@link String} when {@link #toString()} is called.
+ * <p>
+ * The viewed chars must not be modified afterwards.
+ * </p>
+ */
+public class CharSlice implements CharSequence {
+
+    private final char[] chars;
+
+    private final int offset;
+
+    private final int length;
+
+    private String string;
+
+    public CharSlice(char[] chars, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > chars.length) {
+            throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length);
+        }
+        this.chars = chars;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return chars[offset + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start=" + start + ", end=" + end);
+        }
+        return new CharSlice(chars, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        if (string == null) {
+            string = new String(chars, offset, length);
+        }
+        return string;
+    }
+}
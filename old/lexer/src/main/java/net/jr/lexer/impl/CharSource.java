@@ -0,0 +1,67 @@
+package net.jr.lexer.impl;
+
+import net.jr.lexer.LineIndex;
+
+import java.io.IOException;
+
+/**
+ * The input of a {@link AbstractLexerStream}.
+ * <p>
+ * Chars are identified by an index, so that the stream can go back to any char that was already read (I.e. when a longest match
+ * fails and the lexer has to backtrack to the end of the last recognized token). Implementations are not thread-safe, and
+ * do not lock.
+ * </p>
+ */
+public interface CharSource {
+
+    /**
+     * Reads the next char, and moves forward.
+     *
+     * @return the char, or -1 when the end of the input is reached
+     * @throws IOException due to io operations on the underlying input
+     */
+    int read() throws IOException;
+
+    /**
+     * @return the index of the next char that will be read
+     */
+    int getIndex();
+
+    /**
+     * Moves back (or forward) to a char that has already been read.
+     *
+     * @param index index of the next char to read
+     */
+    void rewind(int index);
+
+    /**
+     * Gives the text between two indexes, that must have already been read. The chars are not necessarily copied.
+     *
+     * @param start index of the first char
+     * @param end   index just after the last char
+     * @return the text
+     */
+    CharSequence subSequence(int start, int end);
+
+    /**
+     * Index of the beginning of each line. Indexes are also used as offsets for the tokens.
+     */
+    LineIndex getLineIndex();
+
+    /**
+     * Tells that the chars before an index (the end of a token) will not be read again.
+     *
+     * @param index index of a char that has already been read
+     */
+    default void release(int index) {
+    }
+
+    /**
+     * @return true if the source forgets the chars (and the lines) that are {@link #release(int) released}, so that it does not
+     * keep its whole input : the texts of the tokens are then copies, and their positions must be computed as soon as they are
+     * read
+     */
+    default boolean isStreaming() {
+        return false;
+    }
+}
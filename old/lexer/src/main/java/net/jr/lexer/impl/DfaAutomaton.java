@@ -0,0 +1,176 @@
+package net.jr.lexer.impl;
+
+import net.jr.lexer.Terminal;
+import net.jr.lexer.automaton.Automaton;
+import net.jr.lexer.automaton.State;
+import net.jr.lexer.automaton.Transition;
+
+import java.util.*;
+
+/**
+ * Deterministic version of the 'merged' automaton used by {@link MergingLexerStreamImpl}.
+ * <p>
+ * Each state of this automaton stands for a set of states of the merged automaton (subset construction), so that
+ * exactly one state is active at any time. The final states are resolved once, by keeping the terminal with the highest priority.
+ * </p>
+ * <p>
+ * (Implementation note) : transitions are indexed by {@link CharClasses char class}, in a single table, so the cost of
+ * recognizing a char is two array lookups. The whole automaton is built by the constructor and never modified afterwards,
+ * so that it can be shared by any number of streams.
+ * </p>
+ */
+public class DfaAutomaton {
+
+    /**
+     * Returned by {@link #next(int, char)} when there is no transition for a char
+     */
+    public static final int NONE = -1;
+
+    private final CharClasses charClasses;
+
+    private final int classesCount;
+
+    /**
+     * next state for each (state, char class) pair, at index state * classesCount + classId
+     */
+    private final int[] transitions;
+
+    private final int[] fallbacks;
+
+    private final Terminal[] terminals;
+
+    private final Map<Terminal, Integer> declarationOrder = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public DfaAutomaton(List<Automaton> automatons) {
+        charClasses = CharClasses.forAutomatons(automatons);
+        classesCount = charClasses.getClassesCount();
+        Set<State<Character>> initialSet = new HashSet<>();
+        for (Automaton a : automatons) {
+            declarationOrder.putIfAbsent(a.getTokenType(), declarationOrder.size());
+            State<Character> s = a.getInitialState();
+            if (s != null) {
+                initialSet.add(s);
+            }
+        }
+
+        //subset construction
+        List<Set<State<Character>>> states = new ArrayList<>();
+        Map<Set<State<Character>>, Integer> index = new HashMap<>();
+        getOrCreate(states, index, initialSet);
+        int[] transitions = new int[0];
+        List<Integer> fallbacks = new ArrayList<>();
+        for (int s = 0; s < states.size(); s++) {
+            Set<State<Character>> nfaStates = states.get(s);
+            if (transitions.length < states.size() * classesCount) {
+                transitions = Arrays.copyOf(transitions, Math.max(transitions.length * 2, states.size() * classesCount));
+            }
+            for (int classId = 0; classId < classesCount; classId++) {
+                Set<State<Character>> targets = move(nfaStates, charClasses.getRepresentative(classId));
+                transitions[s * classesCount + classId] = targets.isEmpty() ? NONE : getOrCreate(states, index, targets);
+            }
+            Set<State<Character>> fallbackTargets = new HashSet<>();
+            for (State<Character> nfaState : nfaStates) {
+                Transition<Character> fallback = nfaState.getFallbackTransition();
+                if (fallback != null) {
+                    fallbackTargets.add(fallback.getNextState());
+                }
+            }
+            fallbacks.add(fallbackTargets.isEmpty() ? NONE : getOrCreate(states, index, fallbackTargets));
+        }
+
+        this.transitions = Arrays.copyOf(transitions, states.size() * classesCount);
+        this.fallbacks = new int[states.size()];
+        this.terminals = new Terminal[states.size()];
+        for (int s = 0; s < states.size(); s++) {
+            this.fallbacks[s] = fallbacks.get(s);
+            this.terminals[s] = resolveTerminal(states.get(s));
+        }
+    }
+
+    private static int getOrCreate(List<Set<State<Character>>> states, Map<Set<State<Character>>, Integer> index, Set<State<Character>> nfaStates) {
+        Integer id = index.get(nfaStates);
+        if (id == null) {
+            id = states.size();
+            states.add(nfaStates);
+            index.put(nfaStates, id);
+        }
+        return id;
+    }
+
+    private static Set<State<Character>> move(Set<State<Character>> nfaStates, char c) {
+        Set<State<Character>> targets = new HashSet<>();
+        for (State<Character> nfaState : nfaStates) {
+            if (nfaState.getOutgoingTransitions() == null) {
+                continue;
+            }
+            for (Transition<Character> t : nfaState.getOutgoingTransitions()) {
+                if (((CharConstraint) t.getConstraint()).test(c)) {
+                    targets.add(t.getNextState());
+                }
+            }
+        }
+        return targets;
+    }
+
+    public int getInitialState() {
+        return 0;
+    }
+
+    public CharClasses getCharClasses() {
+        return charClasses;
+    }
+
+    public int getStatesCount() {
+        return terminals.length;
+    }
+
+    /**
+     * @param state a state of this automaton
+     * @return The terminal that is recognized when this state is reached, or null if the state is not final
+     */
+    public Terminal getTerminal(int state) {
+        return terminals[state];
+    }
+
+    /**
+     * The state that is reached, without consuming any char, when no transition matches the current char.
+     *
+     * @param state a state of this automaton
+     * @return the target state, or {@link #NONE}
+     */
+    public int getFallback(int state) {
+        return fallbacks[state];
+    }
+
+    /**
+     * @param state a state of this automaton
+     * @param c     the current char
+     * @return the next state, or {@link #NONE}
+     */
+    public int next(int state, char c) {
+        return transitions[state * classesCount + charClasses.classOf(c)];
+    }
+
+    /**
+     * find the final state that has the highest priority. When priorities are equal, the terminal that was declared first wins.
+     */
+    private Terminal resolveTerminal(Set<State<Character>> nfaStates) {
+        Terminal best = null;
+        for (State<Character> s : nfaStates) {
+            if (s.isFinalState()) {
+                Terminal t = s.getTerminal();
+                if (best == null || t.getPriority() > best.getPriority()
+                        || (t.getPriority() == best.getPriority() && getDeclarationOrder(t) < getDeclarationOrder(best))) {
+                    best = t;
+                }
+            }
+        }
+        return best;
+    }
+
+    private int getDeclarationOrder(Terminal terminal) {
+        Integer order = declarationOrder.get(terminal);
+        return order == null ? Integer.MAX_VALUE : order;
+    }
+}
@@ -0,0 +1,104 @@
+package net.jr.lexer.impl;
+
+import net.jr.lexer.Lexemes;
+import net.jr.lexer.Lexer;
+import net.jr.lexer.LexicalError;
+import net.jr.lexer.Terminal;
+import net.jr.lexer.Token;
+import net.jr.lexer.TokenListener;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Same token recognition rules as {@link MergingLexerStreamImpl}, but the merged automaton is first determinized into a
+ * {@link DfaAutomaton}, so that a single state is active at any time.
+ */
+public class DfaLexerStreamImpl extends AbstractLexerStream {
+
+    private final DfaAutomaton dfa;
+
+    private int state;
+
+    private int startOffset;
+
+    /**
+     * Terminal of the longest token recognized so far
+     */
+    private Terminal candidate;
+
+    private int candidateLength;
+
+    public DfaLexerStreamImpl(Lexer lexer, DfaAutomaton dfa, TokenListener tokenListener, CharSource charSource) {
+        super(lexer, tokenListener, charSource);
+        this.startOffset = charSource.getIndex();
+        this.dfa = dfa;
+        this.state = dfa.getInitialState();
+    }
+
+    /**
+     * emits the candidate, and goes back just after it.
+     *
+     * @return true if some chars have to be read again
+     */
+    protected boolean emit(CharSource charSource, Consumer<Token> callback) {
+        int end = startOffset + candidateLength;
+        emitToken(callback, newToken(candidate, startOffset, candidateLength), end);
+        boolean backtrack = end < charSource.getIndex();
+        charSource.rewind(end);
+        candidate = null;
+        state = dfa.getInitialState();
+        startOffset = end;
+        return backtrack;
+    }
+
+    @Override
+    protected boolean step(CharSource charSource, Consumer<Token> callback) throws IOException {
+        int index = charSource.getIndex();
+        int c = charSource.read();
+
+        if (c == -1) {
+            if (candidate == null) {
+                int fallback = dfa.getFallback(state);
+                if (fallback != DfaAutomaton.NONE && dfa.getTerminal(fallback) != null) {
+                    candidate = dfa.getTerminal(fallback);
+                    candidateLength = index - startOffset;
+                }
+            }
+            if (candidate == null) {
+                if (state != dfa.getInitialState()) {
+                    throw new LexicalError(c, getLineIndex().getPosition(index));
+                }
+            } else if (candidateLength > 0 && emit(charSource, callback)) {
+                return true;
+            }
+            emitToken(callback, new Token(Lexemes.eof(), getOffset(), getLineIndex(), ""));
+            return false;
+        }
+
+        int next = dfa.next(state, (char) c);
+
+        //nothing matches -> see if there is a 'fallback' transition
+        if (next == DfaAutomaton.NONE) {
+            next = dfa.getFallback(state);
+            if (next == DfaAutomaton.NONE) {
+                if (candidate == null) {
+                    throw new LexicalError(c, getLineIndex().getPosition(index));
+                }
+                emit(charSource, callback);
+                return true;
+            }
+            //a fallback transition does not consume the char
+            charSource.rewind(index);
+        }
+
+        Terminal terminal = dfa.getTerminal(next);
+        if (terminal != null) {
+            candidate = terminal;
+            candidateLength = charSource.getIndex() - startOffset;
+        }
+
+        state = next;
+        return true;
+    }
+}
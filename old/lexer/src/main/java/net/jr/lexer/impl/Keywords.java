@@ -0,0 +1,228 @@
+package net.jr.lexer.impl;
+
+import net.jr.lexer.Terminal;
+import net.jr.lexer.automaton.Automaton;
+import net.jr.lexer.automaton.State;
+import net.jr.lexer.automaton.Transition;
+import net.jr.lexer.basicterminals.Literal;
+
+import java.util.*;
+
+/**
+ * Keywords are the {@link Literal}s that are also matched by an 'identifier' terminal with a lower priority (like 'int' and a C identifier).
+ * <p>
+ * Such literals do not need their own automaton : the lexer only has to recognize the identifier, and then to look up the
+ * matched text in a hash table. This keeps the number of active states low while an identifier is read.
+ * </p>
+ * <p>
+ * A literal is only handled this way when the result cannot change, I.e. when exactly one other terminal matches its text,
+ * with a strictly lower priority.
+ * </p>
+ */
+public class Keywords {
+
+    private static final Keywords NONE = new Keywords(Collections.emptyMap());
+
+    private final Map<Terminal, KeywordTable> tables;
+
+    private final Set<Terminal> keywords = new HashSet<>();
+
+    private Keywords(Map<Terminal, KeywordTable> tables) {
+        this.tables = tables;
+        for (KeywordTable table : tables.values()) {
+            Collections.addAll(keywords, table.values);
+        }
+        keywords.remove(null);
+    }
+
+    public static Keywords none() {
+        return NONE;
+    }
+
+    /**
+     * Finds the literals that can be resolved with a table lookup.
+     *
+     * @param automatons all the automatons of a lexer
+     * @return the keywords
+     */
+    public static Keywords extract(List<Automaton> automatons) {
+        Map<Terminal, Map<String, Terminal>> byIdentifier = new LinkedHashMap<>();
+        Set<String> seen = new HashSet<>();
+        Set<String> duplicates = new HashSet<>();
+        for (Automaton a : automatons) {
+            if (a.getTokenType() instanceof Literal) {
+                String value = ((Literal) a.getTokenType()).getValue();
+                if (!seen.add(value)) {
+                    duplicates.add(value);
+                }
+            }
+        }
+
+        for (Automaton a : automatons) {
+            if (!(a.getTokenType() instanceof Literal)) {
+                continue;
+            }
+            Literal literal = (Literal) a.getTokenType();
+            String value = literal.getValue();
+            if (value.isEmpty() || duplicates.contains(value)) {
+                continue;
+            }
+            Terminal identifier = null;
+            boolean ambiguous = false;
+            for (Automaton other : automatons) {
+                if (other == a) {
+                    continue;
+                }
+                Boolean accepts = accepts(other, value);
+                if (accepts == null || (accepts && identifier != null)) {
+                    ambiguous = true;
+                    break;
+                } else if (accepts) {
+                    identifier = other.getTokenType();
+                }
+            }
+            if (!ambiguous && identifier != null && identifier.getPriority() < literal.getPriority()) {
+                byIdentifier.computeIfAbsent(identifier, k -> new HashMap<>()).put(value, literal);
+            }
+        }
+
+        if (byIdentifier.isEmpty()) {
+            return NONE;
+        }
+        Map<Terminal, KeywordTable> tables = new HashMap<>();
+        for (Map.Entry<Terminal, Map<String, Terminal>> entry : byIdentifier.entrySet()) {
+            tables.put(entry.getKey(), new KeywordTable(entry.getValue()));
+        }
+        return new Keywords(tables);
+    }
+
+    /**
+     * Runs an automaton over some text.
+     *
+     * @return whether the text is matched, or null when it can't be known (I.e. the automaton has fallback transitions)
+     */
+    @SuppressWarnings("unchecked")
+    private static Boolean accepts(Automaton automaton, String text) {
+        Set<State<Character>> active = new HashSet<>();
+        State<Character> initial = automaton.getInitialState();
+        if (initial == null) {
+            return false;
+        }
+        active.add(initial);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            Set<State<Character>> next = new HashSet<>();
+            for (State<Character> s : active) {
+                if (s.getFallbackTransition() != null) {
+                    return null;
+                }
+                if (s.getOutgoingTransitions() != null) {
+                    for (Transition<Character> t : s.getOutgoingTransitions()) {
+                        if (t.isValid(c)) {
+                            next.add(t.getNextState());
+                        }
+                    }
+                }
+            }
+            if (next.isEmpty()) {
+                return false;
+            }
+            active = next;
+        }
+        for (State<Character> s : active) {
+            if (s.getFallbackTransition() != null) {
+                return null;
+            }
+            if (s.isFinalState()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if this terminal does not need an automaton
+     */
+    public boolean isKeyword(Terminal terminal) {
+        return keywords.contains(terminal);
+    }
+
+    /**
+     * @return the terminals that may actually be keywords
+     */
+    public Set<Terminal> getIdentifiers() {
+        return tables.keySet();
+    }
+
+    /**
+     * @param tokenType the type of a recognized token
+     * @param text      its text
+     * @return the matching keyword, or null
+     */
+    public Terminal resolve(Terminal tokenType, CharSequence text) {
+        KeywordTable table = tables.get(tokenType);
+        return table == null ? null : table.get(text);
+    }
+
+    /**
+     * Open addressing hash table, that can be searched with any {@link CharSequence} without converting it to a String
+     */
+    private static class KeywordTable {
+
+        private final String[] keys;
+
+        private final Terminal[] values;
+
+        private final int mask;
+
+        private final int maxLength;
+
+        KeywordTable(Map<String, Terminal> keywords) {
+            int size = Integer.highestOneBit(Math.max(1, keywords.size()) * 4 - 1) << 1;
+            keys = new String[size];
+            values = new Terminal[size];
+            mask = size - 1;
+            int max = 0;
+            for (Map.Entry<String, Terminal> entry : keywords.entrySet()) {
+                String key = entry.getKey();
+                int i = key.hashCode() & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = entry.getValue();
+                max = Math.max(max, key.length());
+            }
+            maxLength = max;
+        }
+
+        Terminal get(CharSequence text) {
+            int len = text.length();
+            if (len > maxLength) {
+                return null;
+            }
+            int h = 0;
+            for (int i = 0; i < len; i++) {
+                h = 31 * h + text.charAt(i);
+            }
+            for (int i = h & mask; keys[i] != null; i = (i + 1) & mask) {
+                if (contentEquals(keys[i], text)) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        private static boolean contentEquals(String key, CharSequence text) {
+            if (key.length() != text.length()) {
+                return false;
+            }
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
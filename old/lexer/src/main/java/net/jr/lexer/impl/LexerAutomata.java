@@ -0,0 +1,111 @@
+package net.jr.lexer.impl;
+
+import net.jr.lexer.Terminal;
+import net.jr.lexer.automaton.Automaton;
+import net.jr.lexer.automaton.State;
+
+import java.util.*;
+
+/**
+ * Everything a {@link net.jr.lexer.LexerStream} needs that only depends on the terminals of the lexer : the keywords, the merged
+ * automaton and its determinized version.
+ * <p>
+ * Instances are never modified once built (the automatons are built lazily, only once), so they are shared by all the streams of
+ * a lexer. As the keywords and the determinized automaton depend on the priorities of the terminals, the automata must be built
+ * again when a priority changes (see {@link #isUpToDate()}).
+ * </p>
+ */
+public class LexerAutomata {
+
+    private final Keywords keywords;
+
+    private final List<Automaton> automatons;
+
+    /**
+     * the terminals of all the automatons, and their priorities when the automata were built
+     */
+    private final Terminal[] terminals;
+
+    private final int[] priorities;
+
+    private volatile State<Character> mergedInitialState;
+
+    private volatile DfaAutomaton dfa;
+
+    private LexerAutomata(List<Automaton> allAutomatons, boolean keywordsLookup) {
+        terminals = new Terminal[allAutomatons.size()];
+        priorities = new int[allAutomatons.size()];
+        for (int i = 0; i < terminals.length; i++) {
+            terminals[i] = allAutomatons.get(i).getTokenType();
+            priorities[i] = terminals[i].getPriority();
+        }
+        keywords = keywordsLookup ? Keywords.extract(allAutomatons) : Keywords.none();
+        List<Automaton> list = new ArrayList<>(allAutomatons.size());
+        for (Automaton a : allAutomatons) {
+            if (!keywords.isKeyword(a.getTokenType())) {
+                list.add(a);
+            }
+        }
+        automatons = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Prepares the automata for a list of automatons. The automatons themselves are only built on first use.
+     *
+     * @param automatons     the automatons of the lexer
+     * @param keywordsLookup whether keywords are resolved with a table lookup
+     * @return the automata
+     */
+    public static LexerAutomata forAutomatons(List<Automaton> automatons, boolean keywordsLookup) {
+        return new LexerAutomata(automatons, keywordsLookup);
+    }
+
+    /**
+     * @return false if the priority of a terminal has changed since these automata were built
+     */
+    public boolean isUpToDate() {
+        for (int i = 0; i < terminals.length; i++) {
+            if (terminals[i].getPriority() != priorities[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Keywords getKeywords() {
+        return keywords;
+    }
+
+    /**
+     * @return the automatons that are part of the merged automaton (I.e. all of them but the keywords)
+     */
+    public List<Automaton> getAutomatons() {
+        return automatons;
+    }
+
+    public State<Character> getMergedInitialState() {
+        State<Character> s = mergedInitialState;
+        if (s == null) {
+            synchronized (this) {
+                s = mergedInitialState;
+                if (s == null) {
+                    mergedInitialState = s = MergingLexerStreamImpl.merge(automatons);
+                }
+            }
+        }
+        return s;
+    }
+
+    public DfaAutomaton getDfa() {
+        DfaAutomaton d = dfa;
+        if (d == null) {
+            synchronized (this) {
+                d = dfa;
+                if (d == null) {
+                    dfa = d = new DfaAutomaton(automatons);
+                }
+            }
+        }
+        return d;
+    }
+}
@@ -0,0 +1,278 @@
+package net.jr.lexer.impl;
+
+import net.jr.lexer.LineIndex;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * {@link CharSource} that decodes an UTF-8 (or ASCII) file, memory-mapped using {@link FileChannel#map}.
+ * <p>
+ * Indexes are byte positions in the file, so the offsets of the tokens are expressed in bytes. A char that is encoded on 4 bytes is
+ * decoded as a surrogate pair : the high surrogate has the index of the first byte of the sequence, and the low surrogate the
+ * index of the second byte. The columns of the positions are counted in chars, as when the file is read with a
+ * {@link java.io.Reader} : the lines that contain multi-bytes sequences are marked while they are scanned, and only their columns
+ * are computed by decoding the line.
+ * </p>
+ * <p>
+ * The files that use another charset are opened with {@link #open(Path, Charset)}.
+ * </p>
+ */
+public class MappedCharSource implements CharSource {
+
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+    private final MappedByteBuffer buffer;
+
+    private final int length;
+
+    private final Utf8LineIndex lineIndex;
+
+    private int index;
+
+    /**
+     * all the new lines before this index have been added to the line index
+     */
+    private int scanned;
+
+    public MappedCharSource(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to be mapped : " + path);
+            }
+            //the mapping remains valid once the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            length = (int) size;
+        }
+        lineIndex = new Utf8LineIndex(path.toString());
+    }
+
+    /**
+     * Opens a file that uses some charset. An UTF-8 (or ASCII) file is read by a {@link MappedCharSource}. A file that uses
+     * another charset is mapped and decoded at once with a {@link java.nio.charset.CharsetDecoder} : its offsets are then char
+     * indexes. Malformed input is replaced with U+FFFD in both cases.
+     *
+     * @param path    the file
+     * @param charset the charset of the file
+     * @return a source that reads the file
+     * @throws IOException if the file cannot be mapped
+     */
+    public static CharSource open(Path path, Charset charset) throws IOException {
+        if (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)) {
+            return new MappedCharSource(path);
+        }
+        CharBuffer chars;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            chars = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(bytes);
+        }
+        LineIndex lineIndex = new LineIndex(path.toString());
+        for (int i = 0, length = chars.length(); i < length; i++) {
+            if (chars.get(i) == '\n') {
+                lineIndex.addLineStart(i + 1);
+            }
+        }
+        return new CharSequenceCharSource(chars, lineIndex, 0);
+    }
+
+    @Override
+    public int read() {
+        if (index >= length) {
+            return -1;
+        }
+        int b = buffer.get(index);
+        if (b >= 0) {
+            //ASCII
+            index++;
+            if (b == '\n' && index > scanned) {
+                lineIndex.addLineStart(index);
+            }
+            scanned = Math.max(scanned, index);
+            return b;
+        }
+        if (index >= scanned) {
+            lineIndex.multiByteLines.set(lineIndex.getLinesCount());
+        }
+        char c = decode(index);
+        index = nextIndex(index);
+        scanned = Math.max(scanned, index);
+        return c;
+    }
+
+    private boolean isContinuation(int i) {
+        return i < length && (buffer.get(i) & 0xc0) == 0x80;
+    }
+
+    /**
+     * @return the number of bytes of the sequence that begins at index i, or 1 if the sequence is malformed
+     */
+    private int sequenceLength(int i) {
+        int b = buffer.get(i) & 0xff;
+        int n = b < 0x80 ? 1 : b >= 0xc2 && b < 0xe0 ? 2 : b >= 0xe0 && b < 0xf0 ? 3 : b >= 0xf0 && b < 0xf5 ? 4 : 1;
+        for (int k = 1; k < n; k++) {
+            if (!isContinuation(i + k)) {
+                return 1;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return true if i is the index of the low surrogate of a 4-bytes sequence
+     */
+    private boolean isLowSurrogateIndex(int i) {
+        return i > 0 && isContinuation(i) && (buffer.get(i - 1) & 0xff) >= 0xf0 && sequenceLength(i - 1) == 4;
+    }
+
+    private char decode(int i) {
+        if (isLowSurrogateIndex(i)) {
+            return Character.lowSurrogate(codePoint(i - 1));
+        }
+        int b = buffer.get(i) & 0xff;
+        switch (sequenceLength(i)) {
+            case 2:
+                return (char) (((b & 0x1f) << 6) | (buffer.get(i + 1) & 0x3f));
+            case 3:
+                return (char) (((b & 0x0f) << 12) | ((buffer.get(i + 1) & 0x3f) << 6) | (buffer.get(i + 2) & 0x3f));
+            case 4:
+                return Character.highSurrogate(codePoint(i));
+            default:
+                return b < 0x80 ? (char) b : REPLACEMENT_CHAR;
+        }
+    }
+
+    private int codePoint(int i) {
+        return ((buffer.get(i) & 0x07) << 18) | ((buffer.get(i + 1) & 0x3f) << 12) | ((buffer.get(i + 2) & 0x3f) << 6) | (buffer.get(i + 3) & 0x3f);
+    }
+
+    private int nextIndex(int i) {
+        if (isLowSurrogateIndex(i)) {
+            return i + 3;
+        }
+        int n = sequenceLength(i);
+        return n == 4 ? i + 1 : i + n;
+    }
+
+    @Override
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public void rewind(int index) {
+        if (index < 0 || index > length) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        this.index = index;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new Utf8Slice(start, end);
+    }
+
+    @Override
+    public LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    /**
+     * {@link LineIndex} whose offsets are byte indexes.
+     */
+    private class Utf8LineIndex extends LineIndex {
+
+        /**
+         * the lines that contain a multi-bytes sequence
+         */
+        private final BitSet multiByteLines = new BitSet();
+
+        Utf8LineIndex(String filename) {
+            super(filename);
+        }
+
+        @Override
+        protected int getColumn(int line, int offset) {
+            if (!multiByteLines.get(line)) {
+                return super.getColumn(line, offset);
+            }
+            int column = 1;
+            for (int i = getLineStart(line); i < offset; i = nextIndex(i)) {
+                column++;
+            }
+            return column;
+        }
+    }
+
+    /**
+     * text of a token, that is decoded the first time it is used. The length and the chars of a slice where each char is encoded
+     * on a single byte (which is the case of the identifiers that are looked up in the keywords) are read without decoding it.
+     */
+    private class Utf8Slice implements CharSequence {
+
+        private final int start, end;
+
+        /**
+         * number of chars, or -1 if not counted yet
+         */
+        private int charLength = -1;
+
+        private String string;
+
+        Utf8Slice(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            if (charLength < 0) {
+                int n = 0;
+                for (int i = start; i < end; i = nextIndex(i)) {
+                    n++;
+                }
+                charLength = n;
+            }
+            return charLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (length() == end - start) {
+                if (index < 0 || index >= charLength) {
+                    throw new IndexOutOfBoundsException(Integer.toString(index));
+                }
+                return decode(start + index);
+            }
+            return toString().charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            if (string == null) {
+                StringBuilder sb = new StringBuilder(end - start);
+                for (int i = start; i < end; i = nextIndex(i)) {
+                    sb.append(decode(i));
+                }
+                string = sb.toString();
+            }
+            return string;
+        }
+    }
+}
@@ -1,19 +1,14 @@
 package net.jr.lexer.impl;
 
-import net.jr.common.Position;
 import net.jr.lexer.*;
 import net.jr.lexer.automaton.Automaton;
 import net.jr.lexer.automaton.State;
 import net.jr.lexer.automaton.Transition;
 
 import java.io.IOException;
-import java.io.PushbackReader;
-import java.io.Reader;
-import java.io.StringWriter;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -22,39 +17,99 @@ import java.util.stream.Collectors;
  */
 public class MergingLexerStreamImpl extends AbstractLexerStream {
 
-    private Position startPosition, position;
+    private int startOffset;
 
-    private StateImpl initial;
+    private State<Character> initial;
 
     private Set<State<Character>> activeStates = new HashSet<>();
 
-    private Token candidate;
+    /**
+     * Terminal of the longest token recognized so far
+     */
+    private Terminal candidate;
 
-    private StringWriter matched = new StringWriter();
+    private int candidateLength;
 
-    public MergingLexerStreamImpl(Lexer lexer, List<Automaton> automatons, Function<Token, Token> tokenListener, Reader reader) {
-        super(lexer, tokenListener, reader);
+    public MergingLexerStreamImpl(Lexer lexer, State<Character> initial, TokenListener tokenListener, CharSource charSource) {
+        super(lexer, tokenListener, charSource);
+        this.startOffset = charSource.getIndex();
+        this.initial = initial;
+        activeStates.add(initial);
+    }
 
-        initial = new StateImpl(0);
+    /**
+     * Builds the 'big' automaton, by merging the initial states of several automatons.
+     * <p>
+     * The states of the automatons are shared by all the lexers that use the same terminals, so they are copied rather than
+     * linked, and only the copies get ids.
+     * </p>
+     *
+     * @param automatons the automatons
+     * @return the initial state of the merged automaton
+     */
+    @SuppressWarnings("unchecked")
+    public static State<Character> merge(List<Automaton> automatons) {
+        StateImpl initial = new StateImpl(0);
+        Map<State<Character>, StateImpl> copies = new HashMap<>();
         for (Automaton a : automatons) {
-            State s = a.getInitialState();
+            State<Character> s = a.getInitialState();
             if (s != null) {
-                initial.setFallbackTransition(s.getFallbackTransition());
-                initial.getOutgoingTransitions().addAll(s.getOutgoingTransitions());
-                if (s.isFinalState()) {
-                    initial.setTerminal(s.getTerminal());
+                StateImpl copy = copy(s, copies);
+                initial.setFallbackTransition(copy.getFallbackTransition());
+                initial.getOutgoingTransitions().addAll(copy.getOutgoingTransitions());
+                if (copy.isFinalState()) {
+                    initial.setTerminal(copy.getTerminal());
                 }
             }
         }
 
         reAssignIds(initial);
+        return initial;
+    }
 
-        activeStates.add(initial);
-        startPosition = Position.start();
-        position = startPosition;
+    /**
+     * Copies the states that can be reached from a state.
+     *
+     * @param state  a state of an automaton
+     * @param copies the states that are already copied
+     * @return the copy of the state
+     */
+    private static StateImpl copy(State<Character> state, Map<State<Character>, StateImpl> copies) {
+        StateImpl copy = copies.get(state);
+        if (copy != null) {
+            return copy;
+        }
+        //no recursion, as automatons may have long chains of states
+        Deque<State<Character>> toCopy = new ArrayDeque<>();
+        copy = newCopy(state, copies, toCopy);
+        while (!toCopy.isEmpty()) {
+            State<Character> original = toCopy.pop();
+            StateImpl c = copies.get(original);
+            for (Transition<Character> t : original.getOutgoingTransitions()) {
+                c.getOutgoingTransitions().add(new TransitionImpl(t, newCopy(t.getNextState(), copies, toCopy)));
+            }
+            Transition<Character> fallback = original.getFallbackTransition();
+            if (fallback != null) {
+                c.setFallbackTransition(new TransitionImpl(fallback, newCopy(fallback.getNextState(), copies, toCopy)));
+            }
+        }
+        return copy;
     }
 
-    private void reAssignIds(State<Character> initial) {
+    private static StateImpl newCopy(State<Character> state, Map<State<Character>, StateImpl> copies, Deque<State<Character>> toCopy) {
+        StateImpl copy = copies.get(state);
+        if (copy == null) {
+            copy = new StateImpl(0);
+            if (state.isFinalState()) {
+                copy.setTerminal(state.getTerminal());
+            }
+            copies.put(state, copy);
+            toCopy.push(state);
+        }
+        return copy;
+    }
+
+    private static void reAssignIds(State<Character> initial) {
         AtomicInteger idCounter = new AtomicInteger(0);
         StatesVisitor.visit(initial, (state) -> {
             int id = idCounter.getAndIncrement();
@@ -65,34 +120,32 @@ public class MergingLexerStreamImpl extends AbstractLexerStream {
         });
     }
 
-    private void emitToken(Consumer<Token> callback, Token token) {
-        if (!getLexer().isFilteredOut(token.getTokenType())) {
-            TokenListener tokenListener = getLexer().getTokenListener();
-            if (tokenListener != null) {
-                token = tokenListener.onNewToken(token);
-            }
-            callback.accept(token);
-        }
-    }
-
-    protected void emit(PushbackReader reader, int c, Consumer<Token> callback) throws IOException {
-        emitToken(callback, candidate);
+    /**
+     * emits the candidate, and goes back just after it.
+     *
+     * @return true if some chars have to be read again
+     */
+    protected boolean emit(CharSource charSource, Consumer<Token> callback) {
+        int end = startOffset + candidateLength;
+        emitToken(callback, newToken(candidate, startOffset, candidateLength), end);
+        boolean backtrack = end < charSource.getIndex();
+        charSource.rewind(end);
         candidate = null;
-        matched = new StringWriter();
         activeStates.clear();
         activeStates.add(initial);
-        reader.unread(c);
-        startPosition = position;
+        startOffset = end;
+        return backtrack;
     }
 
     protected void emitEof(Consumer<Token> callback) {
-        Token eof = new Token(Lexemes.eof(), position, "");
+        Token eof = new Token(Lexemes.eof(), getOffset(), getLineIndex(), "");
         emitToken(callback, eof);
     }
 
     @Override
-    protected boolean step(PushbackReader pushbackReader, Consumer<Token> callback) throws IOException {
-        int c = pushbackReader.read();
+    protected boolean step(CharSource charSource, Consumer<Token> callback) throws IOException {
+        int index = charSource.getIndex();
+        int c = charSource.read();
         boolean shouldPushback = false;
         if (c == -1) {
             if (candidate == null) {
@@ -102,17 +155,18 @@ public class MergingLexerStreamImpl extends AbstractLexerStream {
                     State<Character> active = activeStates.iterator().next();
                     if (active.getFallbackTransition() != null && active.getFallbackTransition().getNextState().isFinalState()) {
                         State<Character> s = active.getFallbackTransition().getNextState();
-                        candidate = new Token(s.getTerminal(), startPosition, matched.toString());
+                        candidate = s.getTerminal();
+                        candidateLength = index - startOffset;
                     }
                 }
             }
 
             if (candidate == null) {
                 if (activeStates.iterator().next() != initial) {
-                    throw new LexicalError(c, position);
+                    throw new LexicalError(c, getLineIndex().getPosition(index));
                 }
-            } else if (!candidate.getText().isEmpty()) {
-                emit(pushbackReader, c, callback);
+            } else if (candidateLength > 0 && emit(charSource, callback)) {
+                return true;
             }
             emitEof(callback);
             return false;
@@ -142,20 +196,18 @@ public class MergingLexerStreamImpl extends AbstractLexerStream {
             }
         }
 
-        //update matched text
+        //a fallback transition does not consume the char
         if (shouldPushback) {
-            pushbackReader.unread(c);
-        } else {
-            matched.append((char) c);
+            charSource.rewind(index);
         }
 
         //still no transition !
         if (newStates.isEmpty()) {
 
             if (candidate == null) {
-                throw new LexicalError(c, position);
+                throw new LexicalError(c, getLineIndex().getPosition(index));
             } else {
-                emit(pushbackReader, c, callback);
+                emit(charSource, callback);
                 return true;
             }
         }
@@ -168,10 +220,10 @@ public class MergingLexerStreamImpl extends AbstractLexerStream {
                 .findFirst();
 
         if (finalState.isPresent()) {
-            candidate = new Token(finalState.get().getTerminal(), startPosition, matched.toString());
+            candidate = finalState.get().getTerminal();
+            candidateLength = charSource.getIndex() - startOffset;
         }
 
-        this.position = this.position.updated((char) c);
         this.activeStates = newStates;
         return true;
     }
@@ -180,7 +232,37 @@ public class MergingLexerStreamImpl extends AbstractLexerStream {
         return initial;
     }
 
-    class StateImpl implements State<Character> {
+    /**
+     * A transition of a copied state : same constraint as the original one, towards the copy of its next state.
+     */
+    static class TransitionImpl implements Transition<Character> {
+
+        private final Transition<Character> original;
+
+        private final State<Character> nextState;
+
+        TransitionImpl(Transition<Character> original, State<Character> nextState) {
+            this.original = original;
+            this.nextState = nextState;
+        }
+
+        @Override
+        public boolean isValid(Character c) {
+            return original.isValid(c);
+        }
+
+        @Override
+        public State<Character> getNextState() {
+            return nextState;
+        }
+
+        @Override
+        public Object getConstraint() {
+            return original.getConstraint();
+        }
+    }
+
+    static class StateImpl implements State<Character> {
 
         private Set<Transition<Character>> outgoingTransitions = new HashSet<>();
 
@@ -0,0 +1,139 @@
+package net.jr.lexer.impl;
+
+import net.jr.lexer.LineIndex;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * {@link CharSource} that reads a {@link Reader} by blocks, and keeps everything that was read in a growing buffer.
+ * <p>
+ * (Implementation note) : When the buffer grows, the old array is left untouched, so that the slices returned by
+ * {@link #subSequence(int, int)} never need to be copied.
+ * </p>
+ * <p>
+ * A streaming source only keeps the chars from the last {@link #release(int) released} index : the buffer does not grow
+ * with the size of the input, and the texts of the tokens are copied.
+ * </p>
+ */
+public class ReaderCharSource implements CharSource {
+
+    private static final int BLOCK_SIZE = 8192;
+
+    private final Reader reader;
+
+    private final boolean streaming;
+
+    private final LineIndex lineIndex = new LineIndex();
+
+    private char[] buffer = new char[BLOCK_SIZE];
+
+    /**
+     * index of the first char of the buffer
+     */
+    private int base;
+
+    /**
+     * index just after the last char that was read
+     */
+    private int length;
+
+    private int index;
+
+    /**
+     * the chars before this index may be dropped from the buffer
+     */
+    private int released;
+
+    private boolean eof;
+
+    public ReaderCharSource(Reader reader) {
+        this(reader, false);
+    }
+
+    /**
+     * @param reader    the input
+     * @param streaming true to forget the chars that are released
+     */
+    public ReaderCharSource(Reader reader, boolean streaming) {
+        this.reader = reader;
+        this.streaming = streaming;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (index == length && !fill()) {
+            return -1;
+        }
+        return buffer[index++ - base];
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (released > base) {
+            //only the chars of the current token are kept
+            System.arraycopy(buffer, released - base, buffer, 0, length - released);
+            base = released;
+        }
+        if (length - base + BLOCK_SIZE > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length - base + BLOCK_SIZE));
+        }
+        int n;
+        do {
+            n = reader.read(buffer, length - base, BLOCK_SIZE);
+        } while (n == 0);
+        if (n == -1) {
+            eof = true;
+            return false;
+        }
+        for (int i = length - base, max = i + n; i < max; i++) {
+            if (buffer[i] == '\n') {
+                lineIndex.addLineStart(base + i + 1);
+            }
+        }
+        length += n;
+        return true;
+    }
+
+    @Override
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public void rewind(int index) {
+        if (index < base || index > length) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        this.index = index;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (streaming) {
+            return new String(buffer, start - base, end - start);
+        }
+        return new CharSlice(buffer, start, end - start);
+    }
+
+    @Override
+    public LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    @Override
+    public void release(int index) {
+        if (streaming && index > released) {
+            released = index;
+            lineIndex.release(index);
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return streaming;
+    }
+}
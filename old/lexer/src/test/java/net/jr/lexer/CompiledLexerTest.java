@@ -0,0 +1,137 @@
+package net.jr.lexer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class CompiledLexerTest {
+
+    private static Lexer newLexer() {
+        Lexer lexer = Lexer.forLexemes(Lexemes.cIdentifier(), Lexemes.cInteger(), Lexemes.literal("int"));
+        lexer.setFilteredOut(Lexemes.whitespace());
+        return lexer;
+    }
+
+    @Test
+    public void testSettersThrow() {
+        Lexer compiled = newLexer().compile();
+        Assert.assertTrue(compiled.isCompiled());
+        Assert.assertSame(compiled, compiled.compile());
+        try {
+            compiled.setFilteredOut(Lexemes.newLine());
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        try {
+            compiled.setTokenListener(t -> t);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        try {
+            compiled.setAlgorithm(LexerAlgorithm.Dfa);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        try {
+            compiled.getFilteredOut().clear();
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testCompileKeepsSettings() {
+        Lexer lexer = newLexer();
+        lexer.setAlgorithm(LexerAlgorithm.Dfa);
+        Lexer compiled = lexer.compile();
+        Assert.assertFalse(lexer.isCompiled());
+        Assert.assertEquals(LexerAlgorithm.Dfa, compiled.getAlgorithm());
+        Assert.assertEquals(lexer.getTokenTypes(), compiled.getTokenTypes());
+        Assert.assertTrue(compiled.isFilteredOut(Lexemes.whitespace()));
+
+        //the original lexer may still be modified, without changing the compiled one
+        lexer.setFilteredOut(Lexemes.newLine());
+        Assert.assertFalse(compiled.isFilteredOut(Lexemes.newLine()));
+    }
+
+    @Test
+    public void testTokenListenerFactory() {
+        Lexer lexer = newLexer();
+        List<List<String>> seen = new ArrayList<>();
+        lexer.setTokenListenerFactory(() -> {
+            List<String> list = new ArrayList<>();
+            seen.add(list);
+            return token -> {
+                list.add(token.getText());
+                return token;
+            };
+        });
+        Lexer compiled = lexer.compile();
+        compiled.tokenize("a b");
+        compiled.tokenize("int c");
+        Assert.assertEquals(2, seen.size());
+        Assert.assertEquals("[a, b, ]", seen.get(0).toString());
+        Assert.assertEquals("[int, c, ]", seen.get(1).toString());
+    }
+
+    @Test
+    public void testListenerDiscardsTokens() {
+        Lexer lexer = newLexer();
+        List<Token> tokens = new ArrayList<>();
+        lexer.iterator(new StringReader("a 1 b 2"), t -> t.getTokenType().equals(Lexemes.cInteger()) ? null : t)
+                .forEachRemaining(tokens::add);
+        Assert.assertEquals(3, tokens.size());
+        Assert.assertEquals("a", tokens.get(0).getText());
+        Assert.assertEquals("b", tokens.get(1).getText());
+        Assert.assertEquals(Lexemes.eof(), tokens.get(2).getTokenType());
+    }
+
+    @Test
+    public void testSharedTerminals() {
+        Terminal identifier = Lexemes.cIdentifier();
+        Terminal whitespace = Lexemes.whitespace();
+        identifier.setId(42);
+        whitespace.setId(43);
+        Lexer lexer = Lexer.forLexemes(Lexemes.cInteger(), identifier);
+        lexer.setFilteredOut(whitespace);
+        lexer.compile();
+        //the ids that were given by the grammar are not changed
+        Assert.assertEquals(42, identifier.getId());
+        Assert.assertEquals(43, whitespace.getId());
+    }
+
+    @Test
+    public void testConcurrentStreams() throws Exception {
+        Lexer compiled = newLexer().compile();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                final int n = i;
+                futures.add(executor.submit(() -> {
+                    StringBuilder sb = new StringBuilder();
+                    for (int k = 0; k < 100 + n; k++) {
+                        sb.append(k % 2 == 0 ? "int x" : " ").append(k).append(' ');
+                    }
+                    return compiled.tokenize(sb.toString()).size();
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                int words = 100 + i;
+                //'int' and 'x12' for the even numbers, a number for the odd ones, and eof
+                int expected = ((words + 1) / 2) * 2 + words / 2 + 1;
+                Assert.assertEquals(expected, futures.get(i).get().intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
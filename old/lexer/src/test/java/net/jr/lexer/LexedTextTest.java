@@ -0,0 +1,139 @@
+package net.jr.lexer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class LexedTextTest {
+
+    private static Lexer newLexer(LexerAlgorithm algorithm) {
+        Lexer lexer = Lexer.forLexemes(Lexemes.cIdentifier(), Lexemes.cInteger(), Lexemes.cFloatingPoint(),
+                Lexemes.literal("int"), Lexemes.literal("+"), Lexemes.multilineComment("/*", "*/"));
+        lexer.setFilteredOut(Lexemes.whitespace());
+        lexer.setFilteredOut(Lexemes.newLine());
+        lexer.setAlgorithm(algorithm);
+        return lexer.compile();
+    }
+
+    private static void assertSameTokens(List<Token> expected, List<Token> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Token e = expected.get(i);
+            Token a = actual.get(i);
+            Assert.assertEquals(e.getTokenType(), a.getTokenType());
+            Assert.assertEquals(e.getOffset(), a.getOffset());
+            Assert.assertEquals(e.getText(), a.getText());
+            Assert.assertEquals(e.getPosition(), a.getPosition());
+        }
+    }
+
+    @Test
+    public void testStates() {
+        Lexer lexer = newLexer(LexerAlgorithm.Merged);
+        String text = "ab 12+3";
+        LexerStream stream = lexer.iterator(text, LineIndex.forText(text), 0);
+        Assert.assertEquals(new LexerState(0, 0), stream.getState());
+        stream.next();
+        //the space had to be read to find the end of 'ab'
+        Assert.assertEquals(new LexerState(2, 3), stream.getState());
+        stream.next();
+        Assert.assertEquals(new LexerState(5, 6), stream.getState());
+
+        //resume after '12'
+        LexerStream resumed = lexer.iterator(text, LineIndex.forText(text), stream.getState());
+        Assert.assertEquals("+", resumed.next().getText());
+        Token three = resumed.next();
+        Assert.assertEquals("3", three.getText());
+        Assert.assertEquals(6, three.getOffset());
+        //the end of the input was read
+        Assert.assertEquals(new LexerState(7, 8), resumed.getState());
+        Assert.assertEquals(Lexemes.eof(), resumed.next().getTokenType());
+    }
+
+    @Test
+    public void testMinimalChange() {
+        Lexer lexer = newLexer(LexerAlgorithm.Merged);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("int a").append(i).append(" + ").append(i).append('\n');
+        }
+        String text = sb.toString();
+        LexedText lexedText = new LexedText(lexer, text);
+        int offset = text.indexOf("a500");
+        LineIndex lineIndex = lexedText.getLineIndex();
+
+        //'a500' -> 'ab500'
+        String newText = text.substring(0, offset + 1) + "b" + text.substring(offset + 1);
+        LexedText.Change change = lexedText.edit(newText, TextEdit.insert(offset + 1, "b"));
+        Assert.assertEquals(1, change.getRemovedCount());
+        Assert.assertEquals(1, change.getInsertedTokens().size());
+        Assert.assertEquals("ab500", change.getInsertedTokens().get(0).getText());
+        assertSameTokens(new LexedText(lexer, newText).getTokens(), lexedText.getTokens());
+
+        //an unterminated comment changes everything up to the end
+        String validText = newText;
+        newText = newText.substring(0, offset) + "/*" + newText.substring(offset);
+        try {
+            lexedText.edit(newText, TextEdit.insert(offset, "/*"));
+            Assert.fail();
+        } catch (LexicalError e) {
+            //expected
+        }
+        //the tokens are left unchanged
+        assertSameTokens(new LexedText(lexer, validText).getTokens(), lexedText.getTokens());
+        //then closed later
+        int end = newText.indexOf("a700");
+        newText = newText.substring(0, end) + "*/" + newText.substring(end);
+        change = lexedText.edit(newText, Arrays.asList(TextEdit.insert(offset, "/*"), TextEdit.insert(end, "*/")));
+        Assert.assertEquals(1, change.getInsertedTokens().size());
+        Assert.assertEquals(Lexemes.multilineComment("/*", "*/"), change.getInsertedTokens().get(0).getTokenType());
+        assertSameTokens(new LexedText(lexer, newText).getTokens(), lexedText.getTokens());
+        //the line index is patched
+        Assert.assertSame(lineIndex, lexedText.getLineIndex());
+    }
+
+    private void testRandomEdits(LexerAlgorithm algorithm) {
+        Lexer lexer = newLexer(algorithm);
+        String text = "int x + 12 /* a */ 3.5 + y1\nint z";
+        LexedText lexedText = new LexedText(lexer, text);
+        Random random = new Random(42);
+        String chars = "ab1.5+ \n/*int";
+        int done = 0;
+        while (done < 500) {
+            int offset = random.nextInt(text.length() + 1);
+            int removed = Math.min(random.nextInt(4), text.length() - offset);
+            StringBuilder inserted = new StringBuilder();
+            for (int i = random.nextInt(4); i > 0; i--) {
+                inserted.append(chars.charAt(random.nextInt(chars.length())));
+            }
+            String newText = text.substring(0, offset) + inserted + text.substring(offset + removed);
+            LexedText expected;
+            try {
+                expected = new LexedText(lexer, newText);
+            } catch (LexicalError e) {
+                //only the valid texts are kept
+                continue;
+            }
+            lexedText.edit(newText, TextEdit.replace(offset, removed, inserted.toString()));
+            assertSameTokens(expected.getTokens(), lexedText.getTokens());
+            for (int i = 0; i < expected.getTokens().size(); i++) {
+                Assert.assertEquals(expected.getState(i), lexedText.getState(i));
+            }
+            text = newText;
+            done++;
+        }
+    }
+
+    @Test
+    public void testRandomEditsMerged() {
+        testRandomEdits(LexerAlgorithm.Merged);
+    }
+
+    @Test
+    public void testRandomEditsDfa() {
+        testRandomEdits(LexerAlgorithm.Dfa);
+    }
+}
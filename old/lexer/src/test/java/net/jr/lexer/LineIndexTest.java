@@ -0,0 +1,99 @@
+package net.jr.lexer;
+
+import net.jr.common.Position;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+public class LineIndexTest {
+
+    @Test
+    public void testGetPosition() {
+        LineIndex lineIndex = new LineIndex("test.c");
+        // "ab\n\ncd"
+        lineIndex.addLineStart(3);
+        lineIndex.addLineStart(4);
+        Assert.assertEquals(3, lineIndex.getLinesCount());
+        Assert.assertEquals(new Position(1, 1, "test.c"), lineIndex.getPosition(0));
+        Assert.assertEquals(new Position(1, 3, "test.c"), lineIndex.getPosition(2));
+        Assert.assertEquals(new Position(2, 1, "test.c"), lineIndex.getPosition(3));
+        Assert.assertEquals(new Position(3, 1, "test.c"), lineIndex.getPosition(4));
+        Assert.assertEquals(new Position(3, 3, "test.c"), lineIndex.getPosition(6));
+    }
+
+    @Test
+    public void testRelease() {
+        LineIndex lineIndex = new LineIndex();
+        for (int i = 1; i <= 200; i++) {
+            lineIndex.addLineStart(i * 10);
+        }
+        lineIndex.release(1505);
+        Assert.assertEquals(201, lineIndex.getLinesCount());
+        Assert.assertEquals(new Position(151, 6), lineIndex.getPosition(1505));
+        Assert.assertEquals(new Position(151, 1), lineIndex.getPosition(1500));
+        Assert.assertEquals(new Position(201, 3), lineIndex.getPosition(2002));
+        try {
+            lineIndex.getPosition(1499);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //released
+        }
+
+        //lines are still added after a release
+        lineIndex.addLineStart(2010);
+        lineIndex.release(2010);
+        Assert.assertEquals(new Position(202, 1), lineIndex.getPosition(2010));
+        Assert.assertEquals(2010, lineIndex.getLineStart(202));
+    }
+
+    private static void assertSameLines(LineIndex expected, LineIndex actual, int length) {
+        Assert.assertEquals(expected.getLinesCount(), actual.getLinesCount());
+        for (int offset = 0; offset <= length; offset++) {
+            Assert.assertEquals(expected.getPosition(offset), actual.getPosition(offset));
+        }
+    }
+
+    @Test
+    public void testEdit() {
+        Random random = new Random(42);
+        String text = "ab\ncd\n\nef";
+        LineIndex lineIndex = LineIndex.forText(text);
+        for (int n = 0; n < 500; n++) {
+            int offset = random.nextInt(text.length() + 1);
+            int removed = Math.min(random.nextInt(4), text.length() - offset);
+            StringBuilder inserted = new StringBuilder();
+            for (int i = random.nextInt(4); i > 0; i--) {
+                inserted.append(random.nextBoolean() ? '\n' : 'x');
+            }
+            String newText = text.substring(0, offset) + inserted + text.substring(offset + removed);
+            TextEdit edit = TextEdit.replace(offset, removed, inserted.toString());
+
+            //a cancelled edit gives back the previous index
+            lineIndex.beginEdit(edit, newText);
+            assertSameLines(LineIndex.forText(newText), lineIndex, newText.length());
+            lineIndex.cancelEdit();
+            assertSameLines(LineIndex.forText(text), lineIndex, text.length());
+
+            lineIndex.edit(edit, newText);
+            assertSameLines(LineIndex.forText(newText), lineIndex, newText.length());
+            text = newText;
+        }
+    }
+
+    @Test
+    public void testTokenPositions() {
+        for (LexerAlgorithm algorithm : new LexerAlgorithm[]{LexerAlgorithm.Merged, LexerAlgorithm.Dfa}) {
+            Lexer lexer = Lexer.forLexemes(Lexemes.cIdentifier(), Lexemes.newLine());
+            lexer.setAlgorithm(algorithm);
+            List<Token> tokens = lexer.ignoringWhiteSpaces().tokenize("abc  de\n\n  f");
+            Assert.assertEquals(6, tokens.size());
+            Assert.assertEquals(5, tokens.get(1).getOffset());
+            Assert.assertEquals(new Position(1, 6), tokens.get(1).getPosition());
+            Assert.assertEquals(new Position(2, 1), tokens.get(3).getPosition());
+            Assert.assertEquals(new Position(3, 3), tokens.get(4).getPosition());
+            Assert.assertEquals(new Position(3, 4), tokens.get(5).getPosition());
+        }
+    }
+}
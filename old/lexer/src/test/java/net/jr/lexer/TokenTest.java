@@ -0,0 +1,61 @@
+package net.jr.lexer;
+
+import net.jr.common.Position;
+import net.jr.lexer.basicterminals.Literal;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TokenTest {
+
+    @Test
+    public void testSharedText() {
+        Literal kwInt = new Literal("int");
+        for (LexerAlgorithm algorithm : new LexerAlgorithm[]{LexerAlgorithm.Merged, LexerAlgorithm.Dfa}) {
+            Lexer lexer = Lexer.forLexemes(kwInt, Lexemes.cIdentifier());
+            lexer.setAlgorithm(algorithm);
+            List<Token> tokens = lexer.ignoringWhiteSpaces().tokenize("int integer int");
+            Assert.assertEquals(4, tokens.size());
+
+            //keywords share the text of the literal
+            Assert.assertSame(kwInt.getConstantText(), tokens.get(0).getTextSequence());
+            Assert.assertSame(tokens.get(0).getText(), tokens.get(2).getText());
+
+            //other tokens are views over the input
+            CharSequence identifier = tokens.get(1).getTextSequence();
+            Assert.assertFalse(identifier instanceof String);
+            Assert.assertEquals("integer", identifier.toString());
+            Assert.assertEquals("teg", identifier.subSequence(2, 5).toString());
+            Assert.assertSame(tokens.get(1).getText(), tokens.get(1).getText());
+        }
+    }
+
+    @Test
+    public void testMovedByEdits() {
+        String text = "ab cd\nef";
+        LineIndex lineIndex = LineIndex.forText(text);
+        List<Token> tokens = new ArrayList<>();
+        Lexer.forLexemes(Lexemes.cIdentifier(), Lexemes.newLine()).ignoringWhiteSpaces()
+                .iterator(text, lineIndex, 0).forEachRemaining(tokens::add);
+        Token cd = tokens.get(1);
+        Token ef = tokens.get(3);
+        Assert.assertEquals(new Position(2, 1), ef.getPosition());
+
+        //"ab cd\nef" -> "ab\n\n cd\nef" -> "ab\n\n cd\nxef"
+        lineIndex.edit(TextEdit.insert(2, "\n\n"), "ab\n\n cd\nef");
+        Assert.assertEquals(new Position(3, 2), cd.getPosition());
+        lineIndex.edit(TextEdit.insert(8, "x"), "ab\n\n cd\nxef");
+        Assert.assertEquals(5, cd.getOffset());
+        Assert.assertEquals(9, ef.getOffset());
+        Assert.assertEquals(new Position(4, 2), ef.getPosition());
+        Assert.assertEquals(0, tokens.get(0).getOffset());
+
+        //a pending edit does not move them
+        lineIndex.beginEdit(TextEdit.delete(0, 1), "b\n\n cd\nxef");
+        Assert.assertEquals(9, ef.getOffset());
+        lineIndex.cancelEdit();
+        Assert.assertEquals(9, ef.getOffset());
+    }
+}
@@ -75,6 +75,26 @@ public abstract class AbstractLexerTestCases {
         lexer.tokenize("aBc");
     }
 
+    @Test
+    public void testBacktracking() {
+        Terminal dot = new SingleChar('.');
+        Terminal ellipsis = new Literal("...");
+        Lexer lexer = getLexer(dot, ellipsis, Lexemes.cIdentifier());
+
+        //the lexer has to go back after a partial match of '...'
+        List<Token> tokens = lexer.tokenize("a..b..");
+        Assert.assertEquals(7, tokens.size());
+        Assert.assertEquals(dot, tokens.get(1).getTokenType());
+        Assert.assertEquals(dot, tokens.get(2).getTokenType());
+        Assert.assertEquals("b", tokens.get(3).getText());
+        Assert.assertEquals(5, tokens.get(5).getOffset());
+
+        tokens = lexer.tokenize("....");
+        Assert.assertEquals(3, tokens.size());
+        Assert.assertEquals(ellipsis, tokens.get(0).getTokenType());
+        Assert.assertEquals(dot, tokens.get(1).getTokenType());
+    }
+
     @Test
     public void testWordOk() {
         Lexer lexer = getLexer(Arrays.asList(new Word("_", "0123456789")));
@@ -406,7 +426,7 @@ public abstract class AbstractLexerTestCases {
         Assert.assertEquals(27, lexer.getTokenTypes().get(0).getPriority());
         Assert.assertEquals(27, lexer.getTokenTypes().get(0).getPriority());
 
-        Assert.assertEquals(1, lexer.tokenize("if").get(0).getTokenType().getId());
+        Assert.assertEquals(1, lexer.getTokenTypes().indexOf(lexer.tokenize("if").get(0).getTokenType()));
 
         lexer = getLexer(
                 Lexemes.lowercaseWord().withPriority(100),
@@ -415,14 +435,14 @@ public abstract class AbstractLexerTestCases {
         Assert.assertEquals(100, lexer.getTokenTypes().get(0).getPriority());
         Assert.assertEquals(11, lexer.getTokenTypes().get(1).getPriority());
 
-        Assert.assertEquals(0, lexer.tokenize("if").get(0).getTokenType().getId());
+        Assert.assertEquals(0, lexer.getTokenTypes().indexOf(lexer.tokenize("if").get(0).getTokenType()));
 
         for (int i = 0; i < 100; i++) {
             lexer = getLexer(
                     Lexemes.lowercaseWord(),
                     Lexemes.literal("if")
             );
-            Assert.assertEquals(1, lexer.tokenize("if").get(0).getTokenType().getId());
+            Assert.assertEquals(1, lexer.getTokenTypes().indexOf(lexer.tokenize("if").get(0).getTokenType()));
         }
 
     }
@@ -0,0 +1,19 @@
+package net.jr.lexer.expr;
+
+import net.jr.common.Symbol;
+import net.jr.lexer.Lexer;
+import net.jr.lexer.LexerAlgorithm;
+
+/**
+ * Lexer test using the determinized automaton algorithm
+ */
+public class DfaLexerTest extends AbstractLexerTestCases {
+
+    @Override
+    @SafeVarargs
+    protected final <L extends Symbol> Lexer getLexer(L... tokenTypes) {
+        Lexer lexer = Lexer.forLexemes(tokenTypes);
+        lexer.setAlgorithm(LexerAlgorithm.Dfa);
+        return lexer;
+    }
+}
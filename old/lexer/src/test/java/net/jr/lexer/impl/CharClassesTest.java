@@ -0,0 +1,44 @@
+package net.jr.lexer.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class CharClassesTest {
+
+    @Test
+    public void testRanges() {
+        CharConstraint.Builder az = CharConstraint.Builder.inRange('a', 'z');
+        Assert.assertArrayEquals(new int[]{'a', 'z'}, az.build().getRanges());
+        Assert.assertArrayEquals(new int[]{0, 'a' - 1, 'z' + 1, Character.MAX_VALUE}, CharConstraint.Builder.not(az).build().getRanges());
+        Assert.assertArrayEquals(new int[]{'a', 'c', 'x', 'x'}, CharConstraint.Builder.inList("xcab").build().getRanges());
+        CharConstraint or = CharConstraint.Builder.or(az, CharConstraint.Builder.inRange('A', 'Z')).build();
+        Assert.assertArrayEquals(new int[]{'A', 'Z', 'a', 'z'}, or.getRanges());
+        CharConstraint and = CharConstraint.Builder.and(az, CharConstraint.Builder.not(CharConstraint.Builder.eq('e'))).build();
+        Assert.assertArrayEquals(new int[]{'a', 'd', 'f', 'z'}, and.getRanges());
+    }
+
+    @Test
+    public void testClasses() {
+        CharConstraint digit = CharConstraint.Builder.inRange('0', '9').build();
+        CharConstraint zero = CharConstraint.Builder.eq('0').build();
+        CharConstraint notLetter = CharConstraint.Builder.not(CharConstraint.Builder.inRange('a', 'z')).build();
+        CharClasses classes = new CharClasses(Arrays.asList(digit, zero, notLetter));
+
+        // {'0'}, {'1'..'9'}, {'a'..'z'}, everything else
+        Assert.assertEquals(4, classes.getClassesCount());
+        Assert.assertEquals(classes.classOf('1'), classes.classOf('9'));
+        Assert.assertNotEquals(classes.classOf('0'), classes.classOf('1'));
+        Assert.assertEquals(classes.classOf('a'), classes.classOf('q'));
+        Assert.assertEquals(classes.classOf(' '), classes.classOf('中'));
+        Assert.assertEquals(classes.classOf('/'), classes.classOf('{'));
+
+        for (char c = 0; c < Character.MAX_VALUE; c++) {
+            char r = classes.getRepresentative(classes.classOf(c));
+            Assert.assertEquals(digit.test(c), digit.test(r));
+            Assert.assertEquals(zero.test(c), zero.test(r));
+            Assert.assertEquals(notLetter.test(c), notLetter.test(r));
+        }
+    }
+}
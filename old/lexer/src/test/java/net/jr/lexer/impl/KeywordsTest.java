@@ -0,0 +1,60 @@
+package net.jr.lexer.impl;
+
+import net.jr.lexer.*;
+import net.jr.lexer.basicterminals.Literal;
+import net.jr.lexer.basicterminals.Word;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class KeywordsTest {
+
+    @Test
+    public void testExtract() {
+        Terminal kwInt = new Literal("int");
+        Terminal arrow = new Literal("->");
+        Terminal identifier = Lexemes.cIdentifier();
+        Lexer lexer = Lexer.forLexemes(kwInt, arrow, identifier);
+        Keywords keywords = lexer.getKeywords();
+        Assert.assertTrue(keywords.isKeyword(kwInt));
+        Assert.assertFalse(keywords.isKeyword(arrow));
+        Assert.assertEquals(kwInt, keywords.resolve(identifier, "int"));
+        Assert.assertNull(keywords.resolve(identifier, "integer"));
+        Assert.assertNull(keywords.resolve(identifier, "in"));
+    }
+
+    @Test
+    public void testAmbiguous() {
+        Terminal kwInt = new Literal("int");
+        //'int' is also matched by a lowercase word : the literal keeps its automaton
+        Lexer lexer = Lexer.forLexemes(kwInt, Lexemes.cIdentifier(), new Word("abcdefghijklmnopqrstuvwxyz"));
+        Assert.assertFalse(lexer.getKeywords().isKeyword(kwInt));
+
+        //same priority
+        lexer = Lexer.forLexemes(kwInt, Lexemes.cIdentifier().withPriority(2));
+        Assert.assertFalse(lexer.getKeywords().isKeyword(kwInt));
+    }
+
+    @Test
+    public void testTokenize() {
+        Terminal kwInt = new Literal("int");
+        Terminal kwIf = new Literal("if");
+        Terminal identifier = Lexemes.cIdentifier();
+        for (LexerAlgorithm algorithm : new LexerAlgorithm[]{LexerAlgorithm.Merged, LexerAlgorithm.Dfa}) {
+            Lexer lexer = Lexer.forLexemes(kwInt, kwIf, identifier, Lexemes.singleChar(';'));
+            lexer.setAlgorithm(algorithm);
+            List<Token> tokens = lexer.ignoringWhiteSpaces().tokenize("int i; if iff int;");
+            Assert.assertEquals(8, tokens.size());
+            Assert.assertEquals(kwInt, tokens.get(0).getTokenType());
+            Assert.assertEquals(identifier, tokens.get(1).getTokenType());
+            Assert.assertEquals(kwIf, tokens.get(3).getTokenType());
+            Assert.assertEquals("if", tokens.get(3).getText());
+            Assert.assertEquals(identifier, tokens.get(4).getTokenType());
+            Assert.assertEquals(kwInt, tokens.get(5).getTokenType());
+
+            lexer.setKeywordsLookup(false);
+            Assert.assertEquals(kwInt, lexer.tokenize("int").get(0).getTokenType());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package net.jr.lexer.impl;
+
+import net.jr.lexer.*;
+import net.jr.lexer.automaton.State;
+import net.jr.lexer.basicterminals.Literal;
+import net.jr.lexer.basicterminals.SingleChar;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LexerAutomataTest {
+
+    @Test
+    public void testShared() {
+        List<Terminal> terminals = Arrays.asList(new Literal("int"), Lexemes.cIdentifier(), Lexemes.singleChar(';'));
+        Lexer lexer1 = Lexer.forLexemes(terminals);
+        LexerAutomata automata = lexer1.getAutomata();
+        Assert.assertSame(automata, lexer1.getAutomata());
+        Assert.assertSame(automata.getDfa(), lexer1.getAutomata().getDfa());
+        //shared with the compiled copy
+        Assert.assertSame(automata, lexer1.compile().getAutomata());
+
+        //one per lexer
+        Lexer lexer2 = Lexer.forLexemes(terminals);
+        Assert.assertNotSame(automata, lexer2.getAutomata());
+
+        //other terminals
+        LexerAutomata automata2 = lexer2.getAutomata();
+        lexer2.setFilteredOut(Lexemes.whitespace());
+        Assert.assertNotSame(automata2, lexer2.getAutomata());
+
+        //other options
+        lexer1.setKeywordsLookup(false);
+        Assert.assertNotSame(automata, lexer1.getAutomata());
+        Assert.assertEquals(3, lexer1.getAutomata().getAutomatons().size());
+        Assert.assertEquals(2, automata.getAutomatons().size());
+    }
+
+    @Test
+    public void testPriorityChange() {
+        Terminal word = Lexemes.lowercaseWord().withPriority(27);
+        Terminal ifKeyword = Lexemes.literal("if").withPriority(100);
+        for (LexerAlgorithm algorithm : LexerAlgorithm.values()) {
+            word.setPriority(27);
+            Lexer lexer = Lexer.forLexemes(word, ifKeyword);
+            lexer.setAlgorithm(algorithm);
+            Assert.assertEquals(ifKeyword, lexer.tokenize("if").get(0).getTokenType());
+
+            //seen by the next streams
+            word.setPriority(200);
+            Assert.assertEquals(algorithm.name(), word, lexer.tokenize("if").get(0).getTokenType());
+        }
+    }
+
+    private static List<Integer> ids(State<Character> initial) {
+        List<Integer> ids = new ArrayList<>();
+        StatesVisitor.visit(initial, s -> ids.add(s.getId()));
+        return ids;
+    }
+
+    @Test
+    public void testMergeKeepsSharedStates() {
+        Terminal identifier = Lexemes.cIdentifier();
+        Lexer lexer1 = Lexer.forLexemes(identifier, new SingleChar('#'));
+        List<Integer> ids = ids(lexer1.getAutomata().getMergedInitialState());
+
+        //another merged automaton, made of the same identifier states
+        Lexer lexer2 = Lexer.forLexemes(Lexemes.cInteger(), Lexemes.cFloatingPoint(), new SingleChar('#'), identifier);
+        lexer2.getAutomata().getMergedInitialState();
+        Assert.assertEquals(ids, ids(lexer1.getAutomata().getMergedInitialState()));
+        Assert.assertEquals(4, lexer1.tokenize("a#b").size());
+    }
+
+    @Test
+    public void testConcurrentStreams() throws InterruptedException {
+        Lexer lexer = Lexer.forLexemes(new Literal("int"), Lexemes.cIdentifier(), Lexemes.singleChar(';')).ignoringWhiteSpaces();
+        lexer.setAlgorithm(LexerAlgorithm.Dfa);
+        Thread[] threads = new Thread[4];
+        boolean[] ok = new boolean[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int n = i;
+            threads[i] = new Thread(() -> {
+                boolean result = true;
+                for (int j = 0; j < 200; j++) {
+                    result &= lexer.tokenize("int a; int b" + j + ";").size() == 7;
+                }
+                ok[n] = result;
+            });
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+            Assert.assertTrue(ok[i]);
+        }
+    }
+}
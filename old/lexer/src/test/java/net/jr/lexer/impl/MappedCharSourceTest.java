@@ -0,0 +1,122 @@
+package net.jr.lexer.impl;
+
+import net.jr.common.Position;
+import net.jr.lexer.Lexemes;
+import net.jr.lexer.Lexer;
+import net.jr.lexer.LexerStream;
+import net.jr.lexer.Token;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MappedCharSourceTest {
+
+    private static Path tempFile(String content) throws IOException {
+        Path path = Files.createTempFile("mapped", ".txt");
+        path.toFile().deleteOnExit();
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    @Test
+    public void testDecode() throws IOException {
+        String txt = "aé€😀z\n";
+        MappedCharSource source = new MappedCharSource(tempFile(txt));
+        StringBuilder sb = new StringBuilder();
+        List<Integer> indexes = new ArrayList<>();
+        int c;
+        while (true) {
+            indexes.add(source.getIndex());
+            if ((c = source.read()) == -1) {
+                break;
+            }
+            sb.append((char) c);
+        }
+        Assert.assertEquals(txt, sb.toString());
+        Assert.assertEquals("[0, 1, 3, 6, 7, 10, 11, 12]", indexes.toString());
+
+        //go back to the low surrogate
+        source.rewind(7);
+        Assert.assertEquals(0xDE00, source.read());
+        Assert.assertEquals("€😀", source.subSequence(3, 10).toString());
+
+        //the length and the chars of a slice
+        CharSequence slice = source.subSequence(1, 10);
+        Assert.assertEquals(4, slice.length());
+        Assert.assertEquals('€', slice.charAt(1));
+        Assert.assertEquals(0xDE00, slice.charAt(3));
+        CharSequence ascii = source.subSequence(10, 12);
+        Assert.assertEquals(2, ascii.length());
+        Assert.assertEquals('z', ascii.charAt(0));
+        Assert.assertEquals('\n', ascii.charAt(1));
+        Assert.assertEquals(2, source.getLineIndex().getLinesCount());
+    }
+
+    @Test
+    public void testLexer() throws IOException {
+        Path path = tempFile("abc  \"déf\"\n  ghi");
+        Lexer lexer = Lexer.forLexemes(Lexemes.cIdentifier(), Lexemes.cString(), Lexemes.newLine()).ignoringWhiteSpaces();
+        LexerStream stream = lexer.iterator(path);
+        List<Token> tokens = new ArrayList<>();
+        while (stream.hasNext()) {
+            tokens.add(stream.next());
+            if (tokens.size() == 2) {
+                //the state is expressed in bytes too
+                Assert.assertEquals(11, stream.getState().getOffset());
+            }
+        }
+        Assert.assertEquals(5, tokens.size());
+        Assert.assertEquals("abc", tokens.get(0).getText());
+        Assert.assertEquals(5, tokens.get(1).getOffset());
+        Assert.assertEquals("\"déf\"", tokens.get(1).getText());
+        Assert.assertEquals(new Position(2, 3, path.toString()), tokens.get(3).getPosition());
+        Assert.assertEquals("ghi", tokens.get(3).getText());
+    }
+
+    private static List<Token> tokenize(LexerStream stream) {
+        List<Token> tokens = new ArrayList<>();
+        stream.forEachRemaining(tokens::add);
+        return tokens;
+    }
+
+    @Test
+    public void testColumns() throws IOException {
+        String txt = "\"é€😀\" abc\n  \"é\" x\nghi";
+        Path path = tempFile(txt);
+        Lexer lexer = Lexer.forLexemes(Lexemes.cIdentifier(), Lexemes.cString(), Lexemes.newLine()).ignoringWhiteSpaces();
+        List<Token> mapped = tokenize(lexer.iterator(path));
+        List<Token> read = tokenize(lexer.iterator(new StringReader(txt)));
+        Assert.assertEquals(read.size(), mapped.size());
+        for (int i = 0; i < read.size(); i++) {
+            //the offsets are in bytes, but the positions are the same
+            Assert.assertEquals(read.get(i).getText(), mapped.get(i).getText());
+            Assert.assertEquals(read.get(i).getPosition().getLine(), mapped.get(i).getPosition().getLine());
+            Assert.assertEquals(read.get(i).getPosition().getColumn(), mapped.get(i).getPosition().getColumn());
+        }
+        Assert.assertEquals(new Position(1, 8, path.toString()), mapped.get(1).getPosition());
+        Assert.assertEquals(new Position(2, 7, path.toString()), mapped.get(4).getPosition());
+    }
+
+    @Test
+    public void testCharset() throws IOException {
+        Path path = Files.createTempFile("mapped", ".txt");
+        path.toFile().deleteOnExit();
+        Files.write(path, "déf\n é".getBytes(StandardCharsets.ISO_8859_1));
+        Lexer lexer = Lexer.forLexemes(Lexemes.lowercaseWord(), Lexemes.singleChar('é'), Lexemes.newLine()).ignoringWhiteSpaces();
+        List<Token> tokens = tokenize(lexer.iterator(path, StandardCharsets.ISO_8859_1, null));
+        Assert.assertEquals("d", tokens.get(0).getText());
+        Assert.assertEquals("é", tokens.get(1).getText());
+        Assert.assertEquals(new Position(2, 2, path.toString()), tokens.get(4).getPosition());
+        Assert.assertEquals("é", tokens.get(4).getText());
+
+        //UTF-8 is still mapped
+        Assert.assertTrue(MappedCharSource.open(path, StandardCharsets.UTF_8) instanceof MappedCharSource);
+    }
+}
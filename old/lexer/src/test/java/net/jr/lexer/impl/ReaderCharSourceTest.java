@@ -0,0 +1,74 @@
+package net.jr.lexer.impl;
+
+import net.jr.common.Position;
+import net.jr.lexer.Lexemes;
+import net.jr.lexer.Lexer;
+import net.jr.lexer.LexerStream;
+import net.jr.lexer.Token;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class ReaderCharSourceTest {
+
+    private static String lines(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("word").append(i).append(" x\n");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testRelease() throws IOException {
+        String txt = lines(5000);
+        ReaderCharSource source = new ReaderCharSource(new StringReader(txt), true);
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = source.read()) != -1) {
+            sb.append((char) c);
+            if (c == '\n') {
+                source.release(source.getIndex());
+            }
+        }
+        Assert.assertEquals(txt, sb.toString());
+        Assert.assertEquals(5001, source.getLineIndex().getLinesCount());
+        try {
+            source.rewind(0);
+            Assert.fail();
+        } catch (IndexOutOfBoundsException e) {
+            //forgotten
+        }
+        try {
+            source.getLineIndex().getLineStart(1);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //forgotten
+        }
+    }
+
+    @Test
+    public void testStreamingIterator() {
+        Lexer lexer = Lexer.forLexemes(Lexemes.cIdentifier(), Lexemes.newLine()).ignoringWhiteSpaces();
+        LexerStream stream = lexer.streamingIterator(new StringReader(lines(5000)), null);
+        //the positions are looked at once everything was read
+        List<Token> tokens = new ArrayList<>();
+        stream.forEachRemaining(tokens::add);
+        Iterator<Token> it = tokens.iterator();
+        for (int i = 0; i < 5000; i++) {
+            Token word = it.next();
+            Assert.assertEquals("word" + i, word.getText());
+            Assert.assertEquals(new Position(i + 1, 1), word.getPosition());
+            Token x = it.next();
+            Assert.assertEquals("x", x.getText());
+            Assert.assertEquals(new Position(i + 1, word.getText().length() + 2), x.getPosition());
+            Assert.assertEquals(Lexemes.newLine(), it.next().getTokenType());
+        }
+        Assert.assertEquals(Lexemes.eof(), it.next().getTokenType());
+    }
+}
@@ -0,0 +1,79 @@
+package net.jr.parser;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list, that is extended with {@link #append(Object)} in constant amortized time : the value of the repetitions of
+ * the {@link Grammar}, when parsing with {@link Reducer#rules()}.
+ * <p>
+ * The lists that are made by appending to the same list share its array : the first one is appended in place, as the shorter
+ * lists never read past their size, and the next ones copy the items first. So a list never changes once it has been returned
+ * by a reduction, even when it was kept by the user or when it is extended by several stacks of
+ * {@link net.jr.parser.impl.GLRParser}.
+ * </p>
+ *
+ * @param <T> type of the items
+ */
+final class AppendList<T> extends AbstractList<T> implements RandomAccess {
+
+    private final Items items;
+
+    private final int size;
+
+    /**
+     * The array that is shared by the lists, and the size of the longest one.
+     */
+    private static final class Items {
+
+        private Object[] array;
+
+        private int used;
+
+        Items(Object[] array, int used) {
+            this.array = array;
+            this.used = used;
+        }
+    }
+
+    AppendList() {
+        this(new Items(new Object[4], 0), 0);
+    }
+
+    private AppendList(Items items, int size) {
+        this.items = items;
+        this.size = size;
+    }
+
+    /**
+     * @param item an item
+     * @return a list with the items of this list, then the new item
+     */
+    AppendList<T> append(T item) {
+        Items target = items;
+        if (target.used != size) {
+            //another list was made from this one
+            target = new Items(Arrays.copyOf(items.array, Math.max(4, size * 2)), size);
+        } else if (size == target.array.length) {
+            target.array = Arrays.copyOf(target.array, size * 2);
+        }
+        target.array[size] = item;
+        target.used++;
+        return new AppendList<>(target, size + 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return (T) items.array[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
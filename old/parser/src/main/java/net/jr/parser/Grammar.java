@@ -15,6 +15,7 @@ import java.io.StringWriter;
 import java.security.MessageDigest;
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class Grammar {
@@ -25,6 +26,8 @@ public class Grammar {
     private Map<Symbol, Integer> precedenceLevels = new HashMap<>();
     private Symbol targetSymbol;
     private int counter = 0;
+    private volatile FirstSets firstSets;
+    private TableConstruction tableConstruction = TableConstruction.Lalr1;
 
     public Grammar() {
         this(null);
@@ -76,6 +79,7 @@ public class Grammar {
             targetSymbol = rule.getTarget();
         }
         rules.add(rule);
+        firstSets = null;
     }
 
     /**
@@ -127,6 +131,12 @@ public class Grammar {
                 return this;
             }
 
+            @Override
+            public RuleSpecifier withReduction(Function<List<Object>, ?> reduction) {
+                rule.setReduction(reduction);
+                return this;
+            }
+
             @Override
             public RuleSpecifier withName(String name) {
                 rule.setName(name);
@@ -197,6 +207,19 @@ public class Grammar {
         return terminals;
     }
 
+    /**
+     * Gets the FIRST sets and the nullable symbols of this grammar. They are computed once, and computed again only when a rule is added.
+     *
+     * @return the FIRST sets of all the symbols of this grammar
+     */
+    public FirstSets getFirstSets() {
+        FirstSets sets = firstSets;
+        if (sets == null) {
+            firstSets = sets = new FirstSets(this);
+        }
+        return sets;
+    }
+
     /**
      * Get all the different symbols known to the grammar
      *
@@ -240,6 +263,22 @@ public class Grammar {
         this.name = name;
     }
 
+    /**
+     * @return the way the action tables of the parsers of this grammar are built
+     */
+    public TableConstruction getTableConstruction() {
+        return tableConstruction;
+    }
+
+    /**
+     * Chooses the way the action tables of the parsers of this grammar are built. The default is {@link TableConstruction#Lalr1}.
+     *
+     * @param tableConstruction the construction of the tables
+     */
+    public void setTableConstruction(TableConstruction tableConstruction) {
+        this.tableConstruction = Objects.requireNonNull(tableConstruction);
+    }
+
     /**
      * Set the target rule, i.e. the rule that has to be accepted by the parser.
      *
@@ -399,7 +438,7 @@ public class Grammar {
      */
     public Parser createParser(Symbol symbol, boolean useActionTableCache) {
         Grammar grammar = getSubGrammar(symbol);
-        ActionTable actionTable = useActionTableCache ? ActionTableCaching.get(grammar) : ActionTable.lalr1(grammar);
+        ActionTable actionTable = useActionTableCache ? ActionTableCaching.get(grammar) : ActionTable.build(grammar, grammar.getTableConstruction());
         if (getLog().isTraceEnabled()) {
             getLog().trace("\n" + actionTable.toString());
         }
@@ -407,6 +446,29 @@ public class Grammar {
         return parser;
     }
 
+    /**
+     * Just a syntactic 'sugar' for createGLRParser(getTargetSymbol(), true);
+     *
+     * @return
+     */
+    public final GLRParser createGLRParser() {
+        return createGLRParser(getTargetSymbol(), true);
+    }
+
+    /**
+     * Create a parser that follows all the actions of the conflicts that this grammar does not resolve, instead of choosing
+     * one of them (see {@link GLRParser}).
+     *
+     * @param symbol
+     * @param useActionTableCache
+     * @return
+     */
+    public GLRParser createGLRParser(Symbol symbol, boolean useActionTableCache) {
+        Grammar grammar = getSubGrammar(symbol);
+        ActionTable actionTable = useActionTableCache ? ActionTableCaching.get(grammar) : ActionTable.build(grammar, grammar.getTableConstruction());
+        return new GLRParser(grammar, getLexer(), actionTable);
+    }
+
     protected Grammar getSubGrammar(Symbol symbol) {
         fixPrecedenceLevels();
         Set<Rule> targetRules = getRulesTargeting(symbol);
@@ -421,6 +483,7 @@ public class Grammar {
             Symbol start = new NonTerminal("(all)");
             Grammar cleanGrammar = new Grammar();
             cleanGrammar.precedenceLevels = precedenceLevels;
+            cleanGrammar.tableConstruction = tableConstruction;
             if (name != null) {
                 cleanGrammar.name = String.format("Subgrammar of '%s' targeting '%s'", name, symbol.toString());
             }
@@ -552,6 +615,7 @@ public class Grammar {
      *     oneOrMore(a) → a.
      *     oneOrMore(a) → oneOrMore(a) a.
      * </pre>
+     * When parsing with {@link Reducer#rules()}, the value of the symbol is the (immutable) {@link List} of the values of the occurrences.
      *
      * @param symbols
      * @return
@@ -559,11 +623,11 @@ public class Grammar {
     public NonTerminal oneOrMore(Symbol... symbols) {
         NonTerminal tmp = new NonTerminal();
         tmp.setName(makeName("oneOrMore"));
-        addRule(tmp, symbols);
+        addRule(tmp, symbols).withReduction(values -> appendItem(new AppendList<>(), values, 0));
         List<Symbol> list = new ArrayList<>();
         list.add(tmp);
         list.addAll(Arrays.asList(symbols));
-        addRule(tmp, list);
+        addRule(tmp, list).withReduction(values -> appendItem(values.get(0), values, 1));
         return tmp;
     }
 
@@ -573,6 +637,7 @@ public class Grammar {
      *     zeroOrMore(a) → oneOrMore(a).
      *     zeroOrMore(a) → ε.
      * </pre>
+     * When parsing with {@link Reducer#rules()}, the value of the symbol is the (immutable) {@link List} of the values of the occurrences.
      *
      * @param symbols
      * @return
@@ -580,12 +645,12 @@ public class Grammar {
     public NonTerminal zeroOrMore(Symbol... symbols) {
         NonTerminal tmp = new NonTerminal();
         tmp.setName(makeName("zeroOrMore"));
-        addRule(tmp, symbols);
+        addRule(tmp, symbols).withReduction(values -> appendItem(new AppendList<>(), values, 0));
         List<Symbol> list = new ArrayList<>();
         list.add(tmp);
         list.addAll(Arrays.asList(symbols));
-        addRule(tmp, list);
-        addRule(tmp, Lexemes.empty());
+        addRule(tmp, list).withReduction(values -> appendItem(values.get(0), values, 1));
+        addRule(tmp, Lexemes.empty()).withReduction(values -> new AppendList<>());
         return tmp;
     }
 
@@ -632,6 +697,9 @@ public class Grammar {
      *      }
      *      </pre>
      * </p>
+     * <p>
+     * When parsing with {@link Reducer#rules()}, the value of the symbol is the (immutable) {@link List} of the values of the items.
+     * </p>
      *
      * @param allowEmptyList is it ok to have an empty list ?
      * @param separator      the separator, (a good one may be "Lexemes.singleChar(',')")
@@ -642,10 +710,14 @@ public class Grammar {
         NonTerminal tmp = new NonTerminal("listOf(" + typeOfItems + ")");
 
         //a list may contain only one item
-        addRule(tmp, typeOfItems);
+        addRule(tmp, typeOfItems).withReduction(values -> appendItem(new AppendList<>(), values, 0));
 
-        addRule(tmp, tmp, separator, typeOfItems).withAction(context -> {
+        addRule(tmp, tmp, separator, typeOfItems).withReduction(values -> appendItem(values.get(0), values, 2)).withAction(context -> {
             AstNode targetNode = context.getAstNode();
+            if (targetNode == null) {
+                //not building a tree
+                return;
+            }
             List<AstNode> list = targetNode.getFirstChild().getChildren();
             AstNode extraElement = targetNode.getLastChild();
             targetNode.getChildren().clear();
@@ -655,12 +727,27 @@ public class Grammar {
 
         //may optionally may empty
         if (allowEmptyList) {
-            addEmptyRule(tmp);
+            addEmptyRule(tmp).withReduction(values -> new AppendList<>());
         }
 
         return tmp;
     }
 
+    /**
+     * Reduction of the repetitions : the list of the previous occurrences, followed by the values of one more occurrence.
+     * An occurrence of a single symbol is added as is, an occurrence of several symbols as a list of their values. The list of
+     * the previous occurrences is not changed (see {@link AppendList}).
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Object> appendItem(Object previous, List<Object> values, int from) {
+        AppendList<Object> items = (AppendList<Object>) previous;
+        if (values.size() - from == 1) {
+            return items.append(values.get(from));
+        } else {
+            return items.append(Collections.unmodifiableList(new ArrayList<>(values.subList(from, values.size()))));
+        }
+    }
+
     public String getFingerprint() {
         List<String> ruleNames = getRules().stream().map(rule -> ruleToString(rule)).collect(Collectors.toList());
         Collections.sort(ruleNames);
@@ -669,6 +756,10 @@ public class Grammar {
             for (String ruleName : ruleNames) {
                 md.update(ruleName.getBytes());
             }
+            //the tables that are built differently must not be confused
+            if (tableConstruction != TableConstruction.Lalr1) {
+                md.update(tableConstruction.name().getBytes());
+            }
             String hex = HexUtil.bytesToHex(md.digest());
             return hex;
         } catch (Exception e) {
@@ -717,6 +808,18 @@ public class Grammar {
          */
         RuleSpecifier withAction(Consumer<ParsingContext> consumer);
 
+        /**
+         * Computes the value of the rule from the values of its clause, like the '$$ = ...' actions of yacc.
+         * <p>
+         * The reduction is only called when parsing with {@link Reducer#rules()}, and receives the same values as
+         * {@link Reducer#reduce(Rule, List)}. A rule that has no reduction takes the value of its first symbol ('$1').
+         * </p>
+         *
+         * @param reduction computes the value of the target of the rule
+         * @return this
+         */
+        RuleSpecifier withReduction(Function<List<Object>, ?> reduction);
+
         /**
          * Give a non-default (i.e non-zero) precedence level to the rule.
          *
@@ -0,0 +1,89 @@
+package net.jr.parser;
+
+import net.jr.lexer.TokenListener;
+import net.jr.parser.ast.AstNodeFactory;
+
+import java.nio.charset.Charset;
+
+/**
+ * Options that only apply to one call of {@link Parser#parse(java.io.Reader, ParseOptions)}.
+ * <p>
+ * Each option that is not set (I.e. null) is taken from the parser. Instances are immutable : the 'with' methods return
+ * a modified copy, so that the same options can be shared by several threads.
+ * </p>
+ */
+public final class ParseOptions {
+
+    private static final ParseOptions DEFAULTS = new ParseOptions(null, null, null, null);
+
+    private final ParserListener parserListener;
+
+    private final AstNodeFactory astNodeFactory;
+
+    private final TokenListener tokenListener;
+
+    private final Charset charset;
+
+    private ParseOptions(ParserListener parserListener, AstNodeFactory astNodeFactory, TokenListener tokenListener, Charset charset) {
+        this.parserListener = parserListener;
+        this.astNodeFactory = astNodeFactory;
+        this.tokenListener = tokenListener;
+        this.charset = charset;
+    }
+
+    /**
+     * @return options that keep all the settings of the parser
+     */
+    public static ParseOptions defaults() {
+        return DEFAULTS;
+    }
+
+    public ParserListener getParserListener() {
+        return parserListener;
+    }
+
+    public AstNodeFactory getAstNodeFactory() {
+        return astNodeFactory;
+    }
+
+    public TokenListener getTokenListener() {
+        return tokenListener;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @param parserListener the listener that is notified during this parse, instead of the one of the parser
+     * @return a copy of these options
+     */
+    public ParseOptions withParserListener(ParserListener parserListener) {
+        return new ParseOptions(parserListener, astNodeFactory, tokenListener, charset);
+    }
+
+    /**
+     * @param astNodeFactory the factory of the nodes of the tree, instead of the one of the parser
+     * @return a copy of these options
+     */
+    public ParseOptions withAstNodeFactory(AstNodeFactory astNodeFactory) {
+        return new ParseOptions(parserListener, astNodeFactory, tokenListener, charset);
+    }
+
+    /**
+     * @param tokenListener the listener of the lexer stream, instead of the one given by the lexer of the parser
+     * @return a copy of these options
+     */
+    public ParseOptions withTokenListener(TokenListener tokenListener) {
+        return new ParseOptions(parserListener, astNodeFactory, tokenListener, charset);
+    }
+
+    /**
+     * @param charset the charset of a file that is parsed with {@link Parser#parse(java.nio.file.Path, ParseOptions)}, instead of
+     *                UTF-8
+     * @return a copy of these options
+     */
+    public ParseOptions withCharset(Charset charset) {
+        return new ParseOptions(parserListener, astNodeFactory, tokenListener, charset);
+    }
+}
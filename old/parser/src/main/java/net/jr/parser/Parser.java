@@ -4,12 +4,19 @@ import net.jr.lexer.Lexer;
 import net.jr.parser.ast.AstNode;
 import net.jr.parser.ast.AstNodeFactory;
 
+import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.file.Path;
 
 /**
  * a {@link Parser} can read an input text and build an abstract syntax tree from it.
  * Concrete parsers can be instanciated using {@link Grammar#createParser()}
+ * <p>
+ * A parser is not thread-safe while its setters may be called. Once configured, it can be {@link #compile() compiled} into
+ * an immutable parser, that can be used by any number of threads. Settings that are specific to one call are then given
+ * with {@link ParseOptions}.
+ * </p>
  */
 public interface Parser {
 
@@ -36,6 +43,14 @@ public interface Parser {
      */
     void setAstNodeFactory(AstNodeFactory astNodeFactory);
 
+    /**
+     * Makes an immutable, thread-safe copy of this parser (and of its lexer, see {@link Lexer#compile()}).
+     * The setters of the copy throw an {@link IllegalStateException}.
+     *
+     * @return the compiled parser (this parser if it is already compiled)
+     */
+    Parser compile();
+
     /**
      * sugar for parse(getLexer(), new StringReader(txt))
      *
@@ -53,4 +68,100 @@ public interface Parser {
      * @return
      */
     AstNode parse(Reader reader);
+
+    /**
+     * parses an UTF-8 file, that is memory-mapped by the lexer (see {@link Lexer#iterator(Path)}). Another charset is given with
+     * {@link ParseOptions#withCharset(java.nio.charset.Charset)}.
+     *
+     * @param path
+     * @return
+     * @throws IOException if the file cannot be read
+     */
+    AstNode parse(Path path) throws IOException;
+
+    /**
+     * sugar for parse(new StringReader(txt), options)
+     *
+     * @param txt
+     * @param options
+     * @return
+     */
+    default AstNode parse(String txt, ParseOptions options) {
+        return parse(new StringReader(txt), options);
+    }
+
+    /**
+     * parses some text, with options that only apply to this call.
+     *
+     * @param reader
+     * @param options
+     * @return
+     */
+    AstNode parse(Reader reader, ParseOptions options);
+
+    /**
+     * same as {@link #parse(Path)}, with options that only apply to this call.
+     *
+     * @param path
+     * @param options
+     * @return
+     * @throws IOException if the file cannot be read
+     */
+    AstNode parse(Path path, ParseOptions options) throws IOException;
+
+    /**
+     * sugar for parse(new StringReader(txt), reducer, ParseOptions.defaults())
+     *
+     * @param txt
+     * @param reducer
+     * @return
+     */
+    default Object parse(String txt, Reducer reducer) {
+        return parse(new StringReader(txt), reducer, ParseOptions.defaults());
+    }
+
+    /**
+     * Parses some text and directly computes its value with the reductions of the rules (see {@link Grammar.RuleSpecifier#withReduction(java.util.function.Function)}),
+     * without building a tree.
+     *
+     * @param txt the text to parse
+     * @param <T> the type of the value of the target rule
+     * @return the value of the target rule
+     */
+    @SuppressWarnings("unchecked")
+    default <T> T evaluate(String txt) {
+        return (T) parse(new StringReader(txt), Reducer.rules(), ParseOptions.defaults());
+    }
+
+    /**
+     * parses some text without building a tree : the reducer computes a value for each reduction, and only the values that
+     * are on the stack of the parser are kept.
+     * <p>
+     * The actions of the rules and the {@link ParserListener} are still notified, but {@link ParsingContext#getAstNode()}
+     * only gives a node if the reducer returned one (see {@link ParsingContext#getValue()}). The
+     * {@link net.jr.parser.ast.AstNodeFactory} is not used.
+     * </p>
+     * <p>
+     * The reader is lexed by {@link Lexer#streamingIterator(Reader, net.jr.lexer.TokenListener)} : the chars of the tokens are
+     * not kept once they were read, and the texts of the tokens are copies. Files that are parsed with
+     * {@link #parse(Path, Reducer, ParseOptions)} are memory-mapped instead.
+     * </p>
+     *
+     * @param reader
+     * @param reducer
+     * @param options
+     * @return the value of the target symbol
+     */
+    Object parse(Reader reader, Reducer reducer, ParseOptions options);
+
+    /**
+     * same as {@link #parse(Reader, Reducer, ParseOptions)}, for an UTF-8 file.
+     *
+     * @param path
+     * @param reducer
+     * @param options
+     * @return the value of the target symbol
+     * @throws IOException if the file cannot be read
+     */
+    Object parse(Path path, Reducer reducer, ParseOptions options) throws IOException;
 }
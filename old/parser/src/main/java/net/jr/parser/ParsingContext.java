@@ -12,6 +12,14 @@ public interface ParsingContext {
 
     LexerStream getLexerStream();
 
+    /**
+     * @return the node that is being built, or null if the parser does not build a tree (see {@link Parser#parse(java.io.Reader, Reducer, ParseOptions)})
+     */
     AstNode getAstNode();
 
+    /**
+     * @return the value of the symbol that was just reduced : the node when a tree is built, otherwise the value computed by the {@link Reducer}
+     */
+    Object getValue();
+
 }
@@ -0,0 +1,48 @@
+package net.jr.parser;
+
+import net.jr.parser.impl.BaseRule;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Computes a value each time a rule is reduced, when parsing with {@link Parser#parse(java.io.Reader, Reducer, ParseOptions)}.
+ * <p>
+ * In this mode, the parser does not build any {@link net.jr.parser.ast.AstNode} : it only keeps the values of the symbols that
+ * are on its stack. The input is read with {@link net.jr.lexer.Lexer#streamingIterator(java.io.Reader, net.jr.lexer.TokenListener)},
+ * that forgets the chars and the lines that were lexed, so the memory that is used depends on the values that are kept, and not on
+ * the size of the input. A file that is given with {@link Parser#parse(java.nio.file.Path, Reducer, ParseOptions)} is mapped in
+ * memory instead, and only the start of its lines is kept.
+ * </p>
+ */
+@FunctionalInterface
+public interface Reducer {
+
+    /**
+     * @param rule   the rule that is reduced
+     * @param values the values of the symbols of the clause of the rule, in order : the {@link net.jr.lexer.Token} for a terminal,
+     *               and the value that was returned by this method for a non-terminal (possibly null). The list is empty for
+     *               an empty rule. It is only valid during the call, and must be copied to be kept. The values themselves
+     *               must not be changed : they may be kept by the user, or shared by the stacks of a
+     *               {@link net.jr.parser.impl.GLRParser}.
+     * @return the value of the target of the rule, or null
+     */
+    Object reduce(Rule rule, List<Object> values);
+
+    /**
+     * A reducer that applies the reductions given with {@link Grammar.RuleSpecifier#withReduction(Function)}. The value of a rule
+     * that has no reduction is the value of its first symbol (or null for an empty rule).
+     *
+     * @return the reducer
+     */
+    static Reducer rules() {
+        return (rule, values) -> {
+            Function<List<Object>, ?> reduction = rule instanceof BaseRule ? ((BaseRule) rule).getReduction() : null;
+            if (reduction != null) {
+                return reduction.apply(values);
+            }
+            return values.isEmpty() ? null : values.get(0);
+        };
+    }
+
+}
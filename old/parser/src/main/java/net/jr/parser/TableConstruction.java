@@ -0,0 +1,25 @@
+package net.jr.parser;
+
+/**
+ * The way the action table of a parser is built (see {@link Grammar#setTableConstruction(TableConstruction)}). All the
+ * constructions give the same kind of table : they only differ by the states that are merged.
+ */
+public enum TableConstruction {
+
+    /**
+     * LALR(1) : one state per LR(0) item set. The tables are small, but merging the states may create reduce/reduce conflicts
+     * that the grammar does not have.
+     */
+    Lalr1,
+
+    /**
+     * Canonical LR(1) : the states are never merged. No conflict is added, but the tables are much bigger.
+     */
+    CanonicalLr1,
+
+    /**
+     * LR(1), where the states are merged only when it cannot create a conflict (the 'weak compatibility' of Pager). The tables are
+     * about the size of the LALR(1) tables, with the conflicts of the canonical LR(1) tables.
+     */
+    MinimalLr1
+}
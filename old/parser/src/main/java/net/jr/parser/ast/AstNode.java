@@ -4,10 +4,11 @@ import net.jr.common.Symbol;
 import net.jr.lexer.Token;
 import net.jr.parser.Rule;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface AstNode {
 
@@ -48,47 +49,81 @@ public interface AstNode {
         return opt.isPresent() ? opt.get() : null;
     }
 
+    /**
+     * @return the leaves of the tree (I.e. the descendants that have no children), from left to right
+     */
     default List<AstNode> getDescendants() {
-        List<AstNode> descendants = new ArrayList<>();
-        for (AstNode child : getChildren()) {
-            if (child.getChildren().isEmpty()) {
-                descendants.add(child);
-            } else {
-                descendants.addAll(child.getDescendants());
-            }
-        }
-        return descendants;
+        return descendants().filter(n -> n.getChildren().isEmpty()).collect(Collectors.toList());
     }
 
+    /**
+     * @return the first descendant that has the given symbol, in pre-order, or null
+     */
     default AstNode getDescendantOfType(Symbol s) {
-        if (getChildren().isEmpty()) {
-            return null;
-        }
-        AstNode tmp;
-        for (AstNode child : getChildren()) {
-            if ((tmp = child).getSymbol().equals(s)) {
-                return tmp;
-            }
-            if ((tmp = child.getDescendantOfType(s)).getSymbol().equals(s)) {
-                return tmp;
-            }
-        }
-        return null;
+        return descendants().filter(n -> n.getSymbol().equals(s)).findFirst().orElse(null);
     }
 
+    /**
+     * @return all the descendants that have the given symbol, in pre-order
+     */
     default List<AstNode> getDescendantsOfType(Symbol s) {
-        List<AstNode> list = new ArrayList<>();
-        AstNode tmp;
-        for (AstNode child : getChildren()) {
-            if ((tmp = child).getSymbol().equals(s)) {
-                list.add(tmp);
-            }
-            list.addAll(child.getDescendantsOfType(s));
-        }
-        return list;
+        return descendants().filter(n -> n.getSymbol().equals(s)).collect(Collectors.toList());
+    }
+
+    /**
+     * All the descendants of this node (not including this node), each node coming before its children.
+     * <p>
+     * The stream is lazy, and the traversal is not recursive, so it can be used on trees of any depth.
+     * </p>
+     *
+     * @return the descendants of this node, in pre-order
+     */
+    default Stream<AstNode> descendants() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(AstNodeIterators.preOrder(this, false),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * @return this node and all its descendants, each node coming before its children
+     */
+    default Iterator<AstNode> preOrderIterator() {
+        return AstNodeIterators.preOrder(this, true);
     }
 
+    /**
+     * @return this node and all its descendants, each node coming after its children
+     */
+    default Iterator<AstNode> postOrderIterator() {
+        return AstNodeIterators.postOrder(this);
+    }
+
+    /**
+     * Depth-first traversal of this node and its descendants, without recursion.
+     *
+     * @param before called on each node, before its children are visited
+     * @param after  called on each node, after its children have been visited
+     */
+    default void traverse(Consumer<AstNode> before, Consumer<AstNode> after) {
+        AstNodeIterators.traverse(this, before, after);
+    }
+
+    /**
+     * The text of the leaves, separated by spaces. The default implementation joins the representations of the leaves (I.e.
+     * the nodes that have no children), so the nodes that have children should not override it.
+     *
+     * @return a representation of the text of this node
+     */
     default String repr() {
-        return String.join(" ", getChildren().stream().map(node -> node.repr()).collect(Collectors.toList()));
+        if (getChildren().isEmpty()) {
+            return "";
+        }
+        StringJoiner joiner = new StringJoiner(" ");
+        for (Iterator<AstNode> it = AstNodeIterators.preOrder(this, false); it.hasNext(); ) {
+            AstNode node = it.next();
+            if (node.getChildren().isEmpty()) {
+                joiner.add(node.repr());
+            }
+        }
+        return joiner.toString();
     }
 }
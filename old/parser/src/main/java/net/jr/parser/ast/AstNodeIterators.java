@@ -0,0 +1,141 @@
+package net.jr.parser.ast;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Traversals of the trees of {@link AstNode}s, that use an explicit stack instead of recursion so that the depth of a tree is only
+ * limited by the heap. The iterators are lazy : they only hold the iterators of the children of the nodes that are on the path
+ * to the current node.
+ */
+final class AstNodeIterators {
+
+    private AstNodeIterators() {
+    }
+
+    /**
+     * @param root      the root of the tree
+     * @param withRoot  whether the root itself is returned
+     * @return the nodes of the tree, each node being returned before its children
+     */
+    static Iterator<AstNode> preOrder(AstNode root, boolean withRoot) {
+        return new PreOrder(root, withRoot);
+    }
+
+    /**
+     * @param root the root of the tree
+     * @return the nodes of the tree, each node being returned after its children
+     */
+    static Iterator<AstNode> postOrder(AstNode root) {
+        return new PostOrder(root);
+    }
+
+    /**
+     * Depth-first traversal, with a callback when a node is entered and when it is left.
+     *
+     * @param root   the root of the tree
+     * @param before called before the children of a node are visited
+     * @param after  called after the children of a node are visited
+     */
+    static void traverse(AstNode root, Consumer<AstNode> before, Consumer<AstNode> after) {
+        Deque<AstNode> nodes = new ArrayDeque<>();
+        Deque<Iterator<AstNode>> children = new ArrayDeque<>();
+        before.accept(root);
+        nodes.push(root);
+        children.push(root.getChildren().iterator());
+        while (!nodes.isEmpty()) {
+            Iterator<AstNode> it = children.peek();
+            if (it.hasNext()) {
+                AstNode child = it.next();
+                before.accept(child);
+                nodes.push(child);
+                children.push(child.getChildren().iterator());
+            } else {
+                children.pop();
+                after.accept(nodes.pop());
+            }
+        }
+    }
+
+    private static class PreOrder implements Iterator<AstNode> {
+
+        private final Deque<Iterator<AstNode>> stack = new ArrayDeque<>();
+
+        private AstNode next;
+
+        PreOrder(AstNode root, boolean withRoot) {
+            if (withRoot) {
+                next = root;
+            } else {
+                stack.push(root.getChildren().iterator());
+                advance();
+            }
+        }
+
+        private void advance() {
+            next = null;
+            while (!stack.isEmpty()) {
+                Iterator<AstNode> it = stack.peek();
+                if (it.hasNext()) {
+                    next = it.next();
+                    return;
+                }
+                stack.pop();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public AstNode next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            AstNode current = next;
+            if (!current.getChildren().isEmpty()) {
+                stack.push(current.getChildren().iterator());
+            }
+            advance();
+            return current;
+        }
+    }
+
+    private static class PostOrder implements Iterator<AstNode> {
+
+        private final Deque<AstNode> nodes = new ArrayDeque<>();
+
+        private final Deque<Iterator<AstNode>> children = new ArrayDeque<>();
+
+        PostOrder(AstNode root) {
+            nodes.push(root);
+            children.push(root.getChildren().iterator());
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !nodes.isEmpty();
+        }
+
+        @Override
+        public AstNode next() {
+            if (nodes.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            //go down to the leftmost node that has not been visited
+            Iterator<AstNode> it;
+            while ((it = children.peek()).hasNext()) {
+                AstNode child = it.next();
+                nodes.push(child);
+                children.push(child.getChildren().iterator());
+            }
+            children.pop();
+            return nodes.pop();
+        }
+    }
+}
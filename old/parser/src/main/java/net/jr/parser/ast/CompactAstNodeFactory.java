@@ -0,0 +1,360 @@
+package net.jr.parser.ast;
+
+import net.jr.common.Symbol;
+import net.jr.lexer.Token;
+import net.jr.parser.Rule;
+
+import java.util.*;
+
+/**
+ * An {@link AstNodeFactory} that stores the whole tree in a few arrays, instead of one object (and one list of children) per node.
+ * <p>
+ * Each node is an index in these arrays : for a non-leaf node, the index of its rule and the range of its children in a shared
+ * array of node indexes; for a leaf, the index of its token. The {@link AstNode}s that are returned are only views on a node
+ * (two views of the same node are equal), that are created when they are accessed.
+ * </p>
+ * <p>
+ * (Implementation note) : the children of a node are contiguous, so that {@link AstNode#getChildren()} has a random access.
+ * As the children of a node are added all at once by the parser, they are just appended, but when a list of children that is
+ * not at the end of the shared array grows, it is moved to the end first. The nodes that are removed from their parent (like the
+ * previous list node when {@link net.jr.parser.Grammar#list} flattens a list) leave their children behind : when the shared array
+ * is full, it is compacted before it grows, and the detached nodes lose their children.
+ * </p>
+ * <p>
+ * An instance of this class is not thread-safe, and keeps all the nodes that it has created : it should only be used for one
+ * parse, for instance with {@link net.jr.parser.ParseOptions#withAstNodeFactory(AstNodeFactory)}.
+ * </p>
+ */
+public class CompactAstNodeFactory implements AstNodeFactory {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * for a non-leaf node : the index of its rule in {@link #rules}. for a leaf : -1 - the index of its token in {@link #tokens}
+     */
+    private int[] refs = new int[INITIAL_CAPACITY];
+
+    private int[] childrenStart = new int[INITIAL_CAPACITY];
+
+    private int[] childrenCount = new int[INITIAL_CAPACITY];
+
+    /**
+     * number of times a node is the child of another one
+     */
+    private int[] parentsCount = new int[INITIAL_CAPACITY];
+
+    /**
+     * the nodes that have been the child of another one at least once
+     */
+    private final BitSet attached = new BitSet();
+
+    private int nodesCount = 0;
+
+    /**
+     * the indexes of the children of all the nodes
+     */
+    private int[] children = new int[INITIAL_CAPACITY];
+
+    private int childrenUsed = 0;
+
+    private Token[] tokens = new Token[INITIAL_CAPACITY];
+
+    private int tokensCount = 0;
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    private final Map<Rule, Integer> ruleIndexes = new IdentityHashMap<>();
+
+    @Override
+    public AstNode newNonLeafNode(Rule rule) {
+        Integer ruleIndex = ruleIndexes.get(rule);
+        if (ruleIndex == null) {
+            ruleIndex = rules.size();
+            rules.add(rule);
+            ruleIndexes.put(rule, ruleIndex);
+        }
+        return new Node(newNode(ruleIndex));
+    }
+
+    @Override
+    public AstNode newLeafNode(Token token) {
+        if (tokensCount == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokensCount * 2);
+        }
+        tokens[tokensCount] = token;
+        return new Node(newNode(-1 - tokensCount++));
+    }
+
+    private int newNode(int ref) {
+        if (nodesCount == refs.length) {
+            int capacity = nodesCount * 2;
+            refs = Arrays.copyOf(refs, capacity);
+            childrenStart = Arrays.copyOf(childrenStart, capacity);
+            childrenCount = Arrays.copyOf(childrenCount, capacity);
+            parentsCount = Arrays.copyOf(parentsCount, capacity);
+        }
+        refs[nodesCount] = ref;
+        childrenStart[nodesCount] = childrenUsed;
+        return nodesCount++;
+    }
+
+    /**
+     * @return the number of nodes that have been created
+     */
+    public int getNodesCount() {
+        return nodesCount;
+    }
+
+    /**
+     * @return the size of the shared array of children
+     */
+    public int getChildrenCapacity() {
+        return children.length;
+    }
+
+    private void attach(int child) {
+        parentsCount[child]++;
+        attached.set(child);
+    }
+
+    private void detach(int child) {
+        parentsCount[child]--;
+    }
+
+    /**
+     * @return true if a node was the child of other nodes, but is not anymore
+     */
+    private boolean isDetached(int node) {
+        return parentsCount[node] == 0 && attached.get(node);
+    }
+
+    /**
+     * Makes room in the shared array, by compacting it first, and then by growing it if half of it is still used.
+     *
+     * @param capacity the capacity that is needed
+     * @param node     a node whose children are being modified, and that is kept even if it is detached
+     */
+    private void ensureChildrenCapacity(int capacity, int node) {
+        if (capacity > children.length) {
+            capacity -= compact(node) - childrenUsed;
+            if (capacity > children.length || childrenUsed > children.length / 2) {
+                children = Arrays.copyOf(children, Math.max(capacity, children.length * 2));
+            }
+        }
+    }
+
+    /**
+     * Moves the children of the nodes to the beginning of the shared array, in the same order, dropping the children of the
+     * detached nodes.
+     *
+     * @return the number of slots that were used before
+     */
+    private int compact(int keep) {
+        int used = childrenUsed;
+        List<Integer> nodes = new ArrayList<>();
+        for (int n = 0; n < nodesCount; n++) {
+            if (childrenCount[n] > 0) {
+                if (n != keep && isDetached(n)) {
+                    for (int i = 0; i < childrenCount[n]; i++) {
+                        detach(children[childrenStart[n] + i]);
+                    }
+                    childrenCount[n] = 0;
+                } else {
+                    nodes.add(n);
+                }
+            }
+        }
+        //the children of a node that is detached here are only dropped by the next compaction
+        nodes.sort(Comparator.comparingInt(n -> childrenStart[n]));
+        int end = 0;
+        for (int n : nodes) {
+            System.arraycopy(children, childrenStart[n], children, end, childrenCount[n]);
+            childrenStart[n] = end;
+            end += childrenCount[n];
+        }
+        childrenUsed = end;
+        return used;
+    }
+
+    /**
+     * Makes sure that the children of a node are at the end of the shared array, so that a child can be appended. The array
+     * must have room for a copy of the children.
+     */
+    private void moveChildrenToEnd(int node) {
+        int start = childrenStart[node];
+        int count = childrenCount[node];
+        if (start + count != childrenUsed) {
+            System.arraycopy(children, start, children, childrenUsed, count);
+            childrenStart[node] = childrenUsed;
+            childrenUsed += count;
+        }
+    }
+
+    private int nodeIndex(Object node) {
+        if (!(node instanceof Node) || ((Node) node).factory() != this) {
+            throw new IllegalArgumentException("Not a node of this factory : " + node);
+        }
+        return ((Node) node).index;
+    }
+
+    /**
+     * A view on a node
+     */
+    private class Node implements AstNode {
+
+        private final int index;
+
+        Node(int index) {
+            this.index = index;
+        }
+
+        private CompactAstNodeFactory factory() {
+            return CompactAstNodeFactory.this;
+        }
+
+        private boolean isLeaf() {
+            return refs[index] < 0;
+        }
+
+        @Override
+        public Rule getRule() {
+            return isLeaf() ? null : rules.get(refs[index]);
+        }
+
+        @Override
+        public Symbol getSymbol() {
+            return isLeaf() ? asToken().getTokenType() : getRule().getTarget();
+        }
+
+        @Override
+        public List<AstNode> getChildren() {
+            return isLeaf() ? Collections.emptyList() : new Children(index);
+        }
+
+        @Override
+        public Token asToken() {
+            if (isLeaf()) {
+                return tokens[-1 - refs[index]];
+            }
+            if (childrenCount[index] == 1) {
+                return new Node(children[childrenStart[index]]).asToken();
+            }
+            return null;
+        }
+
+        @Override
+        public String repr() {
+            return isLeaf() ? asToken().getText() : AstNode.super.repr();
+        }
+
+        @Override
+        public String toString() {
+            return isLeaf() ? asToken().toString() : getRule().getTarget().toString();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Node && ((Node) obj).factory() == factory() && ((Node) obj).index == index;
+        }
+
+        @Override
+        public int hashCode() {
+            return index;
+        }
+    }
+
+    /**
+     * A view on the children of a node
+     */
+    private class Children extends AbstractList<AstNode> implements RandomAccess {
+
+        private final int node;
+
+        Children(int node) {
+            this.node = node;
+        }
+
+        @Override
+        public AstNode get(int i) {
+            return new Node(children[childrenStart[node] + checkIndex(i, childrenCount[node])]);
+        }
+
+        @Override
+        public int size() {
+            return childrenCount[node];
+        }
+
+        @Override
+        public AstNode set(int i, AstNode element) {
+            int pos = childrenStart[node] + checkIndex(i, childrenCount[node]);
+            int previous = children[pos];
+            int child = nodeIndex(element);
+            attach(child);
+            detach(previous);
+            children[pos] = child;
+            return new Node(previous);
+        }
+
+        @Override
+        public void add(int i, AstNode element) {
+            int child = nodeIndex(element);
+            int count = childrenCount[node];
+            checkIndex(i, count + 1);
+            boolean atEnd = childrenStart[node] + count == childrenUsed;
+            ensureChildrenCapacity(childrenUsed + (atEnd ? 1 : count + 1), node);
+            moveChildrenToEnd(node);
+            int start = childrenStart[node];
+            System.arraycopy(children, start + i, children, start + i + 1, count - i);
+            children[start + i] = child;
+            attach(child);
+            childrenCount[node]++;
+            childrenUsed++;
+            modCount++;
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends AstNode> c) {
+            return addAll(size(), c);
+        }
+
+        @Override
+        public boolean addAll(int i, Collection<? extends AstNode> c) {
+            //the elements may be the children of a detached node, that a compaction would drop
+            return super.addAll(i, Arrays.asList(c.toArray(new AstNode[0])));
+        }
+
+        @Override
+        public AstNode remove(int i) {
+            int count = childrenCount[node];
+            int start = childrenStart[node];
+            int removed = children[start + checkIndex(i, count)];
+            System.arraycopy(children, start + i + 1, children, start + i, count - i - 1);
+            detach(removed);
+            childrenCount[node]--;
+            if (start + count == childrenUsed) {
+                childrenUsed--;
+            }
+            modCount++;
+            return new Node(removed);
+        }
+
+        @Override
+        public void clear() {
+            for (int i = 0; i < childrenCount[node]; i++) {
+                detach(children[childrenStart[node] + i]);
+            }
+            if (childrenStart[node] + childrenCount[node] == childrenUsed) {
+                childrenUsed = childrenStart[node];
+            }
+            childrenCount[node] = 0;
+            modCount++;
+        }
+
+        private int checkIndex(int i, int size) {
+            if (i < 0 || i >= size) {
+                throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+            }
+            return i;
+        }
+    }
+}
@@ -10,12 +10,11 @@ import net.jr.parser.ast.annotations.BeforeEachNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.function.Consumer;
+import java.util.*;
 
 public class VisitorHelper {
 
@@ -45,45 +44,42 @@ public class VisitorHelper {
         }
     }
 
-    private static Consumer<AstNode> makeConsumer(Method method, Object visitor) {
-        return astNode -> {
-            try {
-                method.setAccessible(true);
-                method.invoke(visitor, astNode);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        };
-    }
-
-    private static Mapping createMapping(Object visitor) {
-
-        Mapping mapping = new Mapping();
+    /**
+     * The handlers of the visitor classes : {@link Class#getMethods()} is only scanned once for each class.
+     */
+    private static final ClassValue<VisitorClass> VISITOR_CLASSES = new ClassValue<VisitorClass>() {
+        @Override
+        protected VisitorClass computeValue(Class<?> type) {
+            return new VisitorClass(type);
+        }
+    };
 
-        for (Method method : visitor.getClass().getMethods()) {
+    private static final MethodType HANDLER_TYPE = MethodType.methodType(void.class, Object.class, AstNode.class);
 
-            if (method.getAnnotation(BeforeEachNode.class) != null) {
-                mapping.beforeEachNode.add(makeConsumer(method, visitor));
-            }
+    private static final MethodHandle[] NO_HANDLERS = new MethodHandle[0];
 
-            if (method.getAnnotation(AfterEachNode.class) != null) {
-                mapping.afterEachNode.add(makeConsumer(method, visitor));
-            }
-
-            Before before = method.getAnnotation(Before.class);
-            if (before != null) {
-                List<Consumer<AstNode>> consumers = mapping.mapBefore.computeIfAbsent(before.value(), s -> new ArrayList<>());
-                consumers.add(makeConsumer(method, visitor));
-            }
+    /**
+     * @return an handle of type (Object visitor, AstNode node) → void
+     */
+    private static MethodHandle makeHandle(Method method) {
+        try {
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method).asType(HANDLER_TYPE);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new IllegalArgumentException("Cannot use " + method + " as a visitor method", e);
+        }
+    }
 
-            After after = method.getAnnotation(After.class);
-            if (after != null) {
-                List<Consumer<AstNode>> consumers = mapping.mapAfter.computeIfAbsent(after.value(), s -> new ArrayList<>());
-                consumers.add(makeConsumer(method, visitor));
+    private static void invoke(MethodHandle[] handles, Object visitor, AstNode node) {
+        for (MethodHandle handle : handles) {
+            try {
+                handle.invokeExact(visitor, node);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
             }
         }
-
-        return mapping;
     }
 
     private static void _trace(AstNode node, String name, String phase) {
@@ -97,48 +93,133 @@ public class VisitorHelper {
         }
     }
 
-    private static void visitWithMapping(AstNode node, Mapping mapping) {
+    private static void before(AstNode node, Mapping mapping) {
 
-        String name = getName(node);
+        Handlers handlers = mapping.getHandlers(node);
 
-        _trace(node, name, "Before");
+        _trace(node, handlers.name, "Before");
 
         //run 'beforeEachNode' consumers
-        mapping.beforeEachNode.forEach(c -> c.accept(node));
+        invoke(mapping.visitorClass.beforeEachNode, mapping.visitor, node);
 
         //run @@Before consumers for this symbol name
-        List<Consumer<AstNode>> before = mapping.mapBefore.get(name);
-        if (before != null) {
-            before.forEach(c -> c.accept(node));
-        }
+        invoke(handlers.before, mapping.visitor, node);
+    }
 
-        //visit children
-        for (AstNode child : node.getChildren()) {
-            visitWithMapping(child, mapping);
-        }
+    private static void after(AstNode node, Mapping mapping) {
 
-        _trace(node, name, "After");
+        Handlers handlers = mapping.getHandlers(node);
+
+        _trace(node, handlers.name, "After");
 
         //run @After consumers for this symbol name
-        List<Consumer<AstNode>> set = mapping.mapAfter.get(name);
-        if (set != null) {
-            set.forEach(c -> c.accept(node));
-        }
+        invoke(handlers.after, mapping.visitor, node);
 
         // run 'afterEachNode' consumers
-        mapping.afterEachNode.forEach(c -> c.accept(node));
+        invoke(mapping.visitorClass.afterEachNode, mapping.visitor, node);
     }
 
     public static void visit(AstNode rootNode, Object visitor) {
-        visitWithMapping(rootNode, createMapping(visitor));
+        Mapping mapping = new Mapping(visitor);
+        //the children are visited between the two calls, without recursion
+        rootNode.traverse(node -> before(node, mapping), node -> after(node, mapping));
     }
 
-    private static class Mapping {
-        Map<String, List<Consumer<AstNode>>> mapBefore = new HashMap<>();
-        Map<String, List<Consumer<AstNode>>> mapAfter = new HashMap<>();
-        List<Consumer<AstNode>> beforeEachNode = new ArrayList<>();
-        List<Consumer<AstNode>> afterEachNode = new ArrayList<>();
+    /**
+     * The annotated methods of a visitor class, as method handles that are not bound to any instance.
+     */
+    private static class VisitorClass {
+
+        final Map<String, MethodHandle[]> mapBefore = new HashMap<>();
+
+        final Map<String, MethodHandle[]> mapAfter = new HashMap<>();
+
+        final MethodHandle[] beforeEachNode;
+
+        final MethodHandle[] afterEachNode;
+
+        VisitorClass(Class<?> type) {
+            Map<String, List<MethodHandle>> before = new HashMap<>();
+            Map<String, List<MethodHandle>> after = new HashMap<>();
+            List<MethodHandle> beforeEach = new ArrayList<>();
+            List<MethodHandle> afterEach = new ArrayList<>();
+
+            for (Method method : type.getMethods()) {
+
+                if (method.getAnnotation(BeforeEachNode.class) != null) {
+                    beforeEach.add(makeHandle(method));
+                }
+
+                if (method.getAnnotation(AfterEachNode.class) != null) {
+                    afterEach.add(makeHandle(method));
+                }
+
+                Before b = method.getAnnotation(Before.class);
+                if (b != null) {
+                    before.computeIfAbsent(b.value(), k -> new ArrayList<>()).add(makeHandle(method));
+                }
+
+                After a = method.getAnnotation(After.class);
+                if (a != null) {
+                    after.computeIfAbsent(a.value(), k -> new ArrayList<>()).add(makeHandle(method));
+                }
+            }
+
+            before.forEach((name, list) -> mapBefore.put(name, list.toArray(NO_HANDLERS)));
+            after.forEach((name, list) -> mapAfter.put(name, list.toArray(NO_HANDLERS)));
+            beforeEachNode = beforeEach.toArray(NO_HANDLERS);
+            afterEachNode = afterEach.toArray(NO_HANDLERS);
+        }
+
+        Handlers resolve(String name) {
+            return new Handlers(name, mapBefore.getOrDefault(name, NO_HANDLERS), mapAfter.getOrDefault(name, NO_HANDLERS));
+        }
+    }
+
+    /**
+     * The handlers that are called for the nodes that have a given name
+     */
+    private static class Handlers {
+
+        final String name;
+
+        final MethodHandle[] before;
+
+        final MethodHandle[] after;
+
+        Handlers(String name, MethodHandle[] before, MethodHandle[] after) {
+            this.name = name;
+            this.before = before;
+            this.after = after;
+        }
     }
 
+    /**
+     * State of one visit : the handlers are resolved only once for each rule (or symbol, for the leaves), since the name of a
+     * node only depends on them.
+     */
+    private static class Mapping {
+
+        final Object visitor;
+
+        final VisitorClass visitorClass;
+
+        final Map<Object, Handlers> resolved = new IdentityHashMap<>();
+
+        Mapping(Object visitor) {
+            this.visitor = visitor;
+            this.visitorClass = VISITOR_CLASSES.get(visitor.getClass());
+        }
+
+        Handlers getHandlers(AstNode node) {
+            Object key = node.getRule() != null ? node.getRule() : node.getSymbol();
+            Handlers handlers = resolved.get(key);
+            if (handlers == null) {
+                handlers = visitorClass.resolve(getName(node));
+                resolved.put(key, handlers);
+            }
+            return handlers;
+        }
+    }
 
 }
@@ -6,6 +6,7 @@ import net.jr.marshalling.MarshallingCapable;
 import net.jr.marshalling.MarshallingUtil;
 import net.jr.parser.Grammar;
 import net.jr.parser.Rule;
+import net.jr.parser.TableConstruction;
 import net.jr.util.StringUtil;
 import net.jr.util.table.AsciiTableView;
 import net.jr.util.table.TableModel;
@@ -17,6 +18,10 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 /**
@@ -26,14 +31,114 @@ import java.util.stream.Collectors;
  * <li>reduce, which is written as 'rm' and indicates that a reduction with grammar rule m should be performed</li>
  * <li>accept, which is written as 'acc' and indicates that the parser accepts the string in the input stream.</li>
  * </ul>
+ * <p>
+ * (Implementation note) : once the table is complete, each symbol is given a dense id (the terminals first, then the non-terminals,
+ * in the order of the columns), and the actions are encoded as ints. The parser only deals with these codes
+ * (see {@link #getActionCode(int, int)}), so that choosing an action is a couple of array lookups.
+ * </p>
+ * <p>
+ * As most of the cells are empty, the table is compressed :
+ * </p>
+ * <ul>
+ * <li>Each state that has reductions gets a <i>default reduction</i> (the most frequent one), that is used for any terminal that
+ * has no explicit action in the row. The error is then detected by a later state, before the next shift. States that accept
+ * ε never get a default reduction, as the parser falls back on ε when there is no action.</li>
+ * <li>When the default reduction is the only action of a state for all the terminals (a <i>consistent</i> state), the parser
+ * reduces without even reading the next token (see {@link #getConsistentReduction(int)}).</li>
+ * <li>The remaining cells are packed using <i>row displacement</i> : all the rows are stored in a single array {@code next},
+ * the row of a state beginning at {@code base[state]}. Rows are interleaved so that their cells do not overlap, and
+ * {@code check} tells which state a cell belongs to.</li>
+ * </ul>
+ * <p>
+ * The rows of the table (that are needed for {@link #toString()}, {@link #getExpectedTerminals(int)} and the marshalling) are
+ * rebuilt from the compressed arrays on demand.
+ * </p>
  */
 public class ActionTable implements MarshallingCapable {
 
+    /**
+     * code of an empty cell of the table
+     */
+    public static final int NO_ACTION = 0;
+
+    private static final int TYPE_SHIFT = 28;
+
+    private static final int PARAMETER_MASK = (1 << TYPE_SHIFT) - 1;
+
+    private static final ActionType[] ACTION_TYPES = ActionType.values();
+
+    /**
+     * code of a cell that is explicitly empty (I.e. a conflict resolved as an error), so that the default reduction does not apply.
+     */
+    private static final int EXPLICIT_FAIL = (ActionType.Fail.ordinal() + 1) << TYPE_SHIFT;
+
     private static Logger Logger = LoggerFactory.getLogger(ActionTable.class);
+
+    /**
+     * the rows of the table, while it is built. Replaced by the compressed arrays afterwards.
+     */
     private Map<Integer, Map<Symbol, Action>> data = new TreeMap<>();
+
+    /**
+     * all the actions of the cells that have a conflict that the grammar does not resolve, the chosen action first
+     */
+    private Map<Integer, Map<Symbol, List<Action>>> conflicts = new TreeMap<>();
     private List<Symbol> terminals;
     private List<Symbol> nonTerminals;
 
+    /**
+     * dense id of each symbol
+     */
+    private Map<Symbol, Integer> symbolIds;
+
+    private Symbol[] symbols;
+
+    private int terminalsCount;
+
+    /**
+     * offset of the row of each state in {@link #next}
+     */
+    private int[] base;
+
+    /**
+     * the state that owns each cell of {@link #next}, or -1 for the free cells
+     */
+    private int[] check;
+
+    /**
+     * codes of the actions, for all the rows
+     */
+    private int[] next;
+
+    /**
+     * the default reduction of each state, or {@link #NO_ACTION}
+     */
+    private int[] defaults;
+
+    /**
+     * for each state, a bitset of the terminals that are handled by the default reduction
+     */
+    private int[] defaultLookaheads;
+
+    /**
+     * the default reduction of the consistent states, {@link #NO_ACTION} for the other ones
+     */
+    private int[] consistentReductions;
+
+    private int lookaheadWords;
+
+    /**
+     * id of ε, or -1 when the grammar has no empty rule
+     */
+    private int emptyId;
+
+    /**
+     * the codes of the actions of {@link #conflicts}, by cell (state * number of symbols + symbol id)
+     */
+    private Map<Integer, int[]> conflictCodes;
+
+    private BitSet conflictStates;
+
     private ActionTable() {
     }
 
@@ -47,6 +152,8 @@ public class ActionTable implements MarshallingCapable {
         actionTable.terminals = MarshallingUtil.unMarshall(dataInputStream);
         actionTable.nonTerminals = MarshallingUtil.unMarshall(dataInputStream);
         actionTable.data = MarshallingUtil.unMarshall(dataInputStream);
+        actionTable.conflicts = MarshallingUtil.unMarshall(dataInputStream);
+        actionTable.compile();
         return actionTable;
     }
 
@@ -72,15 +179,86 @@ public class ActionTable implements MarshallingCapable {
         return new LALR1Builder().build(grammar);
     }
 
+    /**
+     * @param grammar the grammar
+     * @return the canonical LR(1) table of the grammar
+     */
+    public static ActionTable lr1(Grammar grammar) {
+        return new LR1Builder(false).build(grammar);
+    }
+
+    /**
+     * @param grammar the grammar
+     * @return the LR(1) table of the grammar, with the states merged as long as it does not create a conflict
+     */
+    public static ActionTable minimalLr1(Grammar grammar) {
+        return new LR1Builder(true).build(grammar);
+    }
+
+    /**
+     * @param grammar      the grammar
+     * @param construction the way the table is built
+     * @return the table
+     */
+    public static ActionTable build(Grammar grammar, TableConstruction construction) {
+        switch (construction) {
+            case Lalr1:
+                return lalr1(grammar);
+            case CanonicalLr1:
+                return lr1(grammar);
+            case MinimalLr1:
+                return minimalLr1(grammar);
+            default:
+                throw new IllegalArgumentException(construction.toString());
+        }
+    }
+
     public int getStatesCount() {
-        return data.size();
+        return base.length;
+    }
+
+    /**
+     * Encodes an action as an int : the type of the action in the high bits, and its parameter in the low bits.
+     *
+     * @param action an action, or null
+     * @return the code of the action, or {@link #NO_ACTION} if action is null
+     */
+    static int encode(Action action) {
+        if (action == null) {
+            return NO_ACTION;
+        }
+        if (action.getActionParameter() < 0 || action.getActionParameter() > PARAMETER_MASK) {
+            throw new IllegalArgumentException("Action parameter out of range : " + action.getActionParameter());
+        }
+        return ((action.getActionType().ordinal() + 1) << TYPE_SHIFT) | action.getActionParameter();
+    }
+
+    /**
+     * @param code the code of an action (not {@link #NO_ACTION})
+     * @return the type of the action
+     */
+    public static ActionType getActionType(int code) {
+        return ACTION_TYPES[(code >>> TYPE_SHIFT) - 1];
+    }
+
+    /**
+     * @param code the code of an action
+     * @return the parameter of the action (a state, or the id of a rule)
+     */
+    public static int getActionParameter(int code) {
+        return code & PARAMETER_MASK;
+    }
+
+    static Action decode(int code) {
+        return code == NO_ACTION ? null : new Action(getActionType(code), getActionParameter(code));
     }
 
     @Override
     public void marshall(DataOutput dataOutputStream) throws IOException {
         MarshallingUtil.marshall(terminals, dataOutputStream);
         MarshallingUtil.marshall(nonTerminals, dataOutputStream);
-        MarshallingUtil.marshall(data, dataOutputStream);
+        MarshallingUtil.marshall(getRows(), dataOutputStream);
+        MarshallingUtil.marshall(conflicts, dataOutputStream);
     }
 
     private void onInitialized() {
@@ -100,6 +278,292 @@ public class ActionTable implements MarshallingCapable {
             getLog().trace(String.format("%d terminals, %d non-terminals", terminals.size(), nonTerminals.size()));
         }
 
+        compile();
+    }
+
+    /**
+     * compresses the rows of the table.
+     */
+    private void compile() {
+        symbolIds = new HashMap<>();
+        for (Symbol s : terminals) {
+            symbolIds.put(s, symbolIds.size());
+        }
+        for (Symbol s : nonTerminals) {
+            symbolIds.put(s, symbolIds.size());
+        }
+        terminalsCount = terminals.size();
+        symbols = new Symbol[symbolIds.size()];
+        for (Map.Entry<Symbol, Integer> e : symbolIds.entrySet()) {
+            symbols[e.getValue()] = e.getKey();
+        }
+        Integer empty = symbolIds.get(Lexemes.empty());
+        emptyId = empty == null ? -1 : empty;
+
+        int statesCount = 0;
+        for (int state : data.keySet()) {
+            statesCount = Math.max(statesCount, state + 1);
+        }
+        lookaheadWords = (terminalsCount + 31) / 32;
+        defaults = new int[statesCount];
+        consistentReductions = new int[statesCount];
+        defaultLookaheads = new int[statesCount * lookaheadWords];
+
+        //the explicit cells of each row, as (symbol id, code) pairs
+        int[][] rows = new int[statesCount][];
+        for (int state = 0; state < statesCount; state++) {
+            Map<Symbol, Action> row = data.getOrDefault(state, Collections.emptyMap());
+            int defaultCode = emptyId >= 0 && row.containsKey(Lexemes.empty()) ? NO_ACTION : chooseDefaultReduction(row);
+            defaults[state] = defaultCode;
+            int[] cells = new int[row.size() * 2];
+            int n = 0;
+            boolean consistent = defaultCode != NO_ACTION;
+            for (Map.Entry<Symbol, Action> e : row.entrySet()) {
+                int symbolId = symbolIds.get(e.getKey());
+                int code = e.getValue() == null ? EXPLICIT_FAIL : encode(e.getValue());
+                if (defaultCode != NO_ACTION && code == defaultCode && symbolId < terminalsCount) {
+                    defaultLookaheads[state * lookaheadWords + (symbolId >> 5)] |= 1 << (symbolId & 31);
+                } else {
+                    cells[n++] = symbolId;
+                    cells[n++] = code;
+                    consistent &= symbolId >= terminalsCount;
+                }
+            }
+            rows[state] = Arrays.copyOf(cells, n);
+            consistentReductions[state] = consistent ? defaultCode : NO_ACTION;
+        }
+        displaceRows(rows);
+        data = null;
+
+        conflictCodes = new HashMap<>();
+        conflictStates = new BitSet(statesCount);
+        for (Map.Entry<Integer, Map<Symbol, List<Action>>> entry : conflicts.entrySet()) {
+            int state = entry.getKey();
+            for (Map.Entry<Symbol, List<Action>> cell : entry.getValue().entrySet()) {
+                conflictCodes.put(state * symbols.length + symbolIds.get(cell.getKey()), cell.getValue().stream().mapToInt(ActionTable::encode).toArray());
+                conflictStates.set(state);
+            }
+        }
+    }
+
+    /**
+     * @return the code of the reduction that appears the most in a row, or {@link #NO_ACTION}
+     */
+    private static int chooseDefaultReduction(Map<Symbol, Action> row) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        int best = NO_ACTION, bestCount = 0;
+        for (Action action : row.values()) {
+            if (action != null && action.getActionType() == ActionType.Reduce) {
+                int code = encode(action);
+                int count = counts.merge(code, 1, Integer::sum);
+                if (count > bestCount || (count == bestCount && code < best)) {
+                    best = code;
+                    bestCount = count;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Packs the rows in a single array (first fit, the largest rows first).
+     *
+     * @param rows the explicit cells of each row, as (symbol id, code) pairs
+     */
+    private void displaceRows(int[][] rows) {
+        int statesCount = rows.length;
+        Integer[] order = new Integer[statesCount];
+        for (int i = 0; i < statesCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt((Integer state) -> -rows[state].length).thenComparingInt(state -> state));
+
+        base = new int[statesCount];
+        int[] check = new int[Math.max(16, symbols.length)];
+        int[] next = new int[check.length];
+        Arrays.fill(check, -1);
+        int size = 0;
+        for (int state : order) {
+            int[] cells = rows[state];
+            if (cells.length == 0) {
+                continue;
+            }
+            int b = 0;
+            search:
+            while (true) {
+                for (int i = 0; i < cells.length; i += 2) {
+                    int index = b + cells[i];
+                    if (index < check.length && check[index] != -1) {
+                        b++;
+                        continue search;
+                    }
+                }
+                break;
+            }
+            base[state] = b;
+            for (int i = 0; i < cells.length; i += 2) {
+                int index = b + cells[i];
+                if (index >= check.length) {
+                    int oldLength = check.length;
+                    int newLength = Math.max(oldLength * 2, index + 1);
+                    next = Arrays.copyOf(next, newLength);
+                    check = Arrays.copyOf(check, newLength);
+                    Arrays.fill(check, oldLength, newLength, -1);
+                }
+                check[index] = state;
+                next[index] = cells[i + 1];
+                size = Math.max(size, index + 1);
+            }
+        }
+        this.check = Arrays.copyOf(check, size);
+        this.next = Arrays.copyOf(next, size);
+    }
+
+    /**
+     * @param symbol a symbol
+     * @return the dense id of the symbol, or -1 if it does not appear in this table
+     */
+    public int getSymbolId(Symbol symbol) {
+        Integer id = symbolIds.get(symbol);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the id of ε, or -1 if it does not appear in this table
+     */
+    public int getEmptySymbolId() {
+        return emptyId;
+    }
+
+    /**
+     * Gets the action that the parser has to take, including the default reduction of the state.
+     *
+     * @param state    a state
+     * @param symbolId the id of a symbol (see {@link #getSymbolId(Symbol)}), or -1 for a terminal that is unknown to this table
+     * @return the code of the action, or {@link #NO_ACTION}
+     */
+    public int getActionCode(int state, int symbolId) {
+        if (symbolId >= 0) {
+            int index = base[state] + symbolId;
+            if (index < check.length && check[index] == state) {
+                int code = next[index];
+                return code == EXPLICIT_FAIL ? NO_ACTION : code;
+            }
+            if (symbolId >= terminalsCount) {
+                return NO_ACTION;
+            }
+        }
+        return defaults[state];
+    }
+
+    /**
+     * When the grammar does not tell how to resolve a conflict, the table keeps the action that is chosen by default (the shift,
+     * or the reduction of the rule that has the lowest id), but it also records the other ones, for the parsers that follow all
+     * of them (see {@link GLRParser}).
+     *
+     * @param state    a state
+     * @param symbolId the id of a symbol, or -1
+     * @return the codes of all the actions of the cell, the chosen one first (the array must not be modified), or null if the
+     * cell has no conflict
+     */
+    int[] getConflictingActionCodes(int state, int symbolId) {
+        if (symbolId < 0 || !conflictStates.get(state)) {
+            return null;
+        }
+        return conflictCodes.get(state * symbols.length + symbolId);
+    }
+
+    /**
+     * @param state a state
+     * @return true if some cells of the state have a conflict (see {@link #getConflictingActionCodes(int, int)})
+     */
+    boolean hasConflicts(int state) {
+        return conflictStates.get(state);
+    }
+
+    /**
+     * @return the number of cells that have a conflict that the grammar does not resolve
+     */
+    public int getConflictsCount() {
+        return conflictCodes.size();
+    }
+
+    /**
+     * When a state only has one reduction, and no other action for any terminal, the reduction can be done without reading
+     * the next token. If the next token is not valid, the error is detected in a later state.
+     *
+     * @param state a state
+     * @return the code of the reduction, or {@link #NO_ACTION} if the parser needs a lookahead to choose the action
+     */
+    public int getConsistentReduction(int state) {
+        return consistentReductions[state];
+    }
+
+    /**
+     * Same as {@link #getActionCode(int, int)}, but ignores the default reduction of the state
+     *
+     * @param state    a state
+     * @param symbolId the id of a symbol, or -1
+     * @return the code of the action, or {@link #NO_ACTION}
+     */
+    public int getExplicitActionCode(int state, int symbolId) {
+        int code = getStoredCode(state, symbolId);
+        return code == EXPLICIT_FAIL ? NO_ACTION : code;
+    }
+
+    private int getStoredCode(int state, int symbolId) {
+        if (symbolId >= 0) {
+            int index = base[state] + symbolId;
+            if (index < check.length && check[index] == state) {
+                return next[index];
+            }
+        }
+        return NO_ACTION;
+    }
+
+    /**
+     * @return the code of the action that was set for a cell (or that was replaced by the default reduction of the state).
+     * {@link #EXPLICIT_FAIL} is returned for the cells that were explicitly left empty.
+     */
+    private int getCellCode(int state, int symbolId) {
+        int code = getStoredCode(state, symbolId);
+        if (code == NO_ACTION && symbolId >= 0 && symbolId < terminalsCount
+                && (defaultLookaheads[state * lookaheadWords + (symbolId >> 5)] & (1 << (symbolId & 31))) != 0) {
+            code = defaults[state];
+        }
+        return code;
+    }
+
+    /**
+     * rebuilds the rows of the table.
+     */
+    private Map<Integer, Map<Symbol, Action>> getRows() {
+        Map<Integer, Map<Symbol, Action>> rows = new TreeMap<>();
+        for (int state = 0; state < base.length; state++) {
+            Map<Symbol, Action> row = getRow(state);
+            if (!row.isEmpty()) {
+                rows.put(state, row);
+            }
+        }
+        return rows;
+    }
+
+    private Map<Symbol, Action> getRow(int state) {
+        Map<Symbol, Action> row = new HashMap<>();
+        for (int symbolId = 0; symbolId < symbols.length; symbolId++) {
+            int code = getCellCode(state, symbolId);
+            if (code != NO_ACTION) {
+                row.put(symbols[symbolId], code == EXPLICIT_FAIL ? null : decode(code));
+            }
+        }
+        return row;
+    }
+
+    /**
+     * @return the number of ints that are used by the compressed table
+     */
+    public int getCompressedSize() {
+        return base.length + check.length + next.length + defaults.length + defaultLookaheads.length + consistentReductions.length;
     }
 
     private void setAction(int state, Symbol symbol, Action action, boolean allowReplace) {
@@ -122,19 +586,36 @@ public class ActionTable implements MarshallingCapable {
     }
 
     int getNextState(int currentState, Symbol symbol) {
-        Action gotoAction = _getAction(currentState, symbol);
-        if (gotoAction == null) {
-            throw new IllegalStateException(String.format("No GOTO Action for state '%d', Symbol '%s'", currentState, symbol));
+        return getNextState(currentState, getSymbolId(symbol));
+    }
+
+    /**
+     * @param currentState the state on top of the stack
+     * @param symbolId     the id of the non-terminal that was just reduced
+     * @return the state given by the GOTO table
+     */
+    int getNextState(int currentState, int symbolId) {
+        int code = getExplicitActionCode(currentState, symbolId);
+        if (code == NO_ACTION) {
+            throw new IllegalStateException(String.format("No GOTO Action for state '%d', Symbol '%s'", currentState, symbolId < 0 ? "?" : symbols[symbolId]));
         }
-        return gotoAction.getActionParameter();
+        return getActionParameter(code);
     }
 
     private Action _getAction(int state, Symbol symbol) {
-        Map<Symbol, Action> row = data.get(state);
-        if (row == null) {
+        if (state < 0 || state >= base.length) {
             throw new IllegalStateException(String.format("No such state (%d)", state));
         }
-        return row.get(symbol);
+        int code = getCellCode(state, getSymbolId(symbol));
+        return code == EXPLICIT_FAIL ? null : decode(code);
+    }
+
+    private void addConflict(int state, Symbol symbol, Action existing, Action action) {
+        List<Action> actions = conflicts.computeIfAbsent(state, k -> new HashMap<>())
+                .computeIfAbsent(symbol, k -> new ArrayList<>(Collections.singletonList(existing)));
+        if (!actions.contains(action)) {
+            actions.add(action);
+        }
     }
 
     private Action getActionNoCheck(int state, Symbol s) {
@@ -143,10 +624,13 @@ public class ActionTable implements MarshallingCapable {
     }
 
     public Set<Symbol> getExpectedTerminals(int state) {
-        Map<Symbol, Action> row = data.get(state);
-        return row.keySet().stream()
-                .filter(s -> s.isTerminal())
-                .collect(Collectors.toSet());
+        Set<Symbol> expected = new HashSet<>();
+        for (int symbolId = 0; symbolId < terminalsCount; symbolId++) {
+            if (getCellCode(state, symbolId) != NO_ACTION) {
+                expected.add(symbols[symbolId]);
+            }
+        }
+        return expected;
     }
 
     private int getColumnFor(Symbol symbol) {
@@ -168,7 +652,8 @@ public class ActionTable implements MarshallingCapable {
     @Override
     public String toString() {
         TableModel<String> tm = new TableModel<>();
-        for (Map.Entry<Integer, Map<Symbol, Action>> rowEntry : data.entrySet()) {
+        Map<Integer, Map<Symbol, Action>> rows = getRows();
+        for (Map.Entry<Integer, Map<Symbol, Action>> rowEntry : rows.entrySet()) {
             int state = rowEntry.getKey();
             for (Map.Entry<Symbol, Action> e : rowEntry.getValue().entrySet()) {
                 Symbol s = e.getKey();
@@ -181,7 +666,7 @@ public class ActionTable implements MarshallingCapable {
         tm.moveDataBy(1, 1);
 
         //row labels
-        for (Map.Entry<Integer, Map<Symbol, Action>> rowEntry : data.entrySet()) {
+        for (Map.Entry<Integer, Map<Symbol, Action>> rowEntry : rows.entrySet()) {
             int state = rowEntry.getKey();
             tm.setData(0, 1 + state, Integer.toString(state));
         }
@@ -202,12 +687,7 @@ public class ActionTable implements MarshallingCapable {
 
         public ActionTable build(Grammar grammar) {
 
-            Set<Rule> targetRules = grammar.getRulesTargeting(grammar.getTargetSymbol());
-            if (targetRules.size() != 1) {
-                throw new IllegalStateException("Illegal target rule specification (required : only one rule for the target symbol)");
-            }
-
-            Rule startRule = targetRules.iterator().next();
+            Rule startRule = getStartRule(grammar);
 
             getLog().trace("Building action Table for : " + grammar.toString());
             getLog().trace("Starting Rule is : " + startRule);
@@ -221,14 +701,40 @@ public class ActionTable implements MarshallingCapable {
             //Syntax Analysis Goal: Translation Table
             Map<Integer, Map<Symbol, Integer>> translationTable = getTranslationTable(grammar, allItemSets);
 
-            //Syntax Analysis Goal: Action and Goto Table
+            Map<Integer, Map<Rule, Set<Symbol>>> lookaheads = new LalrLookaheads(grammar, allItemSets).compute(grammar, startRule);
+
+            return makeActionTable(grammar, translationTable, lookaheads, getAcceptingStates(startRule, allItemSets));
+        }
+
+        /**
+         * @return the only rule that targets the target symbol of the grammar
+         */
+        static Rule getStartRule(Grammar grammar) {
+            Set<Rule> targetRules = grammar.getRulesTargeting(grammar.getTargetSymbol());
+            if (targetRules.size() != 1) {
+                throw new IllegalStateException("Illegal target rule specification (required : only one rule for the target symbol)");
+            }
+            return targetRules.iterator().next();
+        }
+
+        /**
+         * Syntax Analysis Goal: Action and Goto Table. This step is the same for all the constructions : they only differ by
+         * their states.
+         *
+         * @param grammar          the grammar
+         * @param translationTable the transitions of each state, by symbol
+         * @param lookaheads       for each state, the terminals for which each rule is reduced (the rules being sorted by id)
+         * @param acceptingStates  the states where the starting rule is complete
+         * @return the table
+         */
+        ActionTable makeActionTable(Grammar grammar, Map<Integer, Map<Symbol, Integer>> translationTable, Map<Integer, Map<Rule, Set<Symbol>>> lookaheads, Collection<Integer> acceptingStates) {
             ActionTable actionTable = new ActionTable();
 
             initializeShiftsAndGotos(actionTable, translationTable);
 
-            initializeReductions(grammar, actionTable, startRule, allItemSets);
+            initializeReductions(grammar, actionTable, lookaheads);
 
-            initializeAccept(actionTable, startRule, allItemSets);
+            initializeAccept(actionTable, acceptingStates);
 
             actionTable.onInitialized();
 
@@ -237,64 +743,55 @@ public class ActionTable implements MarshallingCapable {
 
         /**
          * Add all the reduce actions to the table.
+         * <p>
+         * The reductions are added by state and then by rule id, so that a reduce/reduce conflict is always won by the rule that
+         * has the lowest id. The conflicts that are not resolved by the grammar are also recorded, with all their actions (see
+         * {@link ActionTable#getConflictingActionCodes(int, int)}).
+         * </p>
          *
          * @param grammar
          * @param table
-         * @param startRule
-         * @param itemSets
+         * @param lookaheads the lookaheads of the reductions (see {@link LalrLookaheads})
          */
-        void initializeReductions(Grammar grammar, ActionTable table, Rule startRule, Set<ItemSet> itemSets) {
-
-            Grammar extendedGrammar = makeExtendedGrammar(startRule, itemSets);
-
-            // Syntax Analysis Goal: FOLLOW Sets
-            Map<Symbol, Set<? extends Symbol>> followSets = getFollowSets(extendedGrammar);
-
-            //build a list of rules and and follow sets
-            List<PreMergeReduction> step1 = new ArrayList<>();
-            for (Rule eRule : extendedGrammar.getRules()) {
-                Set<Symbol> followSet = followSets.get(eRule.getTarget())
-                        .stream()
-                        .map(s -> (s instanceof ExtendedSymbol) ? ((ExtendedSymbol) s).getSymbol() : s)
-                        .collect(Collectors.toSet());
-
-                step1.add(new PreMergeReduction((ExtendedRule) eRule, followSet));
-            }
-
-            //merging some rules
-            Set<MergedReduction> step2 = new HashSet<>();
-            for (PreMergeReduction pm : step1) {
-                List<PreMergeReduction> matching = step1.stream().filter(r -> r.matches(pm)).collect(Collectors.toList());
-                if (matching.size() == 1) {
-                    MergedReduction merged = new MergedReduction(pm.getBaseRule(), pm.getFinalState(), pm.getFollowSet());
-                    step2.add(merged);
-                } else {
-                    Set<Symbol> newFollowSet = new HashSet<>();
-                    for (PreMergeReduction m : matching) {
-                        newFollowSet.addAll(m.getFollowSet());
-                    }
-                    MergedReduction merged = new MergedReduction(pm.getBaseRule(), pm.getFinalState(), newFollowSet);
-                    step2.add(merged);
-                }
-            }
+        void initializeReductions(Grammar grammar, ActionTable table, Map<Integer, Map<Rule, Set<Symbol>>> lookaheads) {
 
             //feed the action table with reductions
-            for (MergedReduction merged : step2) {
-                int ruleId = merged.getRule().getId();
-                for (Symbol s : merged.getFollowSet()) {
-                    int state = merged.getFinalState();
+            for (Map.Entry<Integer, Map<Rule, Set<Symbol>>> entry : lookaheads.entrySet()) {
+                int state = entry.getKey();
+                for (Map.Entry<Rule, Set<Symbol>> reduction : entry.getValue().entrySet()) {
+                    Rule rule = reduction.getKey();
                     //add a reduce action to the table
-                    Action actionToInsert = new Action(ActionType.Reduce, ruleId);
-                    Action existingAction = table.getActionNoCheck(state, s);
-                    if (existingAction != null) {
-                        table.setAction(state, s, resolveConflict(grammar, merged.getRule(), s, existingAction, actionToInsert), true);
-                    } else {
-                        table.setAction(state, s, actionToInsert, false);
+                    Action actionToInsert = new Action(ActionType.Reduce, rule.getId());
+                    for (Symbol s : reduction.getValue()) {
+                        Action existingAction = table.getActionNoCheck(state, s);
+                        if (existingAction != null) {
+                            table.setAction(state, s, resolveConflict(grammar, rule, s, existingAction, actionToInsert), true);
+                            if (isUnresolvedConflict(grammar, rule, s, existingAction)) {
+                                table.addConflict(state, s, existingAction, actionToInsert);
+                            }
+                        } else {
+                            table.setAction(state, s, actionToInsert, false);
+                        }
                     }
                 }
             }
         }
 
+        /**
+         * @return true if the grammar does not tell how to resolve the conflict between an action and the reduction of a rule, so
+         * that the action is only kept by default
+         */
+        private boolean isUnresolvedConflict(Grammar grammar, Rule rule, Symbol symbol, Action existing) {
+            switch (existing.getActionType()) {
+                case Shift:
+                    return grammar.getConflictResolutionHint(rule, symbol) == null;
+                case Reduce:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
         /**
          * When the action table already has an action (accept oneOf shift) for a given state/lexeme,
          * try to apply precedence rules to arbitrate
@@ -333,6 +830,9 @@ public class ActionTable implements MarshallingCapable {
 
                     }
                 case Reduce:
+                    if (getLog().isDebugEnabled()) {
+                        getLog().debug(String.format("Reduce/reduce conflict on '%s' : rule %d is kept, rule %d is discarded", symbol, existing.getActionParameter(), reduceAction.getActionParameter()));
+                    }
                     return existing;
 
                 default:
@@ -344,17 +844,27 @@ public class ActionTable implements MarshallingCapable {
          * Step 1 - Initialize
          * <p>
          * Add a column for the end of input, labelled $.
-         * Place an "accept" in the $ column whenever the item set
+         * Place an "accept" in the $ column of each accepting state, I.e. each state that
          * contains an item where the pointer is at the end of the starting rule (in our example "S → N •").
          * </p>
          */
-        void initializeAccept(ActionTable table, Rule startingRule, Set<ItemSet> itemSets) {
-            final Symbol eof = Lexemes.eof();
+        void initializeAccept(ActionTable table, Collection<Integer> acceptingStates) {
             final Action accept = new Action(ActionType.Accept, 0);
+            for (int state : acceptingStates) {
+                table.setAction(state, Lexemes.eof(), accept, true);
+            }
+        }
+
+        /**
+         * @return the ids of the item sets that contain an item where the pointer is at the end of the starting rule
+         */
+        List<Integer> getAcceptingStates(Rule startingRule, Set<ItemSet> itemSets) {
             Item allParsed = new Item(startingRule, startingRule.getClause().length);
-            itemSets.stream()
-                    .filter(itemSet -> itemSet.allItems().filter(item -> item.equals(allParsed)).findAny().isPresent())
-                    .forEach(itemSet -> table.setAction(itemSet.getId(), eof, accept, true));
+            return itemSets.stream()
+                    .filter(itemSet -> itemSet.allItems().anyMatch(item -> item.equals(allParsed)))
+                    .map(ItemSet::getId)
+                    .sorted()
+                    .collect(Collectors.toList());
         }
 
         /**
@@ -380,210 +890,6 @@ public class ActionTable implements MarshallingCapable {
             }
         }
 
-        /**
-         * Compte the FOLLOW sets for all the symbols of a grammar
-         *
-         * @param grammar the grammar
-         * @return the FOLLOW sets for all the symbols of a grammar
-         */
-        Map<Symbol, Set<? extends Symbol>> getFollowSets(Grammar grammar) {
-
-
-            //The follow set of a terminal is always empty
-            Map<Symbol, FollowSet> map = grammar.getSymbols().stream()
-                    .filter(s -> s.isTerminal())
-                    .collect(Collectors.toMap(s -> s, s -> FollowSet.emptySet(s)));
-
-            //Initialize an new set for each nonterminal
-            for (Symbol s : grammar.getNonTerminals()) {
-                map.put(s, new FollowSet(s));
-            }
-
-            //Place an End of Input token ($) into the starting rule's follow set.
-            map.get(grammar.getTargetSymbol()).setResolution(new HashSet<>(Arrays.asList(Lexemes.eof())));
-
-            for (Symbol s : grammar.getNonTerminals()) {
-                defineFollowSet(map, grammar, s);
-            }
-
-            LazySet.resolveAll(map);
-
-            return map.values()
-                    .stream()
-                    .filter(f -> !f.getSubject().isTerminal())
-                    .collect(Collectors.toMap(FollowSet::getSubject, FollowSet::getResolution));
-        }
-
-        /**
-         * computes FOLLOW(D).
-         *
-         * @param followSets map of all follow sets,
-         * @param grammar    The grammar
-         * @param D          the symbol we compute the set for
-         */
-        void defineFollowSet(Map<Symbol, FollowSet> followSets, Grammar grammar, Symbol D) {
-
-            FollowSet followSet = followSets.get(D);
-
-            // Construct for the rule have the form R → a* D b.
-            for (Rule rule : grammar.getRules()) {
-
-                Symbol R = rule.getTarget();
-                List<Symbol> clause = Arrays.asList(rule.getClause());
-
-                //for each occurence of D in the clause
-                for (int i = 0, max = clause.size() - 1; i < max; i++) { //minus 1 because if D is the last we are not interested (i.e b must exist)
-                    //if (clause.get(i).equals(D)) {
-                    if (clause.get(i).equals(D)) {
-                        Symbol b = clause.get(i + 1);
-                        //Everything in First(b) (except for ε) is added to Follow(D)
-                        Set<Symbol> first = new HashSet<>(getFirstSet(grammar, b));
-                        boolean containedEmpty = first.remove(Lexemes.empty());
-
-                        FirstSet firstSet = new FirstSet(b);
-                        firstSet.setResolution(first);
-                        followSet.add(firstSet);
-
-                        //If First(b) contains ε then everything in Follow(R) is put in Follow(D)
-                        if (containedEmpty) {
-                            followSet.add(followSets.get(R));
-                        }
-                    }
-                }
-
-                //Finally, if we have a rule R → a* D, then everything in Follow(R) is placed in Follow(D).
-                if (!clause.isEmpty() && D.equals(clause.get(clause.size() - 1))) {
-                    followSet.add(followSets.get(R));
-                }
-            }
-        }
-
-        /**
-         * computes FIRST(symbol)
-         *
-         * @param grammar
-         * @param s
-         * @return FIRST(symbol)
-         */
-        Set<Symbol> getFirstSet(Grammar grammar, Symbol s) {
-
-            Set<Symbol> set = new HashSet<>();
-
-            if (s.isTerminal()) {
-                // First(terminal) = [terminal]
-                if (s instanceof ExtendedSymbol) {
-                    set.add(((ExtendedSymbol) s).getSymbol());
-                } else {
-                    set.add(s);
-                }
-
-            } else {
-
-                for (Rule r : grammar.getRules()) {
-                    if (r.getTarget().equals(s)) {
-
-                        //if the first symbol is a terminal, the set is this terminal
-                        Symbol firstTerminal;
-                        if (r.getClause().length > 0 && (firstTerminal = r.getClause()[0]).isTerminal()) {
-                            set.add(firstTerminal);
-                            continue;
-                        }
-
-                        //if not, we scan the symbol,
-                        boolean brk = false;
-                        for (Symbol s2 : r.getClause()) {
-                            if (!s.equals(s2)) {
-                                Set<Symbol> a = getFirstSet(grammar, s2);
-                                boolean containedEmpty = a.remove(Lexemes.empty());
-                                set.addAll(a);
-                                //if First(x) did not contain ε, we do not need to contine scanning
-                                if (!containedEmpty) {
-                                    brk = true;
-                                    break;
-                                }
-                            }
-                        }
-
-                        //every First(x) contained ε, so we have to add it to the set
-                        if (!brk) {
-                            set.add(Lexemes.empty());
-                        }
-                    }
-                }
-            }
-
-            return set.stream().map(sym -> {
-                if (sym instanceof ExtendedSymbol) {
-                    return ((ExtendedSymbol) sym).getSymbol();
-                } else {
-                    return sym;
-                }
-            }).collect(Collectors.toSet());
-
-        }
-
-        /**
-         * Constructs 'extended' grammar, ie a more precise grammar than the original one, deduced from
-         * the item sets that have been computed in the previous step
-         *
-         * @param targetRule
-         * @param allItemSets
-         * @return
-         */
-        Grammar makeExtendedGrammar(Rule targetRule, Set<ItemSet> allItemSets) {
-            Set<ExtendedSymbol> extendedSymbols = new HashSet<>();
-            Grammar eGrammar = new Grammar();
-
-            int[] counter = new int[]{0};
-
-            for (ItemSet itemSet : allItemSets) {
-                int initialState = itemSet.getId();
-                itemSet.allItems()
-                        .filter(item -> item.getPointer() == 0)
-                        .map(item -> item.getRule())
-                        .forEach(rule -> {
-
-                            ItemSet currentItem = itemSet;
-                            List<ExtendedSymbol> eClause = new ArrayList<>();
-
-                            for (Symbol s : rule.getClause()) {
-                                final int start = currentItem.getId();
-                                currentItem = currentItem.getTransitionFor(s);
-                                final int end = currentItem.getId();
-                                ExtendedSymbol extSym = new ExtendedSymbol(start, s, end);
-                                if (!extendedSymbols.contains(extSym)) {
-                                    extendedSymbols.add(extSym);
-                                }
-                                eClause.add(extSym);
-                            }
-
-                            final int finalState;
-
-                            ItemSet transition = itemSet.getTransitionFor(rule.getTarget());
-                            if (transition == null) {
-                                finalState = -1;
-                            } else {
-                                finalState = transition.getId();
-                            }
-
-                            ExtendedSymbol eTarget = new ExtendedSymbol(initialState, rule.getTarget(), finalState);
-                            if (!extendedSymbols.contains(eTarget)) {
-                                extendedSymbols.add(eTarget);
-                            }
-                            eGrammar.addRule(new ExtendedRule(counter[0]++, rule, eTarget, eClause.toArray(new ExtendedSymbol[]{})));
-                        });
-            }
-
-            ExtendedRule eTargetRule = eGrammar.getRules().stream().map(r -> (ExtendedRule) r).filter(r -> ((ExtendedSymbol) r.getTarget()).getSymbol().equals(targetRule.getTarget())).findFirst().get();
-            eGrammar.setTargetRule(eTargetRule);
-
-            if (getLog().isTraceEnabled()) {
-                getLog().trace(String.format("Extended grammar has %d rules", eGrammar.getRules().size()));
-            }
-
-            return eGrammar;
-        }
-
         /**
          * map each state to the states that can be reached for a given symbol.
          *
@@ -610,58 +916,134 @@ public class ActionTable implements MarshallingCapable {
         /**
          * Once we have the item set for the starting rule of the grammar,
          * generate all the other sets so we can get all LR(0) transitions
+         * <p>
+         * The item sets are expanded in parallel (each expansion being a task of the common {@link ForkJoinPool}), and identified by
+         * their kernel in a concurrent map. The ids are given afterwards by a breadth-first walk of the transitions, that follows
+         * the order of the symbols in the grammar, so that they do not depend on the scheduling of the tasks.
+         * </p>
          *
          * @param grammar
          * @return
          */
         Set<ItemSet> getAllItemSets(Grammar grammar) {
-            ItemSet i0 = getFirstItemSet(grammar);
+            Map<Symbol, List<Rule>> rulesByTarget = getRulesByTarget(grammar);
+            ItemSet i0 = getFirstItemSet(grammar, rulesByTarget);
 
-            Set<ItemSet> set = new HashSet<>();
-            set.add(i0);
-
-            Map<Set<Item>, ItemSet> knownKernels = new HashMap<>();
+            ConcurrentMap<Set<Item>, ItemSet> knownKernels = new ConcurrentHashMap<>();
             knownKernels.put(i0.getKernel(), i0);
+            ForkJoinPool.commonPool().invoke(new ItemSetExpansion(null, i0, rulesByTarget, knownKernels));
 
-            Stack<ItemSet> stack = new Stack<>();
-            stack.add(i0);
+            assignIds(grammar, i0);
+            return new HashSet<>(knownKernels.values());
+        }
 
-            int i = 1;
-            while (!stack.isEmpty()) {
-                ItemSet currentItemSet = stack.pop();
-                for (Symbol symbol : currentItemSet.getPossibleNextSymbols()) {
+        /**
+         * Computes the transitions of an item set, and forks the expansion of each new item set that is reached.
+         */
+        private static class ItemSetExpansion extends CountedCompleter<Void> {
 
-                    Set<Item> newKernel = new HashSet<>();
-                    for (Item item : currentItemSet.getItemsThatExpect(symbol)) {
-                        Item nextItem = item.shift();
-                        newKernel.add(nextItem);
-                    }
+            private static final long serialVersionUID = 5218807231649308816L;
+
+            private final ItemSet itemSet;
+
+            private final Map<Symbol, List<Rule>> rulesByTarget;
+
+            private final ConcurrentMap<Set<Item>, ItemSet> knownKernels;
 
-                    if (!newKernel.isEmpty()) {
-                        ItemSet newItemSet = knownKernels.get(newKernel);
+            ItemSetExpansion(CountedCompleter<?> parent, ItemSet itemSet, Map<Symbol, List<Rule>> rulesByTarget, ConcurrentMap<Set<Item>, ItemSet> knownKernels) {
+                super(parent);
+                this.itemSet = itemSet;
+                this.rulesByTarget = rulesByTarget;
+                this.knownKernels = knownKernels;
+            }
+
+            @Override
+            public void compute() {
+                //group the shifted items by the symbol they expect
+                Map<Symbol, Set<Item>> kernels = new HashMap<>();
+                itemSet.allItems().forEach(item -> {
+                    Symbol expected = item.getExpectedSymbol();
+                    if (expected != null) {
+                        kernels.computeIfAbsent(expected, k -> new HashSet<>()).add(item.shift());
+                    }
+                });
+
+                for (Map.Entry<Symbol, Set<Item>> entry : kernels.entrySet()) {
+                    Set<Item> newKernel = entry.getValue();
+                    ItemSet newItemSet = knownKernels.get(newKernel);
+                    if (newItemSet == null) {
+                        ItemSet candidate = new ItemSet(newKernel, extendItemSetKernel(rulesByTarget, newKernel));
+                        newItemSet = knownKernels.putIfAbsent(newKernel, candidate);
                         if (newItemSet == null) {
-                            newItemSet = new ItemSet(newKernel, extendItemSetKernel(grammar, newKernel));
-                            knownKernels.put(newKernel, newItemSet);
-                            newItemSet.setId(i++);
-                            set.add(newItemSet);
-                            stack.push(newItemSet);
+                            newItemSet = candidate;
+                            addToPendingCount(1);
+                            new ItemSetExpansion(this, candidate, rulesByTarget, knownKernels).fork();
                         }
-                        currentItemSet.addTransition(symbol, newItemSet);
+                    }
+                    //only this task modifies the transitions of this item set
+                    itemSet.addTransition(entry.getKey(), newItemSet);
+                }
+                tryComplete();
+            }
+        }
+
+        /**
+         * Numbers the item sets in the order they are reached from the first one, the transitions of each item set being followed
+         * in the order of the symbols in the grammar.
+         */
+        private void assignIds(Grammar grammar, ItemSet i0) {
+            Map<Symbol, Integer> symbolsOrder = new HashMap<>();
+            for (Rule rule : grammar.getRules()) {
+                symbolsOrder.putIfAbsent(rule.getTarget(), symbolsOrder.size());
+                for (Symbol s : rule.getClause()) {
+                    symbolsOrder.putIfAbsent(s, symbolsOrder.size());
+                }
+            }
+            Comparator<Symbol> bySymbolsOrder = Comparator.comparing(symbolsOrder::get);
+
+            Set<ItemSet> visited = new HashSet<>();
+            Deque<ItemSet> queue = new ArrayDeque<>();
+            visited.add(i0);
+            queue.add(i0);
+            int id = 0;
+            while (!queue.isEmpty()) {
+                ItemSet itemSet = queue.poll();
+                itemSet.setId(id++);
+                List<Symbol> symbols = new ArrayList<>(itemSet.getTransitions().keySet());
+                symbols.sort(bySymbolsOrder);
+                for (Symbol symbol : symbols) {
+                    ItemSet target = itemSet.getTransitionFor(symbol);
+                    if (visited.add(target)) {
+                        queue.add(target);
                     }
                 }
             }
-            return set;
+        }
+
+        /**
+         * @return the rules of the grammar, by target symbol
+         */
+        private static Map<Symbol, List<Rule>> getRulesByTarget(Grammar grammar) {
+            Map<Symbol, List<Rule>> rulesByTarget = new HashMap<>();
+            for (Rule rule : grammar.getRules()) {
+                rulesByTarget.computeIfAbsent(rule.getTarget(), k -> new ArrayList<>()).add(rule);
+            }
+            return rulesByTarget;
         }
 
         /**
          * The first item set, I0 begins with the starting rule.
          */
         ItemSet getFirstItemSet(Grammar grammar) {
+            return getFirstItemSet(grammar, getRulesByTarget(grammar));
+        }
+
+        private ItemSet getFirstItemSet(Grammar grammar, Map<Symbol, List<Rule>> rulesByTarget) {
             Rule startingRule = grammar.getRulesTargeting(grammar.getTargetSymbol()).iterator().next();
             Item firstItem = new Item(startingRule, 0);
             Set<Item> kernel = new HashSet<>();
             kernel.add(firstItem);
-            ItemSet i0 = new ItemSet(kernel, extendItemSetKernel(grammar, kernel));
+            ItemSet i0 = new ItemSet(kernel, extendItemSetKernel(rulesByTarget, kernel));
             i0.setId(0);
             return i0;
         }
@@ -674,21 +1056,23 @@ public class ActionTable implements MarshallingCapable {
          * @return
          */
         Set<Item> extendItemSetKernel(Grammar grammar, Set<Item> kernel) {
+            return extendItemSetKernel(getRulesByTarget(grammar), kernel);
+        }
+
+        private static Set<Item> extendItemSetKernel(Map<Symbol, List<Rule>> rulesByTarget, Set<Item> kernel) {
             Set<Item> set = new HashSet<>();
-            Stack<Item> stack = new Stack<>();
-            stack.addAll(kernel);
+            Deque<Item> stack = new ArrayDeque<>(kernel);
             while (!stack.isEmpty()) {
                 Item currentItem = stack.pop();
                 Symbol expected = currentItem.getExpectedSymbol();
                 if (expected != null) {
                     //find all the rules starting with 'expected'
-                    grammar.getRules().stream().filter(r -> r.getTarget().equals(expected)).forEach(r -> {
+                    for (Rule r : rulesByTarget.getOrDefault(expected, Collections.emptyList())) {
                         Item i = new Item(r, 0);
-                        if (!set.contains(i)) {
-                            set.add(i);
+                        if (set.add(i)) {
                             stack.push(i);
                         }
-                    });
+                    }
                 }
             }
             set.removeAll(kernel);
@@ -25,7 +25,7 @@ public class ActionTableCaching {
                         onDisk.withKeyMapper(Grammar::getFingerprint)
                                 .withValueConverter(MarshallingUtil.converter(ActionTable.class, true))
                 )
-                .withFactory(ActionTable::lalr1)
+                .withFactory(grammar -> ActionTable.build(grammar, grammar.getTableConstruction()))
                 .build();
 
     }
@@ -48,10 +48,10 @@ public class ActionTableCaching {
                 return cache.get(grammar);
             } catch (Exception e) {
                 getLog().error("Cache failure", e);
-                return ActionTable.lalr1(grammar);
+                return ActionTable.build(grammar, grammar.getTableConstruction());
             }
         } else {
-            return ActionTable.lalr1(grammar);
+            return ActionTable.build(grammar, grammar.getTableConstruction());
         }
     }
 
@@ -4,7 +4,9 @@ import net.jr.common.Symbol;
 import net.jr.parser.ParsingContext;
 import net.jr.parser.Rule;
 
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Base implementation of a grammar {@link Rule}.
@@ -13,6 +15,8 @@ public class BaseRule extends Rule {
 
     private Consumer<ParsingContext> action;
 
+    private Function<List<Object>, ?> reduction;
+
     private String name;
 
     private String comment;
@@ -40,6 +44,14 @@ public class BaseRule extends Rule {
         this.action = action;
     }
 
+    public Function<List<Object>, ?> getReduction() {
+        return reduction;
+    }
+
+    public void setReduction(Function<List<Object>, ?> reduction) {
+        this.reduction = reduction;
+    }
+
     public String getName() {
         return name;
     }
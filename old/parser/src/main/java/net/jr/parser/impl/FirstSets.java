@@ -0,0 +1,194 @@
+package net.jr.parser.impl;
+
+import net.jr.common.Symbol;
+import net.jr.lexer.Lexemes;
+import net.jr.parser.Grammar;
+import net.jr.parser.Rule;
+
+import java.util.*;
+
+/**
+ * The FIRST sets and the nullable symbols of a whole grammar, that are computed at once.
+ * <p>
+ * Each symbol gets a dense id, and the sets are {@link BitSet}s indexed by terminal, that are computed with a fixpoint over the
+ * rules :
+ * <pre>
+ * A → X1 X2 ... Xn : FIRST(A) ⊇ FIRST(Xi) for each i such that X1 ... Xi-1 are all nullable
+ *                     A is nullable if X1 ... Xn are all nullable
+ * </pre>
+ * The pseudo-terminal {@link Lexemes#empty()} (ε) is nullable, and it never belongs to a FIRST set.
+ * </p>
+ * <p>
+ * An instance is obtained with {@link Grammar#getFirstSets()}, that keeps it until a rule is added to the grammar. It is immutable.
+ * </p>
+ */
+public final class FirstSets {
+
+    private final Map<Symbol, Integer> ids = new HashMap<>();
+
+    /**
+     * the terminals come first, so that the id of a terminal is its index in the FIRST sets
+     */
+    private final List<Symbol> symbols = new ArrayList<>();
+
+    private final int terminalsCount;
+
+    private final BitSet nullable;
+
+    private final BitSet[] first;
+
+    public FirstSets(Grammar grammar) {
+        List<Rule> rules = grammar.getRules();
+        for (Rule rule : rules) {
+            for (Symbol s : rule.getClause()) {
+                if (s.isTerminal() && !isEmpty(s)) {
+                    addSymbol(s);
+                }
+            }
+        }
+        terminalsCount = symbols.size();
+        for (Rule rule : rules) {
+            addSymbol(rule.getTarget());
+            for (Symbol s : rule.getClause()) {
+                if (!s.isTerminal()) {
+                    addSymbol(s);
+                }
+            }
+        }
+
+        //the clauses, as arrays of ids (-1 for ε)
+        int[] targets = new int[rules.size()];
+        int[][] clauses = new int[rules.size()][];
+        for (int r = 0; r < rules.size(); r++) {
+            Symbol[] clause = rules.get(r).getClause();
+            targets[r] = ids.get(rules.get(r).getTarget());
+            clauses[r] = new int[clause.length];
+            for (int i = 0; i < clause.length; i++) {
+                clauses[r][i] = isEmpty(clause[i]) ? -1 : ids.get(clause[i]);
+            }
+        }
+
+        nullable = new BitSet(symbols.size());
+        first = new BitSet[symbols.size()];
+        for (int id = 0; id < symbols.size(); id++) {
+            first[id] = new BitSet(terminalsCount);
+            if (id < terminalsCount) {
+                first[id].set(id);
+            }
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int r = 0; r < clauses.length; r++) {
+                BitSet target = first[targets[r]];
+                int cardinality = target.cardinality();
+                boolean allNullable = true;
+                for (int id : clauses[r]) {
+                    if (id == -1) {
+                        continue;
+                    }
+                    target.or(first[id]);
+                    if (!nullable.get(id)) {
+                        allNullable = false;
+                        break;
+                    }
+                }
+                if (target.cardinality() != cardinality) {
+                    changed = true;
+                }
+                if (allNullable && !nullable.get(targets[r])) {
+                    nullable.set(targets[r]);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private void addSymbol(Symbol s) {
+        if (!ids.containsKey(s)) {
+            ids.put(s, symbols.size());
+            symbols.add(s);
+        }
+    }
+
+    private static boolean isEmpty(Symbol s) {
+        return Lexemes.empty().equals(s);
+    }
+
+    private int getId(Symbol s) {
+        Integer id = ids.get(s);
+        if (id == null) {
+            throw new IllegalArgumentException("Unknown symbol : " + s);
+        }
+        return id;
+    }
+
+    /**
+     * @param s a symbol of the grammar
+     * @return true if s derives the empty string
+     */
+    public boolean isNullable(Symbol s) {
+        return isEmpty(s) || nullable.get(getId(s));
+    }
+
+    /**
+     * @param sequence symbols of the grammar
+     * @return true if all the symbols of the sequence are nullable (in particular if it is empty)
+     */
+    public boolean isNullable(Symbol... sequence) {
+        for (Symbol s : sequence) {
+            if (!isNullable(s)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the symbols that derive the empty string (including ε)
+     */
+    public Set<Symbol> getNullableSymbols() {
+        Set<Symbol> set = new HashSet<>();
+        set.add(Lexemes.empty());
+        for (int id = nullable.nextSetBit(0); id >= 0; id = nullable.nextSetBit(id + 1)) {
+            set.add(symbols.get(id));
+        }
+        return set;
+    }
+
+    /**
+     * @param s a symbol of the grammar
+     * @return the terminals that begin the strings derived from s (the terminal itself for a terminal)
+     */
+    public Set<Symbol> getFirst(Symbol s) {
+        return isEmpty(s) ? Collections.emptySet() : toSymbols(first[getId(s)]);
+    }
+
+    /**
+     * @param sequence symbols of the grammar
+     * @return the terminals that begin the strings derived from the sequence
+     */
+    public Set<Symbol> getFirst(Symbol... sequence) {
+        BitSet set = new BitSet(terminalsCount);
+        for (Symbol s : sequence) {
+            if (isEmpty(s)) {
+                continue;
+            }
+            int id = getId(s);
+            set.or(first[id]);
+            if (!nullable.get(id)) {
+                break;
+            }
+        }
+        return toSymbols(set);
+    }
+
+    private Set<Symbol> toSymbols(BitSet set) {
+        Set<Symbol> terminals = new HashSet<>();
+        for (int t = set.nextSetBit(0); t >= 0; t = set.nextSetBit(t + 1)) {
+            terminals.add(symbols.get(t));
+        }
+        return terminals;
+    }
+}
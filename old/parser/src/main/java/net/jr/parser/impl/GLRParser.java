@@ -0,0 +1,729 @@
+package net.jr.parser.impl;
+
+import net.jr.common.Symbol;
+import net.jr.lexer.Lexemes;
+import net.jr.lexer.Lexer;
+import net.jr.lexer.LexerStream;
+import net.jr.lexer.Token;
+import net.jr.lexer.TokenListener;
+import net.jr.parser.*;
+import net.jr.parser.ast.AstNode;
+import net.jr.parser.ast.AstNodeFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Implementation of the GLR parser algorithm of Tomita, that follows all the actions of the cells that have a conflict that the
+ * grammar does not resolve (see {@link ActionTable#getConflictingActionCodes(int, int)}), instead of the action that is chosen by
+ * default.
+ * <p>
+ * The stacks of the parser are merged in a <i>graph-structured stack</i> : all the stacks that are in the same state after the
+ * same token share the same node, and a node has a link to each node that was below it in one of the stacks. The value of a
+ * link is the node (or the value computed by the {@link Reducer}) of the symbol that leads from the lower node to the upper one.
+ * When two stacks reduce the same symbol over the same tokens, the link already exists : the new derivation is only recorded
+ * as an alternative of the value of the link (see {@link ParseForest}), and the stacks go on as one.
+ * </p>
+ * <p>
+ * While there is only one stack, and its state has no conflict, the parser works as {@link LRParser} does.
+ * </p>
+ * <p>
+ * (Implementation note) : the actions of the rules and the {@link ParserListener} are called for the reductions of all the
+ * stacks, including the ones that fail later. In the {@link Reducer} mode, the value of an ambiguous symbol is the value of
+ * its first derivation, and the value of a link is given to the reductions of all the stacks that go through it : it must be
+ * treated as immutable (the values of the repetitions of {@link Grammar} are immutable lists, that are extended without being
+ * changed). The lookahead is given again to the {@link TokenListener} of the lexer after each reduction, as in
+ * {@link LRParser}, and the stacks that are processed afterwards see its new type.
+ * </p>
+ */
+public class GLRParser implements Parser {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GLRParser.class);
+    private Grammar grammar;
+    private Lexer defaultLexer;
+    private ActionTable actionTable;
+    private AstNodeFactory astNodeFactory = new LRParser.DefaultAstNodeFactory();
+    private ParserListener parserListener;
+    private final boolean compiled;
+
+    /**
+     * the rule that is reduced when the input is accepted
+     */
+    private final Rule targetRule;
+
+    /**
+     * the rules of the grammar, indexed by their ids
+     */
+    private final Rule[] rules;
+
+    /**
+     * for each rule, the id of its target in the action table
+     */
+    private final int[] ruleTargetIds;
+
+    /**
+     * @param grammar     target grammar
+     * @param actionTable The actionTable for the grammar, with any construction (see {@link ActionTable#build(Grammar, TableConstruction)})
+     */
+    public GLRParser(Grammar grammar, ActionTable actionTable) {
+        this(grammar, Lexer.forLexemes(grammar.getTerminals()), actionTable);
+    }
+
+    public GLRParser(Grammar grammar, Lexer lexer, ActionTable actionTable) {
+        this.grammar = grammar;
+        this.defaultLexer = lexer;
+        this.actionTable = actionTable;
+        this.compiled = false;
+        this.targetRule = grammar.getRulesTargeting(grammar.getTargetSymbol()).iterator().next();
+        int maxId = 0;
+        for (Rule rule : grammar.getRules()) {
+            maxId = Math.max(maxId, rule.getId());
+        }
+        this.rules = new Rule[maxId + 1];
+        this.ruleTargetIds = new int[maxId + 1];
+        for (Rule rule : grammar.getRules()) {
+            rules[rule.getId()] = rule;
+            ruleTargetIds[rule.getId()] = actionTable.getSymbolId(rule.getTarget());
+        }
+    }
+
+    private GLRParser(GLRParser parser) {
+        this.grammar = parser.grammar;
+        this.defaultLexer = parser.getLexer().compile();
+        this.actionTable = parser.actionTable;
+        this.astNodeFactory = parser.astNodeFactory;
+        this.parserListener = parser.parserListener;
+        this.compiled = true;
+        this.targetRule = parser.targetRule;
+        this.rules = parser.rules;
+        this.ruleTargetIds = parser.ruleTargetIds;
+    }
+
+    @Override
+    public Parser compile() {
+        return compiled ? this : new GLRParser(this);
+    }
+
+    private void checkNotCompiled() {
+        if (compiled) {
+            throw new IllegalStateException("This parser is compiled, and cannot be modified");
+        }
+    }
+
+    private static Logger getLog() {
+        return LOGGER;
+    }
+
+    @Override
+    public AstNode parse(Reader reader) {
+        return parse(reader, ParseOptions.defaults());
+    }
+
+    @Override
+    public AstNode parse(Path path) throws IOException {
+        return parse(path, ParseOptions.defaults());
+    }
+
+    @Override
+    public AstNode parse(Reader reader, ParseOptions options) {
+        return (AstNode) parse(iterator(reader, options), options, null, null);
+    }
+
+    @Override
+    public AstNode parse(Path path, ParseOptions options) throws IOException {
+        return (AstNode) parse(iterator(path, options), options, null, null);
+    }
+
+    @Override
+    public Object parse(Reader reader, Reducer reducer, ParseOptions options) {
+        if (reducer == null) {
+            throw new IllegalArgumentException("reducer");
+        }
+        return parse(getLexer().streamingIterator(reader, options.getTokenListener()), options, reducer, null);
+    }
+
+    @Override
+    public Object parse(Path path, Reducer reducer, ParseOptions options) throws IOException {
+        if (reducer == null) {
+            throw new IllegalArgumentException("reducer");
+        }
+        return parse(iterator(path, options), options, reducer, null);
+    }
+
+    /**
+     * sugar for parseForest(new StringReader(txt), ParseOptions.defaults())
+     */
+    public ParseForest parseForest(String txt) {
+        return parseForest(new StringReader(txt), ParseOptions.defaults());
+    }
+
+    /**
+     * Parses an input, and keeps all its derivations.
+     *
+     * @param reader  the input
+     * @param options the options of this parse
+     * @return the derivations of the input
+     */
+    public ParseForest parseForest(Reader reader, ParseOptions options) {
+        Map<AstNode, List<AstNode>> alternatives = new HashMap<>();
+        AstNode root = (AstNode) parse(iterator(reader, options), options, null, alternatives);
+        return new ParseForest(root, alternatives);
+    }
+
+    private LexerStream iterator(Reader reader, ParseOptions options) {
+        TokenListener tokenListener = options.getTokenListener();
+        return tokenListener == null ? getLexer().iterator(reader) : getLexer().iterator(reader, tokenListener);
+    }
+
+    private LexerStream iterator(Path path, ParseOptions options) throws IOException {
+        TokenListener tokenListener = options.getTokenListener();
+        if (options.getCharset() != null) {
+            return getLexer().iterator(path, options.getCharset(), tokenListener);
+        }
+        return tokenListener == null ? getLexer().iterator(path) : getLexer().iterator(path, tokenListener);
+    }
+
+    /**
+     * @param reducer      computes the values of the reductions, or null to build a tree
+     * @param alternatives where the alternatives of the ambiguous nodes are recorded, or null
+     * @return the value of the target rule (its node when a tree is built)
+     */
+    private Object parse(LexerStream lexerStream, ParseOptions options, Reducer reducer, Map<AstNode, List<AstNode>> alternatives) {
+        ParseRun run = new ParseRun(lexerStream, options, reducer, alternatives);
+        List<Node> heads = Collections.singletonList(new Node(0, null, null));
+        run.readToken();
+        while (true) {
+            if (heads.size() == 1) {
+                Node head = run.parseDeterministic(heads.get(0));
+                if (run.accepted) {
+                    return run.result;
+                }
+                heads = Collections.singletonList(head);
+            }
+            heads = run.parseToken(heads);
+            if (run.accepted) {
+                return run.result;
+            }
+        }
+    }
+
+    /**
+     * A node of the graph-structured stack
+     */
+    private static final class Node {
+
+        private final int state;
+
+        /**
+         * the first link (null for the bottom of the stack), and its value
+         */
+        private final Node to;
+
+        private final Object value;
+
+        /**
+         * the other links, when several stacks share this node
+         */
+        private List<Link> links;
+
+        /**
+         * whether the actions of this node have been done for the current token
+         */
+        private boolean processed;
+
+        Node(int state, Node to, Object value) {
+            this.state = state;
+            this.to = to;
+            this.value = value;
+        }
+
+        int getLinksCount() {
+            return to == null ? 0 : 1 + (links == null ? 0 : links.size());
+        }
+
+        Node getTarget(int link) {
+            return link == 0 ? to : links.get(link - 1).to;
+        }
+
+        Object getValue(int link) {
+            return link == 0 ? value : links.get(link - 1).value;
+        }
+
+        int indexOfLink(Node target) {
+            for (int i = 0, count = getLinksCount(); i < count; i++) {
+                if (getTarget(i) == target) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void addLink(Node target, Object value) {
+            if (links == null) {
+                links = new ArrayList<>(2);
+            }
+            links.add(new Link(target, value));
+        }
+    }
+
+    private static final class Link {
+
+        private final Node to;
+
+        private final Object value;
+
+        Link(Node to, Object value) {
+            this.to = to;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Everything that only lives during one parse.
+     */
+    private final class ParseRun {
+
+        private final LexerStream lexerStream;
+
+        private final ParserListener parserListener;
+
+        private final AstNodeFactory astNodeFactory;
+
+        private final Reducer reducer;
+
+        private final Map<AstNode, List<AstNode>> alternatives;
+
+        private Token token;
+
+        private int symbolId;
+
+        /**
+         * the value of the token when it is shifted, and when ε is shifted before it (see {@link LRParser})
+         */
+        private Object leaf, emptyLeaf;
+
+        private boolean hasLeaf, hasEmptyLeaf;
+
+        /**
+         * the nodes of the current token, by state
+         */
+        private final Node[] nodesByState = new Node[actionTable.getStatesCount()];
+
+        private final List<Node> nodes = new ArrayList<>();
+
+        private final Deque<Node> forActor = new ArrayDeque<>();
+
+        private final List<Node> shiftedNodes = new ArrayList<>();
+
+        private int[] shiftStates = new int[16];
+
+        private boolean accepted;
+
+        private Object result;
+
+        ParseRun(LexerStream lexerStream, ParseOptions options, Reducer reducer, Map<AstNode, List<AstNode>> alternatives) {
+            this.lexerStream = lexerStream;
+            this.parserListener = options.getParserListener() == null ? GLRParser.this.parserListener : options.getParserListener();
+            this.astNodeFactory = options.getAstNodeFactory() == null ? GLRParser.this.astNodeFactory : options.getAstNodeFactory();
+            this.reducer = reducer;
+            this.alternatives = alternatives;
+        }
+
+        void readToken() {
+            setToken(lexerStream.next());
+        }
+
+        private void setToken(Token token) {
+            this.token = token;
+            symbolId = actionTable.getSymbolId(token.getTokenType());
+            hasLeaf = hasEmptyLeaf = false;
+            leaf = emptyLeaf = null;
+        }
+
+        private Object getLeaf() {
+            if (!hasLeaf) {
+                leaf = reducer == null ? astNodeFactory.newLeafNode(token) : token;
+                hasLeaf = true;
+            }
+            return leaf;
+        }
+
+        private Object getEmptyLeaf() {
+            if (!hasEmptyLeaf) {
+                emptyLeaf = reducer == null ? astNodeFactory.newLeafNode(token) : null;
+                hasEmptyLeaf = true;
+            }
+            return emptyLeaf;
+        }
+
+        /**
+         * Works as {@link LRParser}, as long as the state of the stack has no conflict.
+         *
+         * @param head the top of the only stack
+         * @return the top of the stack, when a conflict is met (or an error, that is reported by {@link #parseToken(List)})
+         */
+        Node parseDeterministic(Node head) {
+            while (!actionTable.hasConflicts(head.state)) {
+                int decision = actionTable.getConsistentReduction(head.state);
+                boolean emptyShift = false;
+                if (decision == ActionTable.NO_ACTION) {
+                    decision = actionTable.getActionCode(head.state, symbolId);
+                    if (decision == ActionTable.NO_ACTION) {
+                        decision = actionTable.getExplicitActionCode(head.state, actionTable.getEmptySymbolId());
+                        emptyShift = true;
+                    }
+                }
+                if (decision == ActionTable.NO_ACTION) {
+                    return head;
+                }
+                int actionParameter = ActionTable.getActionParameter(decision);
+                switch (ActionTable.getActionType(decision)) {
+                    case Shift:
+                        if (emptyShift) {
+                            head = new Node(actionParameter, head, getEmptyLeaf());
+                        } else {
+                            head = new Node(actionParameter, head, getLeaf());
+                            readToken();
+                        }
+                        break;
+                    case Reduce:
+                    case Accept:
+                        Rule rule = ActionTable.getActionType(decision) == ActionType.Accept ? targetRule : rules[actionParameter];
+                        int length = rule.getClause().length;
+                        Object[] values = new Object[length];
+                        Node base = head;
+                        for (int i = length - 1; i >= 0; i--) {
+                            if (base.getLinksCount() != 1) {
+                                //this part of the stack is shared
+                                return head;
+                            }
+                            values[i] = base.value;
+                            base = base.to;
+                        }
+                        Object value = reduceRule(rule, values);
+                        if (rule == targetRule) {
+                            accept(value);
+                            return null;
+                        }
+                        head = new Node(actionTable.getNextState(base.state, ruleTargetIds[rule.getId()]), base, value);
+                        onReduced();
+                        break;
+                    default:
+                        throw new IllegalStateException(String.format("Illegal action type '%s' !", ActionTable.getActionType(decision)));
+                }
+            }
+            return head;
+        }
+
+        /**
+         * Does all the actions of the stacks for the current token : the reductions (including the ones of the stacks that are
+         * created by the reductions), and then the shifts.
+         *
+         * @param heads the tops of the stacks
+         * @return the tops of the stacks after the token
+         */
+        List<Node> parseToken(List<Node> heads) {
+            if (getLog().isTraceEnabled()) {
+                getLog().trace(String.format("%d stacks for %s", heads.size(), token));
+            }
+            for (Node head : heads) {
+                head.processed = false;
+                addNode(head);
+            }
+            while (!forActor.isEmpty()) {
+                actor(forActor.poll());
+            }
+
+            if (accepted || shiftedNodes.isEmpty()) {
+                Node someNode = nodes.get(0);
+                Set<Symbol> expected = new HashSet<>();
+                for (Node node : nodes) {
+                    expected.addAll(actionTable.getExpectedTerminals(node.state));
+                    nodesByState[node.state] = null;
+                }
+                nodes.clear();
+                if (!accepted) {
+                    fail(expected, someNode);
+                }
+                return heads;
+            }
+
+            //shift the token
+            Object shifted = getLeaf();
+            for (Node node : nodes) {
+                nodesByState[node.state] = null;
+            }
+            nodes.clear();
+            List<Node> next = new ArrayList<>();
+            for (int i = 0; i < shiftedNodes.size(); i++) {
+                int state = shiftStates[i];
+                Node node = nodesByState[state];
+                if (node == null) {
+                    node = new Node(state, shiftedNodes.get(i), shifted);
+                    nodesByState[state] = node;
+                    next.add(node);
+                } else {
+                    node.addLink(shiftedNodes.get(i), shifted);
+                }
+            }
+            for (Node node : next) {
+                nodesByState[node.state] = null;
+            }
+            shiftedNodes.clear();
+            readToken();
+            return next;
+        }
+
+        private void fail(Set<Symbol> expected, Node node) {
+            ParseError parseError = new ParseError(token, expected);
+            if (parserListener == null) {
+                throw parseError;
+            }
+            parserListener.onParseError(parseError, new ParsingContextImpl(GLRParser.this, lexerStream, node.value));
+            if (LRParser.isEof(token)) {
+                //there is nothing left to skip
+                accept(null);
+            } else {
+                readToken();
+            }
+        }
+
+        private void addNode(Node node) {
+            nodesByState[node.state] = node;
+            nodes.add(node);
+            forActor.add(node);
+        }
+
+        /**
+         * @return the codes of the actions of a state for the current token
+         */
+        private int[] getActionCodes(int state) {
+            int[] codes = actionTable.getConflictingActionCodes(state, symbolId);
+            if (codes == null) {
+                int code = actionTable.getActionCode(state, symbolId);
+                codes = code == ActionTable.NO_ACTION ? new int[0] : new int[]{code};
+            }
+            return codes;
+        }
+
+        private void actor(Node node) {
+            node.processed = true;
+            int[] codes = getActionCodes(node.state);
+            if (codes.length == 0) {
+                //if ε is part of the expected symbols
+                int code = actionTable.getExplicitActionCode(node.state, actionTable.getEmptySymbolId());
+                if (code != ActionTable.NO_ACTION) {
+                    shiftEmpty(node, ActionTable.getActionParameter(code));
+                }
+                return;
+            }
+            for (int code : codes) {
+                switch (ActionTable.getActionType(code)) {
+                    case Shift:
+                        if (shiftedNodes.size() == shiftStates.length) {
+                            shiftStates = Arrays.copyOf(shiftStates, shiftStates.length * 2);
+                        }
+                        shiftStates[shiftedNodes.size()] = ActionTable.getActionParameter(code);
+                        shiftedNodes.add(node);
+                        break;
+                    case Reduce:
+                        reduce(node, rules[ActionTable.getActionParameter(code)], -1);
+                        break;
+                    case Accept:
+                        reduce(node, targetRule, -1);
+                        break;
+                    default:
+                        throw new IllegalStateException(String.format("Illegal action type '%s' !", ActionTable.getActionType(code)));
+                }
+            }
+        }
+
+        /**
+         * ε is shifted without consuming the token : the new stack is processed with the same token.
+         */
+        private void shiftEmpty(Node node, int state) {
+            Node target = nodesByState[state];
+            if (target == null) {
+                addNode(new Node(state, node, getEmptyLeaf()));
+            } else if (target.indexOfLink(node) < 0) {
+                target.addLink(node, getEmptyLeaf());
+                onNewLink(target);
+            }
+        }
+
+        /**
+         * When a link is added to a node that has already been processed, the reductions that go through this link are done.
+         */
+        private void onNewLink(Node node) {
+            if (!node.processed) {
+                return;
+            }
+            int link = node.getLinksCount() - 1;
+            for (int code : getActionCodes(node.state)) {
+                ActionType actionType = ActionTable.getActionType(code);
+                if (actionType == ActionType.Reduce) {
+                    reduce(node, rules[ActionTable.getActionParameter(code)], link);
+                } else if (actionType == ActionType.Accept) {
+                    reduce(node, targetRule, link);
+                }
+            }
+        }
+
+        /**
+         * Reduces a rule on all the paths from a node.
+         *
+         * @param firstLink the only link of the node that the paths may follow, or -1 for all of them
+         */
+        private void reduce(Node node, Rule rule, int firstLink) {
+            int length = rule.getClause().length;
+            reducePaths(node, rule, new Object[length], length, firstLink);
+        }
+
+        private void reducePaths(Node node, Rule rule, Object[] values, int remaining, int onlyLink) {
+            if (remaining == 0) {
+                reducePath(node, rule, values.clone());
+                return;
+            }
+            //the links that are added meanwhile are handled by onNewLink
+            for (int i = 0, count = node.getLinksCount(); i < count; i++) {
+                if (onlyLink < 0 || onlyLink == i) {
+                    values[remaining - 1] = node.getValue(i);
+                    reducePaths(node.getTarget(i), rule, values, remaining - 1, -1);
+                }
+            }
+        }
+
+        private void reducePath(Node base, Rule rule, Object[] values) {
+            Object value = reduceRule(rule, values);
+            if (rule == targetRule) {
+                if (accepted) {
+                    addAlternative(result, value);
+                } else {
+                    accept(value);
+                }
+                return;
+            }
+            int state = actionTable.getNextState(base.state, ruleTargetIds[rule.getId()]);
+            Node node = nodesByState[state];
+            if (node == null) {
+                addNode(new Node(state, base, value));
+            } else {
+                int link = node.indexOfLink(base);
+                if (link >= 0) {
+                    //the same symbol, over the same tokens
+                    addAlternative(node.getValue(link), value);
+                } else {
+                    node.addLink(base, value);
+                    onNewLink(node);
+                }
+            }
+            onReduced();
+        }
+
+        private void addAlternative(Object value, Object alternative) {
+            if (alternatives != null && reducer == null) {
+                alternatives.computeIfAbsent((AstNode) value, k -> new ArrayList<>(Collections.singletonList(k))).add((AstNode) alternative);
+            }
+        }
+
+        private void accept(Object value) {
+            accepted = true;
+            result = value;
+        }
+
+        /**
+         * the reduction may have changed the way the lookahead is seen (see the 'typedef' hack of the C grammar)
+         */
+        private void onReduced() {
+            Token newToken = lexerStream.getTokenListener().onNewToken(token);
+            if (newToken != token) {
+                setToken(newToken);
+            }
+        }
+
+        /**
+         * @param values the values of the clause of the rule
+         * @return the value of the target
+         */
+        private Object reduceRule(Rule rule, Object[] values) {
+            if (getLog().isTraceEnabled()) {
+                getLog().trace("      - reducing rule : " + rule);
+            }
+            Object value;
+            if (reducer == null) {
+                AstNode astNode = astNodeFactory.newNonLeafNode(rule);
+                List<AstNode> children = astNode.getChildren();
+                for (Object child : values) {
+                    if (!LRParser.isEofNode((AstNode) child)) {
+                        children.add((AstNode) child);
+                    }
+                }
+                value = astNode;
+            } else {
+                int to = values.length;
+                if (to == 1 && rule.getClause()[0] == Lexemes.empty()) {
+                    to = 0;
+                } else if (to > 0 && values[to - 1] instanceof Token && LRParser.isEof((Token) values[to - 1])) {
+                    to--;
+                }
+                value = reducer.reduce(rule, Arrays.asList(values).subList(0, to));
+            }
+
+            if (((BaseRule) rule).getAction() != null || parserListener != null) {
+                ParsingContextImpl parsingContext = new ParsingContextImpl(GLRParser.this, lexerStream, value);
+                if (((BaseRule) rule).getAction() != null) {
+                    ((BaseRule) rule).getAction().accept(parsingContext);
+                }
+                if (parserListener != null) {
+                    parserListener.onReduce(rule, parsingContext);
+                }
+            }
+            return value;
+        }
+    }
+
+    public Grammar getGrammar() {
+        return grammar;
+    }
+
+    @Override
+    public Lexer getLexer() {
+        if (defaultLexer == null) {
+            defaultLexer = Lexer.forLexemes(getGrammar().getTerminals());
+        }
+        return defaultLexer;
+    }
+
+    @Override
+    public void setLexer(Lexer lexer) {
+        checkNotCompiled();
+        this.defaultLexer = lexer;
+    }
+
+    @Override
+    public ParserListener getParserListener() {
+        return parserListener;
+    }
+
+    @Override
+    public void setParserListener(ParserListener parserListener) {
+        checkNotCompiled();
+        this.parserListener = parserListener;
+    }
+
+    @Override
+    public AstNodeFactory getAstNodeFactory() {
+        return astNodeFactory;
+    }
+
+    @Override
+    public void setAstNodeFactory(AstNodeFactory astNodeFactory) {
+        checkNotCompiled();
+        this.astNodeFactory = astNodeFactory;
+    }
+}
@@ -3,6 +3,7 @@ package net.jr.parser.impl;
 import net.jr.common.Symbol;
 
 import java.io.StringWriter;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -49,6 +50,13 @@ public class ItemSet {
         }
     }
 
+    /**
+     * @return the item sets that are reached from this one, by symbol
+     */
+    public Map<Symbol, ItemSet> getTransitions() {
+        return Collections.unmodifiableMap(transitions);
+    }
+
     public ItemSet getTransitionFor(Symbol symbol) {
         return transitions.get(symbol);
     }
@@ -0,0 +1,426 @@
+package net.jr.parser.impl;
+
+import net.jr.common.Symbol;
+import net.jr.lexer.Lexemes;
+import net.jr.parser.Grammar;
+import net.jr.parser.Rule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Builds LR(1) tables : canonical ones, or ones where the states are merged with the 'weak compatibility' test of Pager.
+ * <p>
+ * Each LR(1) state is an LR(0) item set (its <i>core</i>) and the lookaheads of the items of its kernel. The closure of the
+ * cores is only computed once : for each item of a core, it is known which lookaheads it gets from the FIRST sets of the
+ * clauses (the <i>spontaneous</i> lookaheads) and which items of the kernel pass their lookaheads to it, so that the
+ * lookaheads of all the items of a state are just a few unions.
+ * </p>
+ * <p>
+ * Two states that have the same core and the lookaheads L and L' are weakly compatible if, for all the items i and j of the
+ * kernel, either (L<sub>i</sub> ∩ L'<sub>j</sub>) and (L'<sub>i</sub> ∩ L<sub>j</sub>) are empty, or L<sub>i</sub> ∩ L<sub>j</sub>
+ * is not empty, or L'<sub>i</sub> ∩ L'<sub>j</sub> is not empty : merging such states cannot create a reduce/reduce conflict
+ * that the canonical table does not have. When a state grows because of a merge, its successors are computed again.
+ * </p>
+ * <p>
+ * See Pager, D. : 'A Practical General Method for Constructing LR(k) Parsers', Acta Informatica 7, 1977.
+ * </p>
+ */
+class LR1Builder extends ActionTable.LALR1Builder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LR1Builder.class);
+
+    private static final Logger getLog() {
+        return LOGGER;
+    }
+
+    private final boolean merge;
+
+    private Map<Symbol, Integer> terminalIds;
+
+    private FirstSets firstSets;
+
+    /**
+     * FIRST(β) of the items A → α X • β, by item
+     */
+    private Map<Item, BitSet> firstOfRest;
+
+    /**
+     * @param merge true to merge the states that are weakly compatible, false for the canonical LR(1) table
+     */
+    LR1Builder(boolean merge) {
+        this.merge = merge;
+    }
+
+    @Override
+    public ActionTable build(Grammar grammar) {
+        Rule startRule = getStartRule(grammar);
+
+        List<Symbol> terminals = new ArrayList<>(grammar.getTerminals());
+        terminals.add(Lexemes.eof());
+        terminalIds = new HashMap<>();
+        for (Symbol terminal : terminals) {
+            terminalIds.putIfAbsent(terminal, terminalIds.size());
+        }
+        firstSets = grammar.getFirstSets();
+        firstOfRest = new HashMap<>();
+
+        //the cores, by id
+        Set<ItemSet> itemSets = getAllItemSets(grammar);
+        ItemSet[] itemSetsById = new ItemSet[itemSets.size()];
+        for (ItemSet itemSet : itemSets) {
+            itemSetsById[itemSet.getId()] = itemSet;
+        }
+        Map<ItemSet, Core> cores = new HashMap<>();
+        for (ItemSet itemSet : itemSetsById) {
+            cores.put(itemSet, new Core(itemSet));
+        }
+        for (Core core : cores.values()) {
+            core.initializeGotos(cores);
+        }
+
+        List<State> states = computeStates(cores.get(itemSetsById[0]));
+        if (getLog().isTraceEnabled()) {
+            getLog().trace(String.format("%d LR(0) item sets, %d LR(1) states", itemSetsById.length, states.size()));
+        }
+
+        Map<Integer, Map<Symbol, Integer>> translationTable = new TreeMap<>();
+        Map<Integer, Map<Rule, Set<Symbol>>> lookaheads = new TreeMap<>();
+        List<Integer> acceptingStates = new ArrayList<>();
+        Item allParsed = new Item(startRule, startRule.getClause().length);
+        for (State state : states) {
+            Map<Symbol, Integer> row = new HashMap<>();
+            for (int g = 0; g < state.core.gotos.size(); g++) {
+                row.put(state.core.gotos.get(g).symbol, state.successors[g].id);
+            }
+            translationTable.put(state.id, row);
+
+            Map<Rule, Set<Symbol>> reductions = new TreeMap<>(Comparator.comparing(Rule::getId));
+            for (int k = 0; k < state.core.kernelSize; k++) {
+                Item item = state.core.items[k];
+                if (item.getExpectedSymbol() == null) {
+                    Set<Symbol> set = reductions.computeIfAbsent(item.getRule(), r -> new LinkedHashSet<>());
+                    BitSet la = state.lookaheads[k];
+                    for (int t = la.nextSetBit(0); t >= 0; t = la.nextSetBit(t + 1)) {
+                        set.add(terminals.get(t));
+                    }
+                    if (item.equals(allParsed)) {
+                        acceptingStates.add(state.id);
+                    }
+                }
+            }
+            if (!reductions.isEmpty()) {
+                lookaheads.put(state.id, reductions);
+            }
+        }
+
+        return makeActionTable(grammar, translationTable, lookaheads, acceptingStates);
+    }
+
+    /**
+     * Computes all the LR(1) states, from the initial one.
+     *
+     * @return the states that are reachable from the initial state, numbered in the order they are reached
+     */
+    private List<State> computeStates(Core initialCore) {
+        Map<Core, List<State>> statesByCore = new HashMap<>();
+        Map<Core, Map<List<BitSet>, State>> canonicalStates = new HashMap<>();
+        Deque<State> queue = new ArrayDeque<>();
+
+        BitSet eof = new BitSet();
+        eof.set(terminalIds.get(Lexemes.eof()));
+        State initialState = new State(initialCore, new BitSet[]{eof});
+        statesByCore.computeIfAbsent(initialCore, k -> new ArrayList<>()).add(initialState);
+        canonicalStates.computeIfAbsent(initialCore, k -> new HashMap<>()).put(Arrays.asList(initialState.lookaheads), initialState);
+        queue.add(initialState);
+        initialState.queued = true;
+
+        while (!queue.isEmpty()) {
+            State state = queue.poll();
+            state.queued = false;
+            Core core = state.core;
+            BitSet[] itemLookaheads = core.getLookaheads(state.lookaheads);
+            for (int g = 0; g < core.gotos.size(); g++) {
+                Goto go = core.gotos.get(g);
+                BitSet[] kernelLookaheads = new BitSet[go.target.kernelSize];
+                for (int k = 0; k < kernelLookaheads.length; k++) {
+                    kernelLookaheads[k] = new BitSet();
+                    for (int source : go.sources[k]) {
+                        kernelLookaheads[k].or(itemLookaheads[source]);
+                    }
+                }
+
+                State successor;
+                if (merge) {
+                    successor = null;
+                    List<State> candidates = statesByCore.computeIfAbsent(go.target, k -> new ArrayList<>());
+                    for (State candidate : candidates) {
+                        if (isWeaklyCompatible(candidate.lookaheads, kernelLookaheads)) {
+                            successor = candidate;
+                            break;
+                        }
+                    }
+                    if (successor == null) {
+                        successor = new State(go.target, kernelLookaheads);
+                        candidates.add(successor);
+                        queue.add(successor);
+                        successor.queued = true;
+                    } else if (successor.addLookaheads(kernelLookaheads) && !successor.queued) {
+                        //the successors of this state have to be computed again
+                        queue.add(successor);
+                        successor.queued = true;
+                    }
+                } else {
+                    Map<List<BitSet>, State> candidates = canonicalStates.computeIfAbsent(go.target, k -> new HashMap<>());
+                    successor = candidates.get(Arrays.asList(kernelLookaheads));
+                    if (successor == null) {
+                        successor = new State(go.target, kernelLookaheads);
+                        candidates.put(Arrays.asList(kernelLookaheads), successor);
+                        queue.add(successor);
+                        successor.queued = true;
+                    }
+                }
+                state.successors[g] = successor;
+            }
+        }
+
+        //when the lookaheads of a state grow, its successors may change : some states may not be reachable anymore
+        List<State> states = new ArrayList<>();
+        initialState.id = 0;
+        states.add(initialState);
+        for (int i = 0; i < states.size(); i++) {
+            for (State successor : states.get(i).successors) {
+                if (successor.id == -1) {
+                    successor.id = states.size();
+                    states.add(successor);
+                }
+            }
+        }
+        return states;
+    }
+
+    /**
+     * The weak compatibility test of Pager.
+     *
+     * @param a the lookaheads of the kernel of a state
+     * @param b the lookaheads of the kernel of another state, with the same core
+     * @return true if the states may be merged
+     */
+    static boolean isWeaklyCompatible(BitSet[] a, BitSet[] b) {
+        for (int i = 0; i < a.length; i++) {
+            for (int j = i + 1; j < a.length; j++) {
+                if ((a[i].intersects(b[j]) || b[i].intersects(a[j])) && !a[i].intersects(a[j]) && !b[i].intersects(b[j])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return FIRST(β) for an item A → α X • β, the terminals of FIRST(β) being given by their ids
+     */
+    private BitSet getFirstOfRest(Item item) {
+        BitSet set = firstOfRest.get(item);
+        if (set == null) {
+            Symbol[] clause = item.getRule().getClause();
+            set = new BitSet();
+            for (Symbol terminal : firstSets.getFirst(Arrays.copyOfRange(clause, item.getPointer(), clause.length))) {
+                set.set(terminalIds.get(terminal));
+            }
+            firstOfRest.put(item, set);
+        }
+        return set;
+    }
+
+    private boolean isRestNullable(Item item) {
+        Symbol[] clause = item.getRule().getClause();
+        return firstSets.isNullable(Arrays.copyOfRange(clause, item.getPointer(), clause.length));
+    }
+
+    /**
+     * An LR(0) item set, with what is needed to compute the lookaheads of its items from the lookaheads of its kernel.
+     */
+    private class Core {
+
+        private final ItemSet itemSet;
+
+        /**
+         * the items of the kernel come first
+         */
+        private final Item[] items;
+
+        private final int kernelSize;
+
+        private final BitSet[] spontaneous;
+
+        /**
+         * for each item, the items of the kernel whose lookaheads are also lookaheads of this item
+         */
+        private final BitSet[] fromKernel;
+
+        private final Map<Item, Integer> indexes = new HashMap<>();
+
+        private final List<Goto> gotos = new ArrayList<>();
+
+        Core(ItemSet itemSet) {
+            this.itemSet = itemSet;
+            kernelSize = itemSet.getKernel().size();
+            items = new Item[kernelSize + itemSet.getClosure().size()];
+            int n = 0;
+            for (Item item : itemSet.getKernel()) {
+                indexes.put(item, n);
+                items[n++] = item;
+            }
+            for (Item item : itemSet.getClosure()) {
+                indexes.put(item, n);
+                items[n++] = item;
+            }
+
+            spontaneous = new BitSet[items.length];
+            fromKernel = new BitSet[items.length];
+            for (int i = 0; i < items.length; i++) {
+                spontaneous[i] = new BitSet();
+                fromKernel[i] = new BitSet(kernelSize);
+                if (i < kernelSize) {
+                    fromKernel[i].set(i);
+                }
+            }
+
+            //the items B → • γ, by B
+            Map<Symbol, List<Integer>> itemsByTarget = new HashMap<>();
+            for (int i = 0; i < items.length; i++) {
+                if (items[i].getPointer() == 0) {
+                    itemsByTarget.computeIfAbsent(items[i].getRule().getTarget(), k -> new ArrayList<>()).add(i);
+                }
+            }
+
+            //A → α • B β gives FIRST(β) to the items B → • γ, and also its own lookaheads when β is nullable
+            List<int[]> propagations = new ArrayList<>();
+            for (int i = 0; i < items.length; i++) {
+                Symbol expected = items[i].getExpectedSymbol();
+                if (expected == null || expected.isTerminal()) {
+                    continue;
+                }
+                Item rest = items[i].shift();
+                BitSet first = getFirstOfRest(rest);
+                boolean nullable = isRestNullable(rest);
+                for (int j : itemsByTarget.getOrDefault(expected, Collections.emptyList())) {
+                    spontaneous[j].or(first);
+                    if (nullable) {
+                        propagations.add(new int[]{i, j});
+                    }
+                }
+            }
+            boolean changed = !propagations.isEmpty();
+            while (changed) {
+                changed = false;
+                for (int[] propagation : propagations) {
+                    changed |= addAll(spontaneous[propagation[1]], spontaneous[propagation[0]]);
+                    changed |= addAll(fromKernel[propagation[1]], fromKernel[propagation[0]]);
+                }
+            }
+        }
+
+        /**
+         * computes the sources of the kernel items of the successors of this core.
+         */
+        void initializeGotos(Map<ItemSet, Core> cores) {
+            List<Map.Entry<Symbol, ItemSet>> transitions = new ArrayList<>(itemSet.getTransitions().entrySet());
+            transitions.sort(Comparator.comparing(e -> e.getValue().getId()));
+            for (Map.Entry<Symbol, ItemSet> transition : transitions) {
+                Core target = cores.get(transition.getValue());
+                List<List<Integer>> sources = new ArrayList<>(target.kernelSize);
+                for (int k = 0; k < target.kernelSize; k++) {
+                    sources.add(new ArrayList<>());
+                }
+                for (int i = 0; i < items.length; i++) {
+                    if (transition.getKey().equals(items[i].getExpectedSymbol())) {
+                        sources.get(target.indexes.get(items[i].shift())).add(i);
+                    }
+                }
+                int[][] array = new int[target.kernelSize][];
+                for (int k = 0; k < target.kernelSize; k++) {
+                    array[k] = sources.get(k).stream().mapToInt(Integer::intValue).toArray();
+                }
+                gotos.add(new Goto(transition.getKey(), target, array));
+            }
+        }
+
+        /**
+         * @param kernelLookaheads the lookaheads of the items of the kernel
+         * @return the lookaheads of all the items
+         */
+        BitSet[] getLookaheads(BitSet[] kernelLookaheads) {
+            BitSet[] lookaheads = new BitSet[items.length];
+            for (int i = 0; i < items.length; i++) {
+                lookaheads[i] = (BitSet) spontaneous[i].clone();
+                for (int k = fromKernel[i].nextSetBit(0); k >= 0; k = fromKernel[i].nextSetBit(k + 1)) {
+                    lookaheads[i].or(kernelLookaheads[k]);
+                }
+            }
+            return lookaheads;
+        }
+    }
+
+    /**
+     * @return true if 'to' has changed
+     */
+    private static boolean addAll(BitSet to, BitSet from) {
+        int cardinality = to.cardinality();
+        to.or(from);
+        return to.cardinality() != cardinality;
+    }
+
+    /**
+     * A transition of a core
+     */
+    private static class Goto {
+
+        private final Symbol symbol;
+
+        private final Core target;
+
+        /**
+         * for each item of the kernel of the target, the items of the source that are shifted to it
+         */
+        private final int[][] sources;
+
+        Goto(Symbol symbol, Core target, int[][] sources) {
+            this.symbol = symbol;
+            this.target = target;
+            this.sources = sources;
+        }
+    }
+
+    private static class State {
+
+        private final Core core;
+
+        private final BitSet[] lookaheads;
+
+        private final State[] successors;
+
+        private int id = -1;
+
+        private boolean queued = false;
+
+        State(Core core, BitSet[] lookaheads) {
+            this.core = core;
+            this.lookaheads = lookaheads;
+            this.successors = new State[core.gotos.size()];
+        }
+
+        /**
+         * @return true if the lookaheads have grown
+         */
+        boolean addLookaheads(BitSet[] kernelLookaheads) {
+            boolean changed = false;
+            for (int k = 0; k < lookaheads.length; k++) {
+                changed |= addAll(lookaheads[k], kernelLookaheads[k]);
+            }
+            return changed;
+        }
+    }
+}
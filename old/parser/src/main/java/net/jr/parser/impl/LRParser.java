@@ -4,18 +4,27 @@ import net.jr.common.Symbol;
 import net.jr.lexer.Lexemes;
 import net.jr.lexer.Lexer;
 import net.jr.lexer.LexerStream;
+import net.jr.lexer.LineIndex;
+import net.jr.lexer.TextEdit;
 import net.jr.lexer.Token;
+import net.jr.lexer.TokenListener;
 import net.jr.parser.*;
 import net.jr.parser.ast.AstNode;
 import net.jr.parser.ast.AstNodeFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.Reader;
+import java.nio.file.Path;
 import java.util.*;
 
 /**
  * Implementation of the LR parser algorithm.
+ * <p>
+ * The state of a parse only lives in the stack of the parse method, so a {@link #compile() compiled} parser
+ * can be used by several threads at the same time.
+ * </p>
  */
 public class LRParser implements Parser {
 
@@ -25,6 +34,22 @@ public class LRParser implements Parser {
     private ActionTable actionTable;
     private AstNodeFactory astNodeFactory = new DefaultAstNodeFactory();
     private ParserListener parserListener;
+    private final boolean compiled;
+
+    /**
+     * the rule that is reduced when the input is accepted
+     */
+    private final Rule targetRule;
+
+    /**
+     * the rules of the grammar, indexed by their ids
+     */
+    private final Rule[] rules;
+
+    /**
+     * for each rule, the id of its target in the action table
+     */
+    private final int[] ruleTargetIds;
 
     /**
      * @param grammar     target grammar
@@ -38,137 +63,412 @@ public class LRParser implements Parser {
         this.grammar = grammar;
         this.defaultLexer = lexer;
         this.actionTable = actionTable;
+        this.compiled = false;
+        this.targetRule = grammar.getRulesTargeting(grammar.getTargetSymbol()).iterator().next();
+        int maxId = 0;
+        for (Rule rule : grammar.getRules()) {
+            maxId = Math.max(maxId, rule.getId());
+        }
+        this.rules = new Rule[maxId + 1];
+        this.ruleTargetIds = new int[maxId + 1];
+        for (Rule rule : grammar.getRules()) {
+            rules[rule.getId()] = rule;
+            ruleTargetIds[rule.getId()] = actionTable.getSymbolId(rule.getTarget());
+        }
+    }
+
+    private LRParser(LRParser parser) {
+        this.grammar = parser.grammar;
+        this.defaultLexer = parser.getLexer().compile();
+        this.actionTable = parser.actionTable;
+        this.astNodeFactory = parser.astNodeFactory;
+        this.parserListener = parser.parserListener;
+        this.compiled = true;
+        this.targetRule = parser.targetRule;
+        this.rules = parser.rules;
+        this.ruleTargetIds = parser.ruleTargetIds;
+    }
+
+    @Override
+    public Parser compile() {
+        return compiled ? this : new LRParser(this);
+    }
+
+    private void checkNotCompiled() {
+        if (compiled) {
+            throw new IllegalStateException("This parser is compiled, and cannot be modified");
+        }
     }
 
     private static Logger getLog() {
         return LOGGER;
     }
 
-    private static boolean isEofNode(AstNode astNode) {
+    static boolean isEofNode(AstNode astNode) {
         Token token = astNode.asToken();
-        return token != null && token.getTokenType().equals(Lexemes.eof());
+        return token != null && isEof(token);
+    }
+
+    static boolean isEof(Token token) {
+        return token.getTokenType().equals(Lexemes.eof());
     }
 
     public AstNode parse(Reader reader) {
+        return parse(reader, ParseOptions.defaults());
+    }
+
+    @Override
+    public AstNode parse(Path path) throws IOException {
+        return parse(path, ParseOptions.defaults());
+    }
+
+    @Override
+    public AstNode parse(Reader reader, ParseOptions options) {
+        return (AstNode) parse(iterator(reader, options), options, null);
+    }
+
+    @Override
+    public AstNode parse(Path path, ParseOptions options) throws IOException {
+        return (AstNode) parse(iterator(path, options), options, null);
+    }
+
+    @Override
+    public Object parse(Reader reader, Reducer reducer, ParseOptions options) {
+        if (reducer == null) {
+            throw new IllegalArgumentException("reducer");
+        }
+        return parse(getLexer().streamingIterator(reader, options.getTokenListener()), options, reducer);
+    }
+
+    @Override
+    public Object parse(Path path, Reducer reducer, ParseOptions options) throws IOException {
+        if (reducer == null) {
+            throw new IllegalArgumentException("reducer");
+        }
+        return parse(iterator(path, options), options, reducer);
+    }
+
+    /**
+     * sugar for reparse(previous, text, edits, ParseOptions.defaults())
+     */
+    public AstNode reparse(AstNode previous, CharSequence text, List<TextEdit> edits) {
+        return reparse(previous, text, edits, ParseOptions.defaults());
+    }
+
+    /**
+     * Parses a text again after it has been edited, reusing the tree of the previous parse.
+     * <p>
+     * Only the tokens around the edits are lexed again, until the new tokens are the same as the old ones. The parser starts from the
+     * stack it had before these tokens, and then shifts the old subtrees that follow as a whole, as long as it meets them in the
+     * state they were parsed from (see {@link ReparseInput}), so the work depends on the size of the edits rather than on the size
+     * of the text.
+     * </p>
+     * <p>
+     * (Implementation note) : a successful reparse consumes the previous tree, that must not be used afterwards, as its nodes
+     * are part of the new one. The line index of the previous text is patched with the edits, and the tokens that follow them
+     * are moved the next time they are used (see {@link Token#getOffset()}). When the new text cannot be parsed, the previous
+     * tree and its line index are left unchanged. The actions of the rules and the {@link ParserListener} are
+     * only called for the nodes that are built again, and the token listener of the lexer does not see the old tokens : grammars
+     * whose actions feed the lexer (like the type names of C) should be parsed from scratch.
+     * </p>
+     *
+     * @param previous the tree of the previous parse of the text, built by this parser (with a {@link net.jr.parser.ast.AstNodeFactory}
+     *                 whose nodes can be the children of new nodes)
+     * @param text     the new text
+     * @param edits    the changes since the previous parse, in the order they were made
+     * @param options  the options of this parse
+     * @return the tree of the new text
+     */
+    public AstNode reparse(AstNode previous, CharSequence text, List<TextEdit> edits, ParseOptions options) {
+        if (edits.isEmpty()) {
+            return previous;
+        }
+        TextEdit edit = TextEdit.merge(edits);
+        ReparseInput input = new ReparseInput(actionTable, previous, edit);
+        LineIndex lineIndex = input.getLineIndex();
+        lineIndex.beginEdit(edit, text);
+        AstNode root = null;
+        try {
+            TokenListener tokenListener = options.getTokenListener();
+            LexerStream lexerStream = tokenListener == null ? getLexer().iterator(text, lineIndex, input.getRelexOffset())
+                    : getLexer().iterator(text, lineIndex, input.getRelexOffset(), tokenListener);
+            input.relex(lexerStream, text, lineIndex);
+            root = new ParseRun(lexerStream, options, null).reparse(input);
+        } finally {
+            //the old tokens are moved, or the line index is given back
+            if (root != null) {
+                lineIndex.commitEdit();
+            } else {
+                lineIndex.cancelEdit();
+            }
+        }
+        if (getLog().isDebugEnabled()) {
+            getLog().debug(String.format("reparse : %d tokens lexed again, %d subtrees reused", input.getRelexedCount(), input.getReusedCount()));
+        }
+        return root;
+    }
 
-        final LexerStream lexerStream = getLexer().iterator(reader);
-        Stack<Context> stack = new Stack<>();
+    private LexerStream iterator(Reader reader, ParseOptions options) {
+        TokenListener tokenListener = options.getTokenListener();
+        return tokenListener == null ? getLexer().iterator(reader) : getLexer().iterator(reader, tokenListener);
+    }
 
-        //start with the initial state
-        Rule targetRule = grammar.getRulesTargeting(grammar.getTargetSymbol()).iterator().next();
-        stack.push(new Context(astNodeFactory.newNonLeafNode(targetRule), 0));
+    private LexerStream iterator(Path path, ParseOptions options) throws IOException {
+        TokenListener tokenListener = options.getTokenListener();
+        if (options.getCharset() != null) {
+            return getLexer().iterator(path, options.getCharset(), tokenListener);
+        }
+        return tokenListener == null ? getLexer().iterator(path) : getLexer().iterator(path, tokenListener);
+    }
+
+    /**
+     * @param reducer computes the values of the reductions, or null to build a tree
+     * @return the value of the target rule (its node when a tree is built)
+     */
+    private Object parse(final LexerStream lexerStream, ParseOptions options, Reducer reducer) {
+        ParseRun run = new ParseRun(lexerStream, options, reducer);
+        ParseStack stack = run.stack;
+
+        //the lookahead, when it has been read but not shifted yet
+        Token token = null;
 
         //repeatUntilSize until done
         while (true) {
 
-            Context currentContext = stack.peek();
-            int currentState = currentContext.getState();
-            Token token = lexerStream.next();
+            int currentState = stack.peekState();
 
-            if (getLog().isTraceEnabled()) {
-                getLog().trace("-> Current state : " + currentState);
-                String msg = "   Input token : " + token.getTokenType();
-                String txt = token.getText();
-                if (txt != null) {
-                    msg += " (matched text : '" + token.getText() + "' )";
-                }
+            //in a consistent state, reduce without looking at the next token
+            int decision = actionTable.getConsistentReduction(currentState);
+            boolean emptyShift = false;
 
-                getLog().trace(msg);
+            if (decision == ActionTable.NO_ACTION) {
+                if (token == null) {
+                    token = lexerStream.next();
+                }
+                decision = actionTable.getActionCode(currentState, actionTable.getSymbolId(token.getTokenType()));
+                if (decision == ActionTable.NO_ACTION) {
+                    //if ε is part of the expected symbols
+                    decision = actionTable.getExplicitActionCode(currentState, actionTable.getEmptySymbolId());
+                    emptyShift = decision != ActionTable.NO_ACTION;
+                }
             }
 
-            Action decision = actionTable.getAction(currentState, token.getTokenType());
+            ActionType actionType = decision == ActionTable.NO_ACTION ? ActionType.Fail : ActionTable.getActionType(decision);
+            int actionParameter = ActionTable.getActionParameter(decision);
 
-            if (decision == null) {
-                Set<Symbol> expected = actionTable.getExpectedTerminals(currentState);
-                //if ε is part of the expected symbols
-                if (expected.contains(Lexemes.empty())) {
-                    decision = actionTable.getAction(currentState, Lexemes.empty());
-                    lexerStream.pushback(token);
-                } else {
-                    decision = new Action(ActionType.Fail, 0);
+            if (getLog().isTraceEnabled()) {
+                getLog().trace("-> Current state : " + currentState);
+                if (token != null) {
+                    String msg = "   Input token : " + token.getTokenType();
+                    String txt = token.getText();
+                    if (txt != null) {
+                        msg += " (matched text : '" + token.getText() + "' )";
+                    }
+                    getLog().trace(msg);
                 }
+                getLog().trace(String.format("   Decision : %s %d", actionType.name(), actionParameter));
             }
 
-            getLog().trace(String.format("   Decision : %s %d", decision.getActionType().name(), decision.getActionParameter()));
-
-            switch (decision.getActionType()) {
+            switch (actionType) {
                 case Accept:
-                    accept(stack, lexerStream);
-                    return stack.pop().getAstNode();
+                    return run.reduceRule(targetRule);
                 case Fail:
-                    fail(token, lexerStream, currentContext);
+                    run.fail(token);
+                    token = null;
                     break;
                 case Shift:
-                    shift(token, stack, decision.getActionParameter());
+                    run.shift(token, actionParameter, emptyShift);
+                    if (!emptyShift) {
+                        token = null;
+                    }
                     break;
                 case Reduce:
-                    reduce(stack, lexerStream, decision.getActionParameter());
-                    lexerStream.pushback(token);
+                    run.reduce(actionParameter);
+                    if (token != null) {
+                        //the reduction may have changed the way the lookahead is seen (see the 'typedef' hack of the C grammar)
+                        token = lexerStream.getTokenListener().onNewToken(token);
+                    }
                     break;
                 default:
-                    throw new IllegalStateException(String.format("Illegal action type '%s' !", decision.getActionType().name()));
+                    throw new IllegalStateException(String.format("Illegal action type '%s' !", actionType.name()));
             }
         }
     }
 
-    private void fail(Token token, LexerStream lexerStream, Context context) {
-        ParseError parseError = new ParseError(token, actionTable.getExpectedTerminals(context.getState()));
-        if (parserListener != null) {
-            parserListener.onParseError(parseError, new ParsingContextImpl(this, lexerStream, context.getAstNode()));
-        } else {
-            throw parseError;
+    /**
+     * Everything that only lives during one parse.
+     */
+    private final class ParseRun {
+
+        private final LexerStream lexerStream;
+
+        private final ParserListener parserListener;
+
+        private final AstNodeFactory astNodeFactory;
+
+        private final Reducer reducer;
+
+        private final ParseStack stack = new ParseStack();
+
+        ParseRun(LexerStream lexerStream, ParseOptions options, Reducer reducer) {
+            this.lexerStream = lexerStream;
+            this.parserListener = options.getParserListener() == null ? LRParser.this.parserListener : options.getParserListener();
+            this.astNodeFactory = options.getAstNodeFactory() == null ? LRParser.this.astNodeFactory : options.getAstNodeFactory();
+            this.reducer = reducer;
+            //start with the initial state
+            stack.push(0, reducer == null ? astNodeFactory.newNonLeafNode(targetRule) : null);
         }
-    }
 
-    private void accept(Stack<Context> stack, LexerStream lexerStream) {
-        Rule targetRule = grammar.getRulesTargeting(grammar.getTargetSymbol()).iterator().next();
-        AstNode node = makeNode(stack, lexerStream, targetRule);
-        stack.push(new Context(node));
-    }
+        /**
+         * Same as {@link LRParser#parse(LexerStream, ParseOptions, Reducer)}, where the input is made of tokens and old subtrees.
+         */
+        AstNode reparse(ReparseInput input) {
+            for (int i = 0; i < input.getLeftContextSize(); i++) {
+                stack.push(input.getLeftState(i), input.getLeftNode(i));
+            }
+            while (true) {
+                int currentState = stack.peekState();
+                int decision = actionTable.getConsistentReduction(currentState);
+                boolean emptyShift = false;
+                Token token = null;
+
+                if (decision == ActionTable.NO_ACTION) {
+                    AstNode subtree = input.peekSubtree();
+                    if (subtree != null) {
+                        if (input.peekLeftState() == currentState) {
+                            //it was parsed from the same state : the same actions would give the same subtree
+                            stack.push(actionTable.getNextState(currentState, subtree.getSymbol()), subtree);
+                            input.pop();
+                            input.onReused();
+                        } else {
+                            input.breakDown();
+                        }
+                        continue;
+                    }
+                    token = input.peekToken();
+                    decision = actionTable.getActionCode(currentState, actionTable.getSymbolId(token.getTokenType()));
+                    if (decision == ActionTable.NO_ACTION) {
+                        decision = actionTable.getExplicitActionCode(currentState, actionTable.getEmptySymbolId());
+                        emptyShift = decision != ActionTable.NO_ACTION;
+                    }
+                }
 
-    /**
-     * The new state is added to the stack and becomes the current state
-     */
-    private void shift(Token token, final Stack<Context> stack, final int nextState) {
-        //add a node that represents the terminal
-        stack.push(new Context(astNodeFactory.newLeafNode(token), nextState));
-    }
-
-    private AstNode makeNode(Stack<Context> stack, final LexerStream lexerStream, Rule rule) {
-        // for each symbol on the left side of the rule, a state is removed from the stack
-        getLog().trace("      - reducing rule : " + rule);
-        AstNode astNode = astNodeFactory.newNonLeafNode(rule);
-        List<AstNode> children = astNode.getChildren();
-        for (int i = 0; i < rule.getClause().length; i++) {
-            AstNode popped = stack.pop().getAstNode();
-            if (!isEofNode(popped)) {
-                children.add(popped);
+                ActionType actionType = decision == ActionTable.NO_ACTION ? ActionType.Fail : ActionTable.getActionType(decision);
+                int actionParameter = ActionTable.getActionParameter(decision);
+                switch (actionType) {
+                    case Accept:
+                        return (AstNode) reduceRule(targetRule);
+                    case Fail:
+                        fail(token);
+                        if (isEof(token)) {
+                            return null;
+                        }
+                        input.pop();
+                        break;
+                    case Shift:
+                        AstNode leaf = emptyShift ? null : input.peekLeaf();
+                        stack.push(actionParameter, leaf == null ? astNodeFactory.newLeafNode(token) : leaf);
+                        if (!emptyShift) {
+                            input.pop();
+                        }
+                        break;
+                    case Reduce:
+                        reduce(actionParameter);
+                        if (input.isTokenNext()) {
+                            //the reduction may have changed the way the lookahead is seen
+                            Token next = lexerStream.getTokenListener().onNewToken(input.peekToken());
+                            if (next == null) {
+                                //discarded : the next token is read instead, as in parse()
+                                input.pop();
+                            } else {
+                                input.setToken(next);
+                            }
+                        }
+                        break;
+                    default:
+                        throw new IllegalStateException(String.format("Illegal action type '%s' !", actionType.name()));
+                }
             }
         }
 
-        Collections.reverse(children);
-
-        ParsingContextImpl parsingContext = new ParsingContextImpl(this, lexerStream, astNode);
-        if (((BaseRule) rule).getAction() != null) {
-            ((BaseRule) rule).getAction().accept(parsingContext);
+        void fail(Token token) {
+            ParseError parseError = new ParseError(token, actionTable.getExpectedTerminals(stack.peekState()));
+            if (parserListener != null) {
+                parserListener.onParseError(parseError, new ParsingContextImpl(LRParser.this, lexerStream, stack.peekValue()));
+            } else {
+                throw parseError;
+            }
         }
-        if (parserListener != null) {
-            parserListener.onReduce(rule, parsingContext);
+
+        /**
+         * The new state is added to the stack and becomes the current state
+         */
+        void shift(Token token, final int nextState, boolean emptyShift) {
+            if (reducer == null) {
+                //add a node that represents the terminal
+                stack.push(nextState, astNodeFactory.newLeafNode(token));
+            } else {
+                stack.push(nextState, emptyShift ? null : token);
+            }
         }
 
-        return astNode;
-    }
+        /**
+         * Replaces the values of the clause of a rule (on the top of the stack) by the value of its target.
+         *
+         * @return the value of the target
+         */
+        Object reduceRule(Rule rule) {
+            // for each symbol on the left side of the rule, a state is removed from the stack
+            if (getLog().isTraceEnabled()) {
+                getLog().trace("      - reducing rule : " + rule);
+            }
+            int length = rule.getClause().length;
+            int from = stack.size() - length;
+            Object value;
+            if (reducer == null) {
+                AstNode astNode = astNodeFactory.newNonLeafNode(rule);
+                List<AstNode> children = astNode.getChildren();
+                Object[] values = stack.values;
+                for (int i = from; i < stack.size(); i++) {
+                    AstNode child = (AstNode) values[i];
+                    if (!isEofNode(child)) {
+                        children.add(child);
+                    }
+                }
+                value = astNode;
+            } else {
+                int to = stack.size();
+                if (length == 1 && rule.getClause()[0] == Lexemes.empty()) {
+                    to = from;
+                } else if (length > 0 && stack.values[to - 1] instanceof Token && isEof((Token) stack.values[to - 1])) {
+                    to--;
+                }
+                value = reducer.reduce(rule, stack.slice(from, to));
+            }
+            stack.pop(length);
+
+            if (((BaseRule) rule).getAction() != null || parserListener != null) {
+                ParsingContextImpl parsingContext = new ParsingContextImpl(LRParser.this, lexerStream, value);
+                if (((BaseRule) rule).getAction() != null) {
+                    ((BaseRule) rule).getAction().accept(parsingContext);
+                }
+                if (parserListener != null) {
+                    parserListener.onReduce(rule, parsingContext);
+                }
+            }
+            return value;
+        }
 
-    private void reduce(Stack<Context> stack, final LexerStream lexerStream, int ruleIndex) {
-        Rule rule = grammar.getRuleById(ruleIndex);
-        AstNode astNode = makeNode(stack, lexerStream, rule);
-        Context nextParserContext = new Context(astNode);
-        // depending on the state that is now on the top of stack, and the target of the rule,
-        // a new state is searched in the goto table and becomes the current state
-        int newState = actionTable.getNextState(stack.peek().getState(), rule.getTarget());
-        nextParserContext.setState(newState);
-        getLog().trace("      - goto " + newState);
-        stack.push(nextParserContext);
+        void reduce(int ruleIndex) {
+            Object value = reduceRule(rules[ruleIndex]);
+            // depending on the state that is now on the top of stack, and the target of the rule,
+            // a new state is searched in the goto table and becomes the current state
+            int newState = actionTable.getNextState(stack.peekState(), ruleTargetIds[ruleIndex]);
+            if (getLog().isTraceEnabled()) {
+                getLog().trace("      - goto " + newState);
+            }
+            stack.push(newState, value);
+        }
     }
 
     public Grammar getGrammar() {
@@ -185,6 +485,7 @@ public class LRParser implements Parser {
 
     @Override
     public void setLexer(Lexer lexer) {
+        checkNotCompiled();
         this.defaultLexer = lexer;
     }
 
@@ -195,6 +496,7 @@ public class LRParser implements Parser {
 
     @Override
     public void setParserListener(ParserListener parserListener) {
+        checkNotCompiled();
         this.parserListener = parserListener;
     }
 
@@ -205,6 +507,7 @@ public class LRParser implements Parser {
 
     @Override
     public void setAstNodeFactory(AstNodeFactory astNodeFactory) {
+        checkNotCompiled();
         this.astNodeFactory = astNodeFactory;
     }
 
@@ -285,7 +588,7 @@ public class LRParser implements Parser {
 
     }
 
-    private static class DefaultAstNodeFactory implements AstNodeFactory {
+    static class DefaultAstNodeFactory implements AstNodeFactory {
 
         @Override
         public AstNode newLeafNode(Token token) {
@@ -298,31 +601,84 @@ public class LRParser implements Parser {
         }
     }
 
-    private class Context {
+    /**
+     * The stack of the parser : the states, and a parallel stack of the values (the nodes, or the values computed by a
+     * {@link Reducer}) that are associated to them.
+     */
+    private static final class ParseStack {
+
+        private int[] states = new int[64];
+
+        private Object[] values = new Object[64];
+
+        private int size;
+
+        void push(int state, Object value) {
+            if (size == states.length) {
+                states = Arrays.copyOf(states, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            states[size] = state;
+            values[size] = value;
+            size++;
+        }
 
-        private int state;
+        int peekState() {
+            return states[size - 1];
+        }
 
-        private AstNode astNode;
+        Object peekValue() {
+            return values[size - 1];
+        }
 
-        Context(AstNode astNode) {
-            this.astNode = astNode;
+        int size() {
+            return size;
         }
 
-        public Context(AstNode astNode, int state) {
-            this(astNode);
-            this.state = state;
+        /**
+         * @return a view of the values between two indexes
+         */
+        List<Object> slice(int from, int to) {
+            return new Slice(values, from, to - from);
         }
 
-        int getState() {
-            return state;
+        /**
+         * removes the n topmost elements
+         */
+        void pop(int n) {
+            int newSize = size - n;
+            //do not retain the nodes
+            Arrays.fill(values, newSize, size, null);
+            size = newSize;
         }
+    }
+
+    /**
+     * read-only view of a part of the value stack
+     */
+    private static final class Slice extends AbstractList<Object> implements RandomAccess {
 
-        void setState(int state) {
-            this.state = state;
+        private final Object[] values;
+
+        private final int offset, size;
+
+        Slice(Object[] values, int offset, int size) {
+            this.values = values;
+            this.offset = offset;
+            this.size = size;
         }
 
-        AstNode getAstNode() {
-            return astNode;
+        @Override
+        public Object get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(Integer.toString(index));
+            }
+            return values[offset + index];
+        }
+
+        @Override
+        public int size() {
+            return size;
         }
     }
 
@@ -0,0 +1,261 @@
+package net.jr.parser.impl;
+
+import net.jr.common.Symbol;
+import net.jr.lexer.Lexemes;
+import net.jr.parser.Grammar;
+import net.jr.parser.Rule;
+
+import java.util.*;
+
+/**
+ * Computes the LALR(1) lookaheads of the reductions, from the LR(0) item sets, with the relations of DeRemer and Pennello.
+ * <p>
+ * The lookaheads are computed for each transition (p, A) of the automaton on a non-terminal A :
+ * <pre>
+ * DR(p, A)     = the terminals t such that goto(goto(p, A), t) exists
+ * (p, A) reads (r, C)             iff r = goto(p, A) and C is nullable
+ * (p, A) includes (p', B)         iff B → β A γ, γ is nullable, and p' reaches p by β
+ * (q, A → ω) lookback (p, A)      iff p reaches q by ω
+ *
+ * Read(p, A)   = DR(p, A) ∪ { Read(r, C) | (p, A) reads (r, C) }
+ * Follow(p, A) = Read(p, A) ∪ { Follow(p', B) | (p, A) includes (p', B) }
+ * LA(q, A → ω) = ∪ { Follow(p, A) | (q, A → ω) lookback (p, A) }
+ * </pre>
+ * Each union is solved with the 'digraph' traversal, that handles the strongly connected components of a relation in one pass,
+ * so the whole computation is linear in the size of the relations. The sets are {@link BitSet}s, indexed by terminal.
+ * </p>
+ * <p>
+ * The pseudo-terminal {@link Lexemes#empty()} is shifted by the parser like any other terminal, but it is not a lookahead :
+ * here it is considered as nullable, and it is never added to a set.
+ * </p>
+ * <p>
+ * See DeRemer, F. and Pennello, T. : 'Efficient Computation of LALR(1) Look-Ahead Sets', ACM TOPLAS 4(4), 1982.
+ * </p>
+ */
+class LalrLookaheads {
+
+    private final List<Symbol> terminals = new ArrayList<>();
+
+    private final Map<Symbol, Integer> terminalIds = new HashMap<>();
+
+    private final Set<Symbol> nullable;
+
+    /**
+     * The item sets, by id
+     */
+    private final ItemSet[] states;
+
+    /**
+     * Index of the transitions on a non-terminal, by source state
+     */
+    private final List<Map<Symbol, Integer>> transitionIds = new ArrayList<>();
+
+    private int transitionsCount = 0;
+
+    private final Map<Integer, Map<Rule, List<Integer>>> lookbacks = new TreeMap<>();
+
+    LalrLookaheads(Grammar grammar, Set<ItemSet> itemSets) {
+        for (Symbol s : grammar.getTerminals()) {
+            addTerminal(s);
+        }
+        addTerminal(Lexemes.eof());
+
+        nullable = grammar.getFirstSets().getNullableSymbols();
+
+        states = new ItemSet[itemSets.size()];
+        for (ItemSet itemSet : itemSets) {
+            states[itemSet.getId()] = itemSet;
+        }
+        for (ItemSet state : states) {
+            Map<Symbol, Integer> ids = new HashMap<>();
+            for (Symbol symbol : state.getTransitions().keySet()) {
+                if (!symbol.isTerminal()) {
+                    ids.put(symbol, transitionsCount++);
+                }
+            }
+            transitionIds.add(ids);
+        }
+    }
+
+    private void addTerminal(Symbol terminal) {
+        if (!terminalIds.containsKey(terminal)) {
+            terminalIds.put(terminal, terminals.size());
+            terminals.add(terminal);
+        }
+    }
+
+    /**
+     * Computes the lookaheads of all the reductions.
+     *
+     * @param grammar   the grammar
+     * @param startRule the starting rule, that is reduced on the end of input
+     * @return for each state (in ascending order), the terminals for which each rule is reduced (the rules being sorted by id)
+     */
+    Map<Integer, Map<Rule, Set<Symbol>>> compute(Grammar grammar, Rule startRule) {
+
+        Map<Symbol, List<Rule>> rulesByTarget = new HashMap<>();
+        for (Rule rule : grammar.getRules()) {
+            rulesByTarget.computeIfAbsent(rule.getTarget(), k -> new ArrayList<>()).add(rule);
+        }
+
+        //the starting rule has no transition from the initial state : a pseudo-transition stands for it
+        int start = transitionsCount++;
+
+        BitSet[] sets = new BitSet[transitionsCount];
+        List<List<Integer>> reads = new ArrayList<>(transitionsCount);
+        List<List<Integer>> includes = new ArrayList<>(transitionsCount);
+        for (int i = 0; i < transitionsCount; i++) {
+            sets[i] = new BitSet(terminals.size());
+            reads.add(new ArrayList<>());
+            includes.add(new ArrayList<>());
+        }
+        sets[start].set(terminalIds.get(Lexemes.eof()));
+
+        for (ItemSet p : states) {
+            for (Map.Entry<Symbol, Integer> entry : transitionIds.get(p.getId()).entrySet()) {
+                int transition = entry.getValue();
+
+                //DR and reads
+                ItemSet r = p.getTransitionFor(entry.getKey());
+                for (Map.Entry<Symbol, ItemSet> next : r.getTransitions().entrySet()) {
+                    Symbol s = next.getKey();
+                    if (s.isTerminal()) {
+                        Integer terminalId = terminalIds.get(s);
+                        if (terminalId != null) {
+                            sets[transition].set(terminalId);
+                        }
+                    } else if (nullable.contains(s)) {
+                        reads.get(transition).add(transitionIds.get(r.getId()).get(s));
+                    }
+                }
+
+                //includes and lookback
+                for (Rule rule : rulesByTarget.getOrDefault(entry.getKey(), Collections.emptyList())) {
+                    addPath(p, rule, transition, includes);
+                }
+            }
+        }
+        for (Rule rule : rulesByTarget.get(startRule.getTarget())) {
+            addPath(states[0], rule, start, includes);
+        }
+
+        //Read sets, then Follow sets (the Read sets being the initial values of the Follow sets)
+        digraph(sets, reads);
+        digraph(sets, includes);
+
+        Map<Integer, Map<Rule, Set<Symbol>>> lookaheads = new TreeMap<>();
+        for (Map.Entry<Integer, Map<Rule, List<Integer>>> entry : lookbacks.entrySet()) {
+            Map<Rule, Set<Symbol>> row = new TreeMap<>(Comparator.comparing(Rule::getId));
+            for (Map.Entry<Rule, List<Integer>> lookback : entry.getValue().entrySet()) {
+                BitSet la = new BitSet(terminals.size());
+                for (int transition : lookback.getValue()) {
+                    la.or(sets[transition]);
+                }
+                Set<Symbol> symbols = new LinkedHashSet<>();
+                for (int t = la.nextSetBit(0); t >= 0; t = la.nextSetBit(t + 1)) {
+                    symbols.add(terminals.get(t));
+                }
+                row.put(lookback.getKey(), symbols);
+            }
+            lookaheads.put(entry.getKey(), row);
+        }
+        return lookaheads;
+    }
+
+    /**
+     * Follows the clause of a rule from the state p : records the 'includes' relations of the non-terminals of the clause,
+     * and the 'lookback' relation of the state that is reached at the end.
+     */
+    private void addPath(ItemSet p, Rule rule, int transition, List<List<Integer>> includes) {
+        Symbol[] clause = rule.getClause();
+        //nullableFrom[i] : the symbols of the clause after position i are all nullable
+        boolean[] nullableFrom = new boolean[clause.length + 1];
+        nullableFrom[clause.length] = true;
+        for (int i = clause.length - 1; i >= 0; i--) {
+            nullableFrom[i] = nullableFrom[i + 1] && nullable.contains(clause[i]);
+        }
+        ItemSet state = p;
+        for (int i = 0; i < clause.length; i++) {
+            Symbol s = clause[i];
+            if (!s.isTerminal() && nullableFrom[i + 1]) {
+                includes.get(transitionIds.get(state.getId()).get(s)).add(transition);
+            }
+            state = state.getTransitionFor(s);
+        }
+        lookbacks.computeIfAbsent(state.getId(), k -> new HashMap<>())
+                .computeIfAbsent(rule, k -> new ArrayList<>())
+                .add(transition);
+    }
+
+    /**
+     * The 'digraph' algorithm of DeRemer and Pennello : F(x) = F(x) ∪ { F(y) | x R y }, with the strongly connected components of R
+     * detected as in Tarjan's algorithm, so that all the members of a component get the same set.
+     * <p>
+     * (Implementation note) : the traversal uses an explicit stack, since the relations may be very deep.
+     * </p>
+     *
+     * @param sets     the initial sets, that are updated in place
+     * @param relation the successors of each element
+     */
+    static void digraph(BitSet[] sets, List<List<Integer>> relation) {
+        final int infinity = Integer.MAX_VALUE;
+        int n = sets.length;
+        //N in the paper : 0 for the elements that have not been traversed yet, infinity for the elements that are done
+        int[] marks = new int[n];
+        int[] stack = new int[n];
+        int top = 0;
+
+        //the elements that are being traversed, their position in the stack, and the index of their next successor
+        int[] path = new int[n];
+        int[] pushed = new int[n];
+        int[] next = new int[n];
+
+        for (int root = 0; root < n; root++) {
+            if (marks[root] != 0) {
+                continue;
+            }
+            int pathLength = 0;
+            stack[top++] = root;
+            marks[root] = top;
+            path[pathLength] = root;
+            pushed[pathLength] = top;
+            next[pathLength++] = 0;
+
+            while (pathLength > 0) {
+                int x = path[pathLength - 1];
+                List<Integer> successors = relation.get(x);
+                if (next[pathLength - 1] < successors.size()) {
+                    int y = successors.get(next[pathLength - 1]++);
+                    if (marks[y] == 0) {
+                        stack[top++] = y;
+                        marks[y] = top;
+                        path[pathLength] = y;
+                        pushed[pathLength] = top;
+                        next[pathLength++] = 0;
+                    } else {
+                        marks[x] = Math.min(marks[x], marks[y]);
+                        sets[x].or(sets[y]);
+                    }
+                    continue;
+                }
+
+                //all the successors of x have been traversed
+                pathLength--;
+                if (marks[x] == pushed[pathLength]) {
+                    //x is the root of a strongly connected component : all its members get the same set
+                    int y;
+                    do {
+                        y = stack[--top];
+                        marks[y] = infinity;
+                        sets[y].or(sets[x]);
+                    } while (y != x);
+                }
+                if (pathLength > 0) {
+                    int parent = path[pathLength - 1];
+                    marks[parent] = Math.min(marks[parent], marks[x]);
+                    sets[parent].or(sets[x]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package net.jr.parser.impl;
+
+import net.jr.parser.ast.AstNode;
+
+import java.util.*;
+
+/**
+ * The result of a {@link GLRParser}, when the input may be parsed in several ways.
+ * <p>
+ * The derivations share their common parts : a node that is the same in several derivations is only created once, and when
+ * the same symbol derives the same part of the input in several ways, there is only one node for it in its parents, that
+ * stands for all its derivations (its <i>alternatives</i>). The node itself is the first derivation that was found, so that
+ * the tree that is returned by {@link #getRoot()} is a complete parse tree.
+ * </p>
+ */
+public final class ParseForest {
+
+    private final AstNode root;
+
+    private final Map<AstNode, List<AstNode>> alternatives;
+
+    ParseForest(AstNode root, Map<AstNode, List<AstNode>> alternatives) {
+        this.root = root;
+        this.alternatives = alternatives;
+    }
+
+    /**
+     * @return the root of the first derivation
+     */
+    public AstNode getRoot() {
+        return root;
+    }
+
+    /**
+     * @return true if the input can be parsed in several ways
+     */
+    public boolean isAmbiguous() {
+        return !alternatives.isEmpty();
+    }
+
+    /**
+     * @return the nodes that have several alternatives
+     */
+    public Set<AstNode> getAmbiguousNodes() {
+        return Collections.unmodifiableSet(alternatives.keySet());
+    }
+
+    /**
+     * @param node a node of the forest
+     * @return all the derivations of the part of the input that is covered by the node : the node itself, followed by the other
+     * derivations if it is ambiguous
+     */
+    public List<AstNode> getAlternatives(AstNode node) {
+        List<AstNode> list = alternatives.get(node);
+        return list == null ? Collections.singletonList(node) : Collections.unmodifiableList(list);
+    }
+}
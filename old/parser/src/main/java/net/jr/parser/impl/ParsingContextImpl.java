@@ -11,12 +11,12 @@ class ParsingContextImpl implements ParsingContext {
 
     private LexerStream lexerStream;
 
-    private AstNode astNode;
+    private Object value;
 
-    public ParsingContextImpl(Parser parser, LexerStream lexerStream, AstNode astNode) {
+    public ParsingContextImpl(Parser parser, LexerStream lexerStream, Object value) {
         this.parser = parser;
         this.lexerStream = lexerStream;
-        this.astNode = astNode;
+        this.value = value;
     }
 
     @Override
@@ -26,7 +26,12 @@ class ParsingContextImpl implements ParsingContext {
 
     @Override
     public AstNode getAstNode() {
-        return astNode;
+        return value instanceof AstNode ? (AstNode) value : null;
+    }
+
+    @Override
+    public Object getValue() {
+        return value;
     }
 
     @Override
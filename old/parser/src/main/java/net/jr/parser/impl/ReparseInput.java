@@ -0,0 +1,557 @@
+package net.jr.parser.impl;
+
+import net.jr.common.Symbol;
+import net.jr.lexer.Lexemes;
+import net.jr.lexer.LexerStream;
+import net.jr.lexer.LineIndex;
+import net.jr.lexer.TextEdit;
+import net.jr.lexer.Token;
+import net.jr.parser.Rule;
+import net.jr.parser.ast.AstNode;
+
+import java.util.*;
+
+/**
+ * The input of an incremental parse (see {@link LRParser#reparse(AstNode, CharSequence, List, net.jr.parser.ParseOptions)}).
+ * <p>
+ * The tree of the previous parse is cut in three parts :
+ * <ul>
+ * <li>the <i>left context</i> : the stack of the parser just after the last token that is kept before the edit. It is made of
+ * the left siblings of the nodes that lead from the root to this token, and their states are given by the goto table;</li>
+ * <li>the tokens that are lexed again, from this token until the new tokens are the same as the old ones
+ * (see {@link #relex(LexerStream, CharSequence, LineIndex)});</li>
+ * <li>the <i>right context</i> : the old subtrees that cover the rest of the text. Each one knows the state it was parsed
+ * from, and can be shifted as a whole if the parser is in the same state when it meets it. Otherwise, it is replaced by its
+ * children (see {@link #breakDown()}).</li>
+ * </ul>
+ * <p>
+ * The tokens of the previous parse must have an offset (see {@link Token#getOffset()}). The leaves of the ε rules (that are
+ * made of the token that follows them, see {@link LRParser}) are not part of the input : the ε rules are reduced again when
+ * their subtree is broken down.
+ * </p>
+ * <p>
+ * The states are computed from the clauses of the rules, which only works for the nodes whose children match the clause of
+ * their rule. The other nodes (like the lists of {@link net.jr.parser.Grammar#list}, whose action flattens the children) may
+ * still be shifted as a whole, but they are never part of the left context, the lexing never stops inside them, and they are
+ * lexed again when they have to be broken down.
+ * </p>
+ * <p>
+ * The old tokens keep their offsets until the edit is committed in the line index of the text (see
+ * {@link LineIndex#beginEdit(TextEdit, CharSequence)}) : the parser is given moved copies of them.
+ * </p>
+ */
+final class ReparseInput {
+
+    private final ActionTable actionTable;
+
+    private final TextEdit edit;
+
+    private LexerStream lexerStream;
+
+    private CharSequence text;
+
+    private LineIndex lineIndex;
+
+    private final AstNode root;
+
+    /**
+     * the last token of the left context, or null if all the text is lexed again
+     */
+    private final Path left;
+
+    private final int[] leftStates;
+
+    private final AstNode[] leftNodes;
+
+    /**
+     * the items that are still to be parsed, in the order of the input
+     */
+    private final Deque<Item> items = new ArrayDeque<>();
+
+    private int relexedCount, reusedCount;
+
+    private static final class Item {
+
+        /**
+         * an old subtree (or leaf), or null for a new token
+         */
+        private final AstNode node;
+
+        private Token token;
+
+        /**
+         * the moved copy of the token of an old leaf
+         */
+        private final Token movedToken;
+
+        /**
+         * the state the old subtree was parsed from, or -1 if unknown
+         */
+        private final int leftState;
+
+        Item(AstNode node, int leftState, Token movedToken) {
+            this.node = node;
+            this.leftState = leftState;
+            this.token = movedToken;
+            this.movedToken = movedToken;
+        }
+
+        Item(Token token) {
+            this.node = null;
+            this.token = token;
+            this.movedToken = null;
+            this.leftState = -1;
+        }
+    }
+
+    /**
+     * @param actionTable the table that was used to parse the previous tree
+     * @param root        the root of the previous tree
+     * @param edit        the change of the text since the previous parse (see {@link TextEdit#merge(List)})
+     */
+    ReparseInput(ActionTable actionTable, AstNode root, TextEdit edit) {
+        this.actionTable = actionTable;
+        this.root = root;
+        this.edit = edit;
+
+        //the first token that touches the edit, and the one before are lexed again
+        Path path = new Path();
+        boolean found = path.seek(root, edit.getOffset()) ? path.previous() : path.toLast(root);
+        found = found && path.previous();
+        //as well as the nodes whose states are unknown
+        int d;
+        while (found && (d = path.getFirstIrregular()) >= 0) {
+            found = path.descend(d, 1) && path.previous();
+        }
+        left = found ? path : null;
+
+        List<Integer> states = new ArrayList<>();
+        List<AstNode> nodes = new ArrayList<>();
+        if (left != null) {
+            int state = 0;
+            for (d = 0; d < left.depth; d++) {
+                AstNode parent = left.nodes[d];
+                Symbol[] clause = parent.getRule().getClause();
+                //the token itself is part of the left context
+                int to = d == left.depth - 1 ? left.indexes[d] + 1 : left.indexes[d];
+                for (int i = 0; i < to; i++) {
+                    state = goTo(state, clause[i]);
+                    if (state < 0) {
+                        throw new IllegalArgumentException("The tree was not built with this action table");
+                    }
+                    states.add(state);
+                    nodes.add(parent.getChildren().get(i));
+                }
+            }
+        }
+        leftStates = states.stream().mapToInt(Integer::intValue).toArray();
+        leftNodes = nodes.toArray(new AstNode[0]);
+    }
+
+    /**
+     * @return the line index of the previous text, that is shared by the tokens of the previous tree
+     */
+    LineIndex getLineIndex() {
+        Path path = new Path();
+        if (!path.toFirst(root)) {
+            //no token : an empty text
+            return new LineIndex();
+        }
+        LineIndex lineIndex = path.leaf().asToken().getLineIndex();
+        if (lineIndex == null) {
+            throw new IllegalArgumentException("The tokens of the previous tree have no line index");
+        }
+        return lineIndex;
+    }
+
+    /**
+     * @return the offset where the lexer has to start
+     */
+    int getRelexOffset() {
+        return left == null ? 0 : end(left.leaf().asToken());
+    }
+
+    /**
+     * @return the number of nodes of the left context
+     */
+    int getLeftContextSize() {
+        return leftNodes.length;
+    }
+
+    int getLeftState(int i) {
+        return leftStates[i];
+    }
+
+    AstNode getLeftNode(int i) {
+        return leftNodes[i];
+    }
+
+    int getRelexedCount() {
+        return relexedCount;
+    }
+
+    int getReusedCount() {
+        return reusedCount;
+    }
+
+    void onReused() {
+        reusedCount++;
+    }
+
+    private static int end(Token token) {
+        return token.getOffset() + token.getTextSequence().length();
+    }
+
+    /**
+     * @return true if the children of a node match the clause of its rule (the eof that ends a clause is not kept in the tree)
+     */
+    private static boolean isRegular(AstNode node) {
+        Symbol[] clause = node.getRule().getClause();
+        List<AstNode> children = node.getChildren();
+        if (children.size() > clause.length) {
+            return false;
+        }
+        for (int i = 0; i < children.size(); i++) {
+            if (!children.get(i).getSymbol().equals(clause[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the input item of an old node that follows the edit
+     */
+    private Item oldItem(AstNode node, int leftState) {
+        if (!node.getChildren().isEmpty()) {
+            return new Item(node, leftState, null);
+        }
+        Token token = node.asToken();
+        Token moved = token == null ? null
+                : new Token(token.getTokenType(), token.getOffset() + edit.getDelta(), lineIndex, token.getTextSequence());
+        return new Item(node, leftState, moved);
+    }
+
+    /**
+     * Reads the new tokens, until one of them is the same as an old token that follows the edit : as the lexer is in its initial
+     * state at the beginning of each token, the rest of the tokens are the same. The old tokens that follow are given to the
+     * parser as moved copies.
+     *
+     * @param lexerStream a stream that starts at {@link #getRelexOffset()}
+     * @param text        the new text
+     * @param lineIndex   the line index of the new text (I.e. the index of the previous text, with the edit pending)
+     */
+    void relex(LexerStream lexerStream, CharSequence text, LineIndex lineIndex) {
+        this.lexerStream = lexerStream;
+        this.text = text;
+        this.lineIndex = lineIndex;
+        Path old = new Path();
+        boolean hasOld = left == null ? old.toFirst(root) : old.copyOf(left).next();
+        int delta = edit.getDelta();
+        while (true) {
+            Token token = lexerStream.next();
+            if (LRParser.isEof(token)) {
+                items.add(new Item(token));
+                return;
+            }
+            int offset = token.getOffset();
+            if (offset >= edit.getNewEnd()) {
+                while (hasOld && old.leaf().asToken().getOffset() + delta < offset) {
+                    hasOld = old.next();
+                }
+                if (hasOld && old.leaf().asToken().getOffset() >= edit.getOldEnd() && old.leaf().asToken().getOffset() + delta == offset
+                        && old.getFirstIrregular() < 0) {
+                    break;
+                }
+            }
+            items.add(new Item(token));
+            relexedCount++;
+        }
+
+        //the right context
+        int[] pathStates = new int[old.depth + 1];
+        for (int d = 0; d < old.depth; d++) {
+            int state = pathStates[d];
+            Symbol[] clause = old.nodes[d].getRule().getClause();
+            for (int i = 0; i < old.indexes[d] && state >= 0; i++) {
+                state = goTo(state, clause[i]);
+            }
+            pathStates[d + 1] = state;
+        }
+        items.add(oldItem(old.leaf(), pathStates[old.depth]));
+        for (int d = old.depth - 1; d >= 0; d--) {
+            AstNode parent = old.nodes[d];
+            Symbol[] clause = parent.getRule().getClause();
+            int state = pathStates[d + 1] < 0 ? -1 : goTo(pathStates[d + 1], clause[old.indexes[d]]);
+            for (int i = old.indexes[d] + 1; i < parent.getChildren().size(); i++) {
+                items.add(oldItem(parent.getChildren().get(i), state));
+                state = state < 0 ? -1 : goTo(state, clause[i]);
+            }
+        }
+        items.add(new Item(new Token(Lexemes.eof(), text.length(), lineIndex, "")));
+    }
+
+    /**
+     * @return the state after a symbol, or -1
+     */
+    private int goTo(int state, Symbol symbol) {
+        int symbolId = actionTable.getSymbolId(symbol);
+        int code = symbolId < 0 ? ActionTable.NO_ACTION : actionTable.getExplicitActionCode(state, symbolId);
+        if (code == ActionTable.NO_ACTION || (symbol.isTerminal() && ActionTable.getActionType(code) != ActionType.Shift)) {
+            return -1;
+        }
+        return ActionTable.getActionParameter(code);
+    }
+
+    /**
+     * @return the next item if it is an old subtree (but not a leaf), or null
+     */
+    AstNode peekSubtree() {
+        Item item = items.peek();
+        return item.token == null ? item.node : null;
+    }
+
+    /**
+     * @return the state the next item was parsed from
+     */
+    int peekLeftState() {
+        return items.peek().leftState;
+    }
+
+    /**
+     * @return the next token, after the subtrees that start the input have been broken down
+     */
+    Token peekToken() {
+        while (items.peek().token == null) {
+            breakDown();
+        }
+        return items.peek().token;
+    }
+
+    /**
+     * @return the old leaf of the next token, or null if it is a new token
+     */
+    AstNode peekLeaf() {
+        Item item = items.peek();
+        return item.token != null && item.token == item.movedToken ? item.node : null;
+    }
+
+    /**
+     * @return true if the next item is a token
+     */
+    boolean isTokenNext() {
+        return items.peek().token != null;
+    }
+
+    /**
+     * changes the next token (see {@link net.jr.lexer.TokenListener})
+     */
+    void setToken(Token token) {
+        items.peek().token = token;
+    }
+
+    void pop() {
+        items.poll();
+    }
+
+    /**
+     * Replaces the next subtree by its children.
+     */
+    void breakDown() {
+        Item item = items.poll();
+        AstNode node = item.node;
+        if (isSkipped(node)) {
+            return;
+        }
+        if (!isRegular(node)) {
+            relexNode(node);
+            return;
+        }
+        Symbol[] clause = node.getRule().getClause();
+        List<AstNode> children = node.getChildren();
+        Item[] childItems = new Item[children.size()];
+        int state = item.leftState;
+        for (int i = 0; i < childItems.length; i++) {
+            childItems[i] = oldItem(children.get(i), state);
+            state = state < 0 ? -1 : goTo(state, clause[i]);
+        }
+        for (int i = childItems.length - 1; i >= 0; i--) {
+            items.push(childItems[i]);
+        }
+    }
+
+    /**
+     * Replaces a node whose children do not match its rule by the tokens of its text : some of them may not be in the tree.
+     */
+    private void relexNode(AstNode node) {
+        Path path = new Path();
+        if (!path.toFirst(node)) {
+            return;
+        }
+        int delta = edit.getDelta();
+        int start = path.leaf().asToken().getOffset() + delta;
+        path.toLast(node);
+        int end = end(path.leaf().asToken()) + delta;
+        LexerStream stream = lexerStream.getLexer().iterator(text, lineIndex, start, lexerStream.getTokenListener());
+        Deque<Item> tokens = new ArrayDeque<>();
+        Token token;
+        while ((token = stream.next()).getOffset() < end && !LRParser.isEof(token)) {
+            tokens.push(new Item(token));
+            relexedCount++;
+        }
+        while (!tokens.isEmpty()) {
+            items.push(tokens.pop());
+        }
+    }
+
+    private static boolean isEmptyRule(Rule rule) {
+        Symbol[] clause = rule.getClause();
+        return clause.length == 1 && clause[0] == Lexemes.empty();
+    }
+
+    /**
+     * @return true for the nodes that have no token of the input : the ε rules, and eof
+     */
+    private static boolean isSkipped(AstNode node) {
+        if (node.getChildren().isEmpty()) {
+            return node.asToken() == null || LRParser.isEofNode(node);
+        }
+        return isEmptyRule(node.getRule());
+    }
+
+    /**
+     * The nodes that lead from the root to a token.
+     */
+    private static final class Path {
+
+        private AstNode[] nodes = new AstNode[32];
+
+        /**
+         * indexes[d] is the index of nodes[d + 1] in the children of nodes[d]
+         */
+        private int[] indexes = new int[32];
+
+        private int depth;
+
+        AstNode leaf() {
+            return nodes[depth];
+        }
+
+        /**
+         * @return the depth of the first node of the path whose children do not match its rule, or -1
+         */
+        int getFirstIrregular() {
+            for (int d = 0; d < depth; d++) {
+                if (!isRegular(nodes[d])) {
+                    return d;
+                }
+            }
+            return -1;
+        }
+
+        Path copyOf(Path path) {
+            nodes = path.nodes.clone();
+            indexes = path.indexes.clone();
+            depth = path.depth;
+            return this;
+        }
+
+        private void set(int d, AstNode node) {
+            if (d == nodes.length) {
+                nodes = Arrays.copyOf(nodes, d * 2);
+                indexes = Arrays.copyOf(indexes, d * 2);
+            }
+            nodes[d] = node;
+        }
+
+        boolean toFirst(AstNode root) {
+            set(0, root);
+            return descend(0, 1);
+        }
+
+        boolean toLast(AstNode root) {
+            set(0, root);
+            return descend(0, -1);
+        }
+
+        boolean next() {
+            int d = sibling(depth, 1);
+            return d >= 0 && descend(d, 1);
+        }
+
+        boolean previous() {
+            int d = sibling(depth, -1);
+            return d >= 0 && descend(d, -1);
+        }
+
+        /**
+         * moves to the first (direction = 1) or to the last (direction = -1) token of nodes[d], or after it if it has no token
+         */
+        private boolean descend(int d, int direction) {
+            while (true) {
+                AstNode node = nodes[d];
+                if (!isSkipped(node)) {
+                    List<AstNode> children = node.getChildren();
+                    if (children.isEmpty()) {
+                        depth = d;
+                        return true;
+                    }
+                    int i = direction > 0 ? 0 : children.size() - 1;
+                    indexes[d] = i;
+                    set(d + 1, children.get(i));
+                    d++;
+                    continue;
+                }
+                d = sibling(d, direction);
+                if (d < 0) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * replaces nodes[d] by its next sibling (or the next sibling of its closest ancestor that has one)
+         *
+         * @return the depth of the sibling, or -1
+         */
+        private int sibling(int d, int direction) {
+            while (d > 0) {
+                List<AstNode> children = nodes[d - 1].getChildren();
+                int i = indexes[d - 1] + direction;
+                if (i >= 0 && i < children.size()) {
+                    indexes[d - 1] = i;
+                    nodes[d] = children.get(i);
+                    return d;
+                }
+                d--;
+            }
+            return -1;
+        }
+
+        /**
+         * moves to the first token that ends at or after an offset
+         */
+        boolean seek(AstNode root, int offset) {
+            Path last = new Path();
+            set(0, root);
+            int d = 0;
+            while (true) {
+                List<AstNode> children = nodes[d].getChildren();
+                if (children.isEmpty()) {
+                    depth = d;
+                    return true;
+                }
+                int i = 0;
+                while (i < children.size() && !(last.toLast(children.get(i)) && end(last.leaf().asToken()) >= offset)) {
+                    i++;
+                }
+                if (i == children.size()) {
+                    return false;
+                }
+                indexes[d] = i;
+                set(d + 1, children.get(i));
+                d++;
+            }
+        }
+    }
+}
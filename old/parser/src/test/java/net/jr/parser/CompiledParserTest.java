@@ -0,0 +1,110 @@
+package net.jr.parser;
+
+import net.jr.lexer.Token;
+import net.jr.parser.ast.AstNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CompiledParserTest {
+
+    private static final FourOpsTest.FourOps fourOps = new FourOpsTest.FourOps();
+
+    @Test
+    public void testSettersThrow() {
+        Parser parser = fourOps.createParser().compile();
+        Assert.assertSame(parser, parser.compile());
+        Assert.assertTrue(parser.getLexer().isCompiled());
+        try {
+            parser.setParserListener(null);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        try {
+            parser.setAstNodeFactory(null);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        try {
+            parser.setLexer(fourOps.getLexer());
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testParseOptions() {
+        Parser parser = fourOps.createParser().compile();
+        AtomicInteger reductions = new AtomicInteger();
+        List<String> tokens = new ArrayList<>();
+        ParseOptions options = ParseOptions.defaults()
+                .withParserListener(new ParserListener() {
+                    @Override
+                    public void onParseError(ParseError parseError, ParsingContext parsingContext) {
+                        throw parseError;
+                    }
+
+                    @Override
+                    public void onReduce(Rule rule, ParsingContext parsingContext) {
+                        reductions.incrementAndGet();
+                    }
+                })
+                .withTokenListener(token -> {
+                    tokens.add(token.getText());
+                    return token;
+                });
+        AstNode root = parser.parse("1+2*3", options);
+        Assert.assertNotNull(root);
+        Assert.assertTrue(reductions.get() > 0);
+        Assert.assertEquals("1", tokens.get(0));
+
+        //the options do not stick to the parser
+        reductions.set(0);
+        parser.parse("1+2*3");
+        Assert.assertEquals(0, reductions.get());
+    }
+
+    private static int countLeaves(AstNode node) {
+        Token token = node.getChildren().isEmpty() ? node.asToken() : null;
+        int count = token == null ? 0 : 1;
+        for (AstNode child : node.getChildren()) {
+            count += countLeaves(child);
+        }
+        return count;
+    }
+
+    @Test
+    public void testConcurrentParses() throws Exception {
+        Parser parser = fourOps.createParser().compile();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                final int n = 10 + i;
+                futures.add(executor.submit(() -> {
+                    StringBuilder sb = new StringBuilder("1");
+                    for (int k = 1; k < n; k++) {
+                        sb.append(k % 2 == 0 ? '+' : '*').append(k);
+                    }
+                    return countLeaves(parser.parse(sb.toString()));
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                int n = 10 + i;
+                //n numbers, and n-1 operators
+                Assert.assertEquals(2 * n - 1, futures.get(i).get().intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
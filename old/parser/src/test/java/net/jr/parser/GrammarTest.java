@@ -109,6 +109,19 @@ public class GrammarTest {
 
     }
 
+    @Test
+    public void testTableConstruction() {
+        String fingerprint = grammar.getFingerprint();
+        grammar.setTableConstruction(TableConstruction.MinimalLr1);
+        Assert.assertEquals(TableConstruction.MinimalLr1, grammar.getTableConstruction());
+        //the tables of both constructions are cached separately
+        Assert.assertNotEquals(fingerprint, grammar.getFingerprint());
+        for (boolean useCache : new boolean[]{false, true}) {
+            AstNode node = grammar.createParser(useCache).parse("x=*x");
+            Assert.assertEquals("x=*x", node.repr().replaceAll("\\s", ""));
+        }
+    }
+
     @Test
     public void testParseSimpleChoice() {
         Symbol V = new NonTerminal("V");
@@ -0,0 +1,158 @@
+package net.jr.parser;
+
+import net.jr.lexer.Lexemes;
+import net.jr.lexer.Terminal;
+import net.jr.lexer.Token;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ReducerTest {
+
+    private static final FourOpsTest.FourOps fourOps = new FourOpsTest.FourOps();
+
+    /**
+     * computes the value of the expressions, without building a tree
+     */
+    private static Object compute(Rule rule, List<Object> values) {
+        String name = rule.getName() == null ? "" : rule.getName();
+        switch (name) {
+            case "number":
+                return Integer.parseInt(((Token) values.get(0)).getText());
+            case "additiveExpression":
+            case "multiplicativeExpression":
+                int left = (Integer) values.get(0);
+                int right = (Integer) values.get(2);
+                switch (((Token) values.get(1)).getText()) {
+                    case "+":
+                        return left + right;
+                    case "-":
+                        return left - right;
+                    case "*":
+                        return left * right;
+                    default:
+                        return left / right;
+                }
+            default:
+                //the operators, and the target rule
+                return values.size() == 1 ? values.get(0) : null;
+        }
+    }
+
+    @Test
+    public void testCompute() {
+        Parser parser = fourOps.createParser();
+        Assert.assertEquals(8, parser.parse("15-7", ReducerTest::compute));
+        Assert.assertEquals(32, parser.parse("3*6+2*7", ReducerTest::compute));
+        Assert.assertEquals(4, parser.parse("1-2+3-4+5-6+7", ReducerTest::compute));
+    }
+
+    @Test
+    public void testLongInput() {
+        StringBuilder sb = new StringBuilder("0");
+        for (int i = 0; i < 100000; i++) {
+            sb.append("+1*1");
+        }
+        Assert.assertEquals(100000, fourOps.createParser().parse(sb.toString(), ReducerTest::compute));
+    }
+
+    @Test
+    public void testListenerSeesValues() {
+        List<Object> values = new ArrayList<>();
+        ParseOptions options = ParseOptions.defaults().withParserListener(new ParserListener() {
+            @Override
+            public void onParseError(ParseError parseError, ParsingContext parsingContext) {
+                throw parseError;
+            }
+
+            @Override
+            public void onReduce(Rule rule, ParsingContext parsingContext) {
+                Assert.assertNull(parsingContext.getAstNode());
+                if ("additiveExpression".equals(rule.getName())) {
+                    values.add(parsingContext.getValue());
+                }
+            }
+        });
+        Object result = fourOps.createParser().parse(new java.io.StringReader("1+2+3"), ReducerTest::compute, options);
+        Assert.assertEquals(6, result);
+        Assert.assertEquals("[3, 6]", values.toString());
+    }
+
+    /**
+     * sums of integers : 'sum(1, 2), sum(3)' gives [3, 3]
+     */
+    private static class Sums extends Grammar {
+
+        private static final Terminal Number = Lexemes.cInteger();
+
+        private static final Terminal Comma = Lexemes.singleChar(',');
+
+        private static final NonTerminal Sum = new NonTerminal("Sum");
+
+        private static final NonTerminal Sums = new NonTerminal("Sums");
+
+        private Sums() {
+            target(Sums).def(list(false, Comma, Sum));
+            target(Sum)
+                    .def(Lexemes.literal("sum"), Lexemes.singleChar('('), list(true, Comma, Number), Lexemes.singleChar(')'))
+                    .withReduction(values -> {
+                        int sum = 0;
+                        for (Object token : (List<?>) values.get(2)) {
+                            sum += Integer.parseInt(((Token) token).getText());
+                        }
+                        return sum;
+                    });
+        }
+    }
+
+    @Test
+    public void testRuleReductions() {
+        Parser parser = new Sums().createParser();
+        parser.getLexer().setFilteredOut(Lexemes.whitespace());
+        List<Integer> result = parser.evaluate("sum(1, 2), sum(3), sum(), sum(4, 5, 6)");
+        Assert.assertEquals(Arrays.asList(3, 3, 0, 15), result);
+
+        //the tree is still built as before
+        Assert.assertEquals(4, parser.parse("sum(1, 2), sum(3), sum(), sum(4, 5, 6)").getChildren().get(0).getChildren().size());
+    }
+
+    @Test
+    public void testKeptRepetitions() {
+        Grammar grammar = new Grammar();
+        NonTerminal S = new NonTerminal("S");
+        NonTerminal xs = grammar.oneOrMore(Lexemes.singleChar('x'));
+        grammar.addRule(S, xs);
+        //the value of each reduction of the repetition, as seen by a listener
+        List<List<?>> kept = new ArrayList<>();
+        ParseOptions options = ParseOptions.defaults().withParserListener(new ParserListener() {
+            @Override
+            public void onParseError(ParseError parseError, ParsingContext parsingContext) {
+                throw parseError;
+            }
+
+            @Override
+            public void onReduce(Rule rule, ParsingContext parsingContext) {
+                if (rule.getTarget().equals(xs)) {
+                    kept.add((List<?>) parsingContext.getValue());
+                }
+            }
+        });
+        List<?> result = (List<?>) grammar.createParser().parse(new java.io.StringReader("xxxx"), Reducer.rules(), options);
+        Assert.assertEquals(4, result.size());
+        Assert.assertEquals(4, kept.size());
+        for (int i = 0; i < kept.size(); i++) {
+            //the lists are not extended afterwards
+            Assert.assertEquals(i + 1, kept.get(i).size());
+        }
+    }
+
+    @Test
+    public void testDefaultReduction() {
+        //without any reduction, the value of a rule is the value of its first symbol
+        Token token = (Token) fourOps.createParser().parse("1+2", Reducer.rules());
+        Assert.assertEquals("1", token.getText());
+    }
+}
@@ -0,0 +1,197 @@
+package net.jr.parser;
+
+import net.jr.lexer.Lexemes;
+import net.jr.lexer.Terminal;
+import net.jr.lexer.TextEdit;
+import net.jr.lexer.Token;
+import net.jr.parser.ast.AstNode;
+import net.jr.parser.impl.LRParser;
+import net.jr.test.TestUtil;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.*;
+
+public class ReparseTest {
+
+    private static final FourOpsTest.FourOps fourOps = new FourOpsTest.FourOps();
+
+    @BeforeClass
+    public static void setupClass() {
+        TestUtil.configureLogging();
+    }
+
+    private static void assertSameTree(AstNode expected, AstNode actual) {
+        Assert.assertEquals(expected.repr(), actual.repr());
+        List<AstNode> expectedLeaves = expected.getDescendants();
+        List<AstNode> actualLeaves = actual.getDescendants();
+        Assert.assertEquals(expectedLeaves.size(), actualLeaves.size());
+        for (int i = 0; i < expectedLeaves.size(); i++) {
+            Token expectedToken = expectedLeaves.get(i).asToken();
+            Token actualToken = actualLeaves.get(i).asToken();
+            Assert.assertEquals(expectedToken.getTokenType(), actualToken.getTokenType());
+            Assert.assertEquals(expectedToken.getOffset(), actualToken.getOffset());
+            Assert.assertEquals(expectedToken.getPosition(), actualToken.getPosition());
+        }
+        List<Rule> expectedRules = new ArrayList<>();
+        List<Rule> actualRules = new ArrayList<>();
+        expected.preOrderIterator().forEachRemaining(n -> expectedRules.add(n.getRule()));
+        actual.preOrderIterator().forEachRemaining(n -> actualRules.add(n.getRule()));
+        Assert.assertEquals(expectedRules, actualRules);
+    }
+
+    @Test
+    public void testReuse() {
+        LRParser parser = (LRParser) fourOps.createParser();
+        StringBuilder sb = new StringBuilder("1");
+        for (int i = 2; i < 200; i++) {
+            sb.append(i % 3 == 0 ? '*' : '+').append(i);
+        }
+        String text = sb.toString();
+        AstNode tree = parser.parse(text);
+        AstNode lastLeaf = tree.getLastChild().getLastChild();
+
+        //'1' -> '100'
+        String newText = "100" + text.substring(1);
+        AstNode newTree = parser.reparse(tree, newText, Collections.singletonList(TextEdit.insert(1, "00")));
+        assertSameTree(parser.parse(newText), newTree);
+        //the subtrees that follow the edit are reused
+        Assert.assertSame(lastLeaf, newTree.getLastChild().getLastChild());
+        //and so is the line index, that was patched
+        Assert.assertSame(lastLeaf.asToken().getLineIndex(), newTree.getDescendants().get(0).asToken().getLineIndex());
+    }
+
+    @Test
+    public void testRandomEdits() {
+        LRParser parser = (LRParser) fourOps.createParser();
+        String text = "12+3*45-6/7+8*9*10-11+12/13";
+        AstNode tree = parser.parse(text);
+        Random random = new Random(1234);
+        String chars = "0123456789+-*/";
+        int done = 0;
+        while (done < 300) {
+            //a few edits, one after the other
+            List<TextEdit> edits = new ArrayList<>();
+            String newText = text;
+            for (int n = random.nextInt(3) + 1; n > 0; n--) {
+                int offset = random.nextInt(newText.length() + 1);
+                int removed = Math.min(random.nextInt(3), newText.length() - offset);
+                StringBuilder inserted = new StringBuilder();
+                for (int i = random.nextInt(3); i > 0; i--) {
+                    inserted.append(chars.charAt(random.nextInt(chars.length())));
+                }
+                newText = newText.substring(0, offset) + inserted + newText.substring(offset + removed);
+                edits.add(TextEdit.replace(offset, removed, inserted.toString()));
+            }
+            AstNode expected;
+            try {
+                expected = parser.parse(newText);
+            } catch (ParseError | net.jr.lexer.LexicalError e) {
+                //only the valid texts are kept
+                continue;
+            }
+            tree = parser.reparse(tree, newText, edits);
+            assertSameTree(expected, tree);
+            text = newText;
+            done++;
+        }
+    }
+
+    @Test
+    public void testFailedReparse() {
+        LRParser parser = (LRParser) fourOps.createParser();
+        AstNode tree = parser.parse("1+2+3+4");
+        try {
+            parser.reparse(tree, "1++2+3+4", Collections.singletonList(TextEdit.insert(1, "+")));
+            Assert.fail();
+        } catch (ParseError e) {
+            //expected
+        }
+        //the previous tree is unchanged
+        assertSameTree(parser.parse("1+2+3+4"), tree);
+    }
+
+    @Test
+    public void testDiscardedLookahead() {
+        //stmts → oneOrMore(stmt), stmt → E | E ';', E → E '+' x | x
+        Grammar g = new Grammar();
+        NonTerminal stmts = new NonTerminal("stmts");
+        NonTerminal stmt = new NonTerminal("stmt");
+        NonTerminal E = new NonTerminal("E");
+        Terminal x = Lexemes.singleChar('x');
+        Terminal semicolon = Lexemes.singleChar(';');
+        g.addRule(stmts, g.oneOrMore(stmt));
+        g.addRule(stmt, E);
+        g.addRule(stmt, E, semicolon);
+        g.addRule(E, E, Lexemes.singleChar('+'), x);
+        g.addRule(E, x);
+        LRParser parser = (LRParser) g.createParser(false);
+        AstNode tree = parser.parse("x+x;x;x");
+
+        //the old ';' leaves are given to the listener after the reduction of E, that discards them
+        ParseOptions options = ParseOptions.defaults().withTokenListener(token -> token.getTokenType().equals(semicolon) ? null : token);
+        String newText = "x+x+x;x;x";
+        AstNode newTree = parser.reparse(tree, newText, Collections.singletonList(TextEdit.insert(3, "+x")), options);
+        assertSameTree(parser.parse(newText, options), newTree);
+    }
+
+    private static Grammar newListsGrammar() {
+        //groups of ints, like (1,2);(3)
+        Grammar g = new Grammar();
+        NonTerminal groups = new NonTerminal("groups");
+        NonTerminal group = new NonTerminal("group");
+        g.addRule(groups, g.list(false, Lexemes.singleChar(';'), group));
+        g.addRule(group, Lexemes.singleChar('('), g.list(false, Lexemes.singleChar(','), Lexemes.cInteger()), Lexemes.singleChar(')'));
+        return g;
+    }
+
+    @Test
+    public void testList() {
+        Grammar g = new Grammar();
+        NonTerminal listOfInts = new NonTerminal("listOfInts");
+        g.addRule(listOfInts, g.list(false, Lexemes.singleChar(','), Lexemes.cInteger()));
+        LRParser parser = (LRParser) g.createParser(false);
+        AstNode tree = parser.parse("1,2,3,4,5,6");
+        AstNode newTree = parser.reparse(tree, "1,2,3,4,50,6", Collections.singletonList(TextEdit.insert(9, "0")));
+        assertSameTree(parser.parse("1,2,3,4,50,6"), newTree);
+    }
+
+    @Test
+    public void testListsRandomEdits() {
+        LRParser parser = (LRParser) newListsGrammar().createParser(false);
+        String text = "(1,2,3);(45,6);(7);(8,9,10,11);(12,13)";
+        AstNode tree = parser.parse(text);
+        Random random = new Random(4321);
+        String chars = "0123456789,;()";
+        int done = 0;
+        while (done < 300) {
+            int offset = random.nextInt(text.length() + 1);
+            int removed = Math.min(random.nextInt(3), text.length() - offset);
+            StringBuilder inserted = new StringBuilder();
+            for (int i = random.nextInt(3); i > 0; i--) {
+                inserted.append(chars.charAt(random.nextInt(chars.length())));
+            }
+            String newText = text.substring(0, offset) + inserted + text.substring(offset + removed);
+            AstNode expected;
+            try {
+                expected = parser.parse(newText);
+            } catch (ParseError | net.jr.lexer.LexicalError e) {
+                continue;
+            }
+            tree = parser.reparse(tree, newText, Collections.singletonList(TextEdit.replace(offset, removed, inserted.toString())));
+            assertSameTree(expected, tree);
+            text = newText;
+            done++;
+        }
+    }
+
+    @Test
+    public void testMerge() {
+        //"abcdef" -> "aXbcdef" -> "aXbcYf"
+        TextEdit edit = TextEdit.merge(Arrays.asList(TextEdit.insert(1, "X"), TextEdit.replace(5, 1, "Y")));
+        Assert.assertEquals(1, edit.getOffset());
+        Assert.assertEquals(4, edit.getRemovedLength());
+        Assert.assertEquals(5, edit.getInsertedLength());
+    }
+}
@@ -0,0 +1,97 @@
+package net.jr.parser.ast;
+
+import net.jr.common.Symbol;
+import net.jr.lexer.basicterminals.SingleChar;
+import net.jr.parser.Grammar;
+import net.jr.parser.NonTerminal;
+import org.junit.Assert;
+import net.jr.parser.ast.annotations.BeforeEachNode;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class AstNodeTest {
+
+    private static final Symbol S = new NonTerminal("S");
+
+    private static final Symbol L = new NonTerminal("L");
+
+    private static final SingleChar x = new SingleChar('x');
+
+    private static final SingleChar comma = new SingleChar(',');
+
+    /**
+     * S → L. L → x. L → L , x.
+     */
+    private static AstNode parse(String txt) {
+        Grammar grammar = new Grammar();
+        grammar.addRule(S, L);
+        grammar.addRule(L, x);
+        grammar.addRule(L, L, comma, x);
+        return grammar.createParser().parse(txt);
+    }
+
+    private static List<String> names(Iterator<AstNode> it) {
+        List<String> names = new ArrayList<>();
+        while (it.hasNext()) {
+            AstNode node = it.next();
+            names.add(node.getChildren().isEmpty() ? node.repr() : node.getSymbol().toString());
+        }
+        return names;
+    }
+
+    @Test
+    public void testOrders() {
+        AstNode root = parse("x,x");
+        Assert.assertEquals(S, root.getSymbol());
+        Assert.assertEquals("[S, L, L, x, ,, x]", names(root.preOrderIterator()).toString());
+        Assert.assertEquals("[x, L, ,, x, L, S]", names(root.postOrderIterator()).toString());
+        Assert.assertEquals(5, root.descendants().count());
+
+        List<String> events = new ArrayList<>();
+        root.getFirstChild().traverse(n -> events.add("+" + n.getSymbol()), n -> events.add("-" + n.getSymbol()));
+        Assert.assertEquals(events.get(0), "+L");
+        Assert.assertEquals(events.get(events.size() - 1), "-L");
+        Assert.assertEquals(10, events.size());
+    }
+
+    @Test
+    public void testDescendants() {
+        AstNode root = parse("x,x,x");
+        Assert.assertEquals("x , x , x", root.repr());
+        Assert.assertEquals(5, root.getDescendants().size());
+        Assert.assertEquals(3, root.getDescendantsOfType(L).size());
+        Assert.assertEquals(3, root.getDescendantsOfType(x).size());
+        Assert.assertSame(root.getFirstChild(), root.getDescendantOfType(L));
+        Assert.assertNull(root.getDescendantOfType(S));
+        Assert.assertEquals("[x, x, x]", root.descendants().filter(n -> n.getSymbol().equals(x))
+                .map(AstNode::repr).collect(Collectors.toList()).toString());
+    }
+
+    @Test
+    public void testDeepTree() {
+        //the list is left-recursive : the depth of the tree is the number of items
+        int n = 200000;
+        StringBuilder sb = new StringBuilder("x");
+        for (int i = 1; i < n; i++) {
+            sb.append(",x");
+        }
+        AstNode root = parse(sb.toString());
+        Assert.assertEquals(sb.toString(), root.repr().replace(" ", ""));
+        Assert.assertEquals(2 * n - 1, root.getDescendants().size());
+        Assert.assertEquals(n, root.getDescendantsOfType(L).size());
+
+        int[] count = new int[1];
+        VisitorHelper.visit(root, new Object() {
+            @BeforeEachNode
+            @SuppressWarnings("unused")
+            public void count(AstNode node) {
+                count[0]++;
+            }
+        });
+        Assert.assertEquals(root.descendants().count() + 1, count[0]);
+    }
+}
@@ -0,0 +1,114 @@
+package net.jr.parser.ast;
+
+import net.jr.common.Position;
+import net.jr.common.Symbol;
+import net.jr.lexer.Lexemes;
+import net.jr.lexer.Token;
+import net.jr.lexer.basicterminals.SingleChar;
+import net.jr.parser.Grammar;
+import net.jr.parser.NonTerminal;
+import net.jr.parser.ParseOptions;
+import net.jr.parser.Parser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class CompactAstNodeFactoryTest {
+
+    private static final Symbol S = new NonTerminal("S");
+
+    private static final SingleChar x = new SingleChar('x');
+
+    private static final SingleChar comma = new SingleChar(',');
+
+    private static Parser createParser() {
+        Grammar grammar = new Grammar();
+        //list() rewrites the children of the nodes in a rule action
+        grammar.addRule(S, grammar.list(true, comma, x));
+        return grammar.createParser();
+    }
+
+    @Test
+    public void testSameTree() {
+        Parser parser = createParser();
+        for (String txt : new String[]{"", "x", "x,x", "x,x,x,x,x"}) {
+            CompactAstNodeFactory factory = new CompactAstNodeFactory();
+            AstNode expected = parser.parse(txt);
+            AstNode actual = parser.parse(txt, ParseOptions.defaults().withAstNodeFactory(factory));
+            Assert.assertEquals(expected.repr(), actual.repr());
+            Assert.assertEquals(expected.getFirstChild().getChildren().size(), actual.getFirstChild().getChildren().size());
+            Assert.assertEquals(expected.getDescendantsOfType(x).size(), actual.getDescendantsOfType(x).size());
+            Assert.assertSame(expected.getRule(), actual.getRule());
+        }
+    }
+
+    @Test
+    public void testViews() {
+        CompactAstNodeFactory factory = new CompactAstNodeFactory();
+        AstNode root = createParser().parse("x,x,x", ParseOptions.defaults().withAstNodeFactory(factory));
+        AstNode list = root.getFirstChild();
+        //the separators are removed from the flattened list
+        Assert.assertEquals(3, list.getChildren().size());
+        Assert.assertEquals(list, root.getFirstChild());
+        Assert.assertNotSame(list, root.getFirstChild());
+        Assert.assertEquals(list.hashCode(), root.getFirstChild().hashCode());
+        Assert.assertEquals("x", list.getLastChild().asToken().getText());
+        Assert.assertEquals(x, list.getChildAt(1).getSymbol());
+        Assert.assertNull(list.getChildAt(1).getRule());
+        Assert.assertTrue(list.getChildAt(1).getChildren().isEmpty());
+        Assert.assertTrue(factory.getNodesCount() > 0);
+    }
+
+    @Test
+    public void testLongList() {
+        Parser parser = createParser();
+        StringBuilder sb = new StringBuilder("x");
+        for (int i = 1; i < 5000; i++) {
+            sb.append(",x");
+        }
+        String txt = sb.toString();
+        CompactAstNodeFactory factory = new CompactAstNodeFactory();
+        AstNode root = parser.parse(txt, ParseOptions.defaults().withAstNodeFactory(factory));
+        Assert.assertEquals(parser.parse(txt).repr(), root.repr());
+        Assert.assertEquals(5000, root.getFirstChild().getChildren().size());
+        //each flattening of the list leaves the previous list behind, that is reclaimed
+        Assert.assertTrue(factory.getChildrenCapacity() < 8 * factory.getNodesCount());
+    }
+
+    @Test
+    public void testChildrenList() {
+        CompactAstNodeFactory factory = new CompactAstNodeFactory();
+        Grammar grammar = new Grammar();
+        grammar.addRule(S, x);
+        AstNode a = factory.newNonLeafNode(grammar.getRules().get(0));
+        AstNode b = factory.newNonLeafNode(grammar.getRules().get(0));
+        AstNode[] leaves = new AstNode[4];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = factory.newLeafNode(new Token(x, new Position(1, i + 1), Integer.toString(i)));
+        }
+        a.getChildren().add(leaves[0]);
+        b.getChildren().add(leaves[1]);
+        //not at the end of the array anymore
+        a.getChildren().add(leaves[2]);
+        a.getChildren().add(1, leaves[3]);
+        Assert.assertEquals("0 3 2", a.repr());
+        Assert.assertEquals("1", b.repr());
+
+        List<AstNode> children = a.getChildren();
+        Assert.assertEquals(leaves[3], children.remove(1));
+        children.set(0, leaves[1]);
+        Assert.assertEquals("1 2", a.repr());
+        children.clear();
+        Assert.assertTrue(a.getChildren().isEmpty());
+        Assert.assertEquals("1", b.repr());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testForeignNode() {
+        Grammar grammar = new Grammar();
+        grammar.addRule(S, x);
+        AstNode node = new CompactAstNodeFactory().newNonLeafNode(grammar.getRules().get(0));
+        node.getChildren().add(new CompactAstNodeFactory().newLeafNode(new Token(Lexemes.eof(), new Position(1, 1), "")));
+    }
+}
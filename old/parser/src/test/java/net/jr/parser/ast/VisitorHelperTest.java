@@ -61,6 +61,46 @@ public class VisitorHelperTest {
         Assert.assertEquals("eb36bbf7f4d374f75061b6ba587a7509", HashUtil.md5Hex(recordedActions.getBytes()));
     }
 
+    @Test
+    public void testSeveralVisitors() {
+        Grammar grammar = new Grammar();
+        grammar.addRule(S, N);
+        grammar.addRule(N, x);
+        grammar.addRule(N, N, mult, x);
+        AstNode root = grammar.createParser().parse("x*x*x");
+
+        //the visitors of the same class do not share their state
+        Visitor first = new Visitor();
+        Visitor second = new Visitor();
+        VisitorHelper.visit(root, first);
+        VisitorHelper.visit(root, second);
+        Assert.assertFalse(first.actions.isEmpty());
+        Assert.assertEquals(first.actions, second.actions);
+
+        List<String> leaves = new ArrayList<>();
+        VisitorHelper.visit(root, new Object() {
+            @After("SingleChar")
+            @SuppressWarnings("unused")
+            public void leaf(AstNode node) {
+                leaves.add(node.asToken().getText());
+            }
+        });
+        Assert.assertEquals("[x, *, x, *, x]", leaves.toString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExceptionIsNotWrapped() {
+        Grammar grammar = new Grammar();
+        grammar.addRule(S, x);
+        VisitorHelper.visit(grammar.createParser().parse("x"), new Object() {
+            @Before("S")
+            @SuppressWarnings("unused")
+            public void fail(AstNode node) {
+                throw new IllegalStateException();
+            }
+        });
+    }
+
     public static class Visitor {
 
         List<String> actions = new ArrayList<>();
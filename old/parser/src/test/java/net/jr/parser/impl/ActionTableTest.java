@@ -3,8 +3,11 @@ package net.jr.parser.impl;
 import net.jr.common.Symbol;
 import net.jr.lexer.Lexemes;
 import net.jr.lexer.basicterminals.SingleChar;
+import net.jr.marshalling.MarshallingUtil;
 import net.jr.parser.Grammar;
 import net.jr.parser.NonTerminal;
+import net.jr.parser.ParseError;
+import net.jr.parser.Rule;
 import net.jr.parser.ast.AstNode;
 import net.jr.test.TestUtil;
 import org.junit.Assert;
@@ -83,16 +86,11 @@ public class ActionTableTest {
 
     @Test
     public void testFirstSets() {
-        ActionTable.LALR1Builder builder = new ActionTable.LALR1Builder();
-        assertOnFirst(builder.getFirstSet(grammar, V));
-        assertOnFirst(builder.getFirstSet(grammar, E));
-        assertOnFirst(builder.getFirstSet(grammar, N));
-        assertOnFirst(builder.getFirstSet(grammar, S));
-        Set<ItemSet> itemSets = builder.getAllItemSets(grammar);
-        Grammar extended = builder.makeExtendedGrammar(grammar.getRuleById(0), itemSets);
-        for (Symbol nonTerminal : extended.getNonTerminals()) {
-            assertOnFirst(builder.getFirstSet(extended, nonTerminal));
-        }
+        FirstSets firstSets = grammar.getFirstSets();
+        assertOnFirst(firstSets.getFirst(V));
+        assertOnFirst(firstSets.getFirst(E));
+        assertOnFirst(firstSets.getFirst(N));
+        assertOnFirst(firstSets.getFirst(S));
     }
 
     private void assertOnFirst(Set<Symbol> f) {
@@ -102,18 +100,6 @@ public class ActionTableTest {
 
     }
 
-    @Test
-    public void testExtendedGrammar() {
-        ActionTable.LALR1Builder builder = new ActionTable.LALR1Builder();
-        Set<ItemSet> itemSets = builder.getAllItemSets(grammar);
-        Grammar extended = builder.makeExtendedGrammar(grammar.getRuleById(0), itemSets);
-        ExtendedSymbol es = (ExtendedSymbol) extended.getTargetSymbol();
-        Assert.assertEquals(S, es.getSymbol());
-
-        Assert.assertEquals(6, grammar.getRules().size());
-        Assert.assertEquals(12, extended.getRules().size());
-    }
-
     @Test
     public void testExtendedGrammar2() {
 
@@ -135,21 +121,139 @@ public class ActionTableTest {
     }
 
     @Test
-    public void testFollowSets() {
-
+    public void testItemSetIds() {
         ActionTable.LALR1Builder builder = new ActionTable.LALR1Builder();
-        Set<ItemSet> itemSets = builder.getAllItemSets(grammar);
-        Grammar extended = builder.makeExtendedGrammar(grammar.getRuleById(0), itemSets);
+        Map<Set<Item>, Integer> ids = new HashMap<>();
+        for (ItemSet itemSet : builder.getAllItemSets(grammar)) {
+            ids.put(itemSet.getKernel(), itemSet.getId());
+        }
+        //the ids are 0..n-1, the first item set is I0
+        for (int i = 0; i < ids.size(); i++) {
+            Assert.assertTrue(ids.containsValue(i));
+        }
+        Assert.assertEquals(0, (int) ids.get(builder.getFirstItemSet(grammar).getKernel()));
+
+        //and they do not depend on the order of the expansions
+        for (int i = 0; i < 10; i++) {
+            for (ItemSet itemSet : builder.getAllItemSets(grammar)) {
+                Assert.assertEquals(ids.get(itemSet.getKernel()), (Integer) itemSet.getId());
+                for (Map.Entry<Symbol, ItemSet> transition : itemSet.getTransitions().entrySet()) {
+                    Assert.assertTrue(ids.containsKey(transition.getValue().getKernel()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLookaheads() {
+        Symbol A = new NonTerminal("A");
+        Symbol B = new NonTerminal("B");
+        SingleChar a = new SingleChar('a');
+        SingleChar b = new SingleChar('b');
+        SingleChar c = new SingleChar('c');
+        Grammar g = new Grammar();
+        g.addRule(S, A, B, c);
+        Rule aRule = g.addRule(A, a).get();
+        g.addRule(B, b);
+        Rule emptyRule = g.addEmptyRule(B).get();
 
-        ExtendedSymbol eS = extended.getNonTerminals().stream().map(s -> (ExtendedSymbol) s).filter(s -> s.getSymbol().equals(S)).findAny().get();
+        Set<ItemSet> itemSets = new ActionTable.LALR1Builder().getAllItemSets(g);
+        Map<Integer, Map<Rule, Set<Symbol>>> lookaheads = new LalrLookaheads(g, itemSets).compute(g, g.getRuleById(0));
+        Map<Rule, Set<Symbol>> all = new HashMap<>();
+        lookaheads.values().forEach(all::putAll);
 
+        //B may be empty, so A is also followed by what follows B
+        Assert.assertEquals(new HashSet<>(Arrays.asList(b, c)), all.get(aRule));
+        Assert.assertEquals(Collections.singleton(c), all.get(emptyRule));
+        Assert.assertEquals(Collections.singleton(Lexemes.eof()), all.get(g.getRuleById(0)));
+    }
+
+    @Test
+    public void testDigraph() {
+        // 0 → 1 → 2 → 1, 3 → 0
+        List<List<Integer>> relation = Arrays.asList(
+                Collections.singletonList(1), Collections.singletonList(2), Collections.singletonList(1), Collections.singletonList(0));
+        BitSet[] sets = new BitSet[4];
+        for (int i = 0; i < sets.length; i++) {
+            sets[i] = new BitSet();
+            sets[i].set(i);
+        }
+        LalrLookaheads.digraph(sets, relation);
+        Assert.assertEquals("{0, 1, 2}", sets[0].toString());
+        Assert.assertEquals("{1, 2}", sets[1].toString());
+        Assert.assertEquals("{1, 2}", sets[2].toString());
+        Assert.assertEquals("{0, 1, 2, 3}", sets[3].toString());
+    }
+
+    @Test
+    public void testLr1Tables() {
+        ActionTable lalr1 = ActionTable.lalr1(grammar);
+        ActionTable lr1 = ActionTable.lr1(grammar);
+        ActionTable minimalLr1 = ActionTable.minimalLr1(grammar);
+
+        //this grammar is LALR(1) : the states that have the same core can always be merged
+        Assert.assertTrue(lr1.getStatesCount() > lalr1.getStatesCount());
+        Assert.assertEquals(lalr1.getStatesCount(), minimalLr1.getStatesCount());
 
-        Map<Symbol, Set<? extends Symbol>> followSets = builder.getFollowSets(extended);
-        for (Map.Entry<Symbol, Set<? extends Symbol>> entry : followSets.entrySet()) {
-            //System.out.println(entry.getKey() + "    " + entry.getValue());
+        for (ActionTable actionTable : Arrays.asList(lalr1, lr1, minimalLr1)) {
+            Assert.assertEquals("x=**x", new LRParser(grammar, actionTable).parse("x=**x").repr().replaceAll("\\s", ""));
         }
     }
 
+    @Test
+    public void testLalrConflict() {
+        Symbol Z = new NonTerminal("Z");
+        Symbol A = new NonTerminal("A");
+        Symbol B = new NonTerminal("B");
+        SingleChar a = new SingleChar('a');
+        SingleChar b = new SingleChar('b');
+        SingleChar c = new SingleChar('c');
+        SingleChar d = new SingleChar('d');
+        SingleChar e = new SingleChar('e');
+        //LR(1), but not LALR(1) : the states where 'e' is reduced to A or B have the same core
+        Grammar g = new Grammar();
+        g.addRule(Z, S);
+        g.addRule(S, a, A, c);
+        g.addRule(S, a, B, d);
+        g.addRule(S, b, A, d);
+        g.addRule(S, b, B, c);
+        g.addRule(A, e);
+        g.addRule(B, e);
+        List<String> inputs = Arrays.asList("aec", "aed", "bed", "bec");
+
+        ActionTable lalr1 = ActionTable.lalr1(g);
+        Assert.assertFalse(inputs.stream().allMatch(input -> {
+            try {
+                new LRParser(g, lalr1).parse(input);
+                return true;
+            } catch (ParseError parseError) {
+                return false;
+            }
+        }));
+
+        ActionTable minimalLr1 = ActionTable.minimalLr1(g);
+        Assert.assertEquals(lalr1.getStatesCount() + 1, minimalLr1.getStatesCount());
+        Assert.assertEquals(ActionTable.lr1(g).getStatesCount(), minimalLr1.getStatesCount());
+        for (String input : inputs) {
+            Assert.assertEquals(input, new LRParser(g, minimalLr1).parse(input).repr().replaceAll("\\s", ""));
+        }
+    }
+
+    @Test
+    public void testWeakCompatibility() {
+        BitSet c = new BitSet();
+        c.set(0);
+        BitSet d = new BitSet();
+        d.set(1);
+        BitSet cd = new BitSet();
+        cd.set(0, 2);
+        Assert.assertTrue(LR1Builder.isWeaklyCompatible(new BitSet[]{c, d}, new BitSet[]{c, d}));
+        //c would be the lookahead of both items
+        Assert.assertFalse(LR1Builder.isWeaklyCompatible(new BitSet[]{c, d}, new BitSet[]{d, c}));
+        //unless the items already share a lookahead
+        Assert.assertTrue(LR1Builder.isWeaklyCompatible(new BitSet[]{cd, cd}, new BitSet[]{d, c}));
+    }
+
     @Test
     public void testCaching() {
         ActionTable actionTable = ActionTable.lalr1(grammar);
@@ -160,4 +264,102 @@ public class ActionTableTest {
         AstNode n2 = new LRParser(grammar, actionTable2).parse("x=*x");
         Assert.assertEquals(n1.repr(), n2.repr());
     }
+
+    @Test
+    public void testDeepInput() {
+        //each '*' adds two levels to the stack of the parser
+        StringBuilder sb = new StringBuilder("x=");
+        for (int i = 0; i < 50000; i++) {
+            sb.append('*');
+        }
+        sb.append('x');
+        AstNode root = new LRParser(grammar, ActionTable.lalr1(grammar)).parse(sb.toString());
+        Assert.assertEquals(sb.toString(), root.repr().replaceAll("\\s", ""));
+    }
+
+    @Test
+    public void testActionCodes() {
+        for (ActionType type : ActionType.values()) {
+            for (int param : new int[]{0, 1, 42, (1 << 28) - 1}) {
+                int code = ActionTable.encode(new Action(type, param));
+                Assert.assertNotEquals(ActionTable.NO_ACTION, code);
+                Assert.assertEquals(type, ActionTable.getActionType(code));
+                Assert.assertEquals(param, ActionTable.getActionParameter(code));
+            }
+        }
+        Assert.assertEquals(ActionTable.NO_ACTION, ActionTable.encode(null));
+    }
+
+    @Test
+    public void testCompressedTable() {
+        ActionTable actionTable = ActionTable.lalr1(grammar);
+        List<Symbol> symbols = new ArrayList<>(actionTable.getTerminals());
+        symbols.addAll(actionTable.getNonTerminals());
+        for (int i = 0; i < symbols.size(); i++) {
+            Assert.assertEquals(i, actionTable.getSymbolId(symbols.get(i)));
+        }
+        Assert.assertEquals(-1, actionTable.getSymbolId(new SingleChar('?')));
+        Assert.assertEquals(-1, actionTable.getEmptySymbolId());
+
+        for (int state = 0; state < actionTable.getStatesCount(); state++) {
+            for (Symbol symbol : symbols) {
+                Action action = actionTable.getAction(state, symbol);
+                int code = actionTable.getActionCode(state, actionTable.getSymbolId(symbol));
+                if (action != null) {
+                    Assert.assertEquals(action, ActionTable.decode(code));
+                } else if (!symbol.isTerminal()) {
+                    Assert.assertEquals(ActionTable.NO_ACTION, code);
+                } else if (code != ActionTable.NO_ACTION) {
+                    //only a default reduction may fill an empty cell
+                    Assert.assertEquals(ActionType.Reduce, ActionTable.getActionType(code));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCompressionRatio() {
+        //a list of statements, that each begin with a keyword
+        Grammar g = new Grammar();
+        Symbol list = new NonTerminal("List");
+        Symbol statement = new NonTerminal("Statement");
+        g.addRule(new NonTerminal("Start"), list);
+        g.addRule(list, statement);
+        g.addRule(list, list, statement);
+        String keywords = "abcdefghijklmnopqrst";
+        for (int i = 0; i < keywords.length(); i++) {
+            g.addRule(statement, new SingleChar(keywords.charAt(i)), x, new SingleChar(';'));
+        }
+        ActionTable actionTable = ActionTable.lalr1(g);
+        int dense = actionTable.getStatesCount() * (actionTable.getTerminals().size() + actionTable.getNonTerminals().size());
+        Assert.assertTrue(actionTable.getCompressedSize() < dense / 2);
+    }
+
+    @Test
+    public void testConsistentReductions() {
+        ActionTable actionTable = ActionTable.lalr1(grammar);
+        int consistentStates = 0;
+        for (int state = 0; state < actionTable.getStatesCount(); state++) {
+            int code = actionTable.getConsistentReduction(state);
+            if (code != ActionTable.NO_ACTION) {
+                consistentStates++;
+                //the reduction is the action for all the expected terminals
+                for (Symbol terminal : actionTable.getExpectedTerminals(state)) {
+                    Assert.assertEquals(ActionTable.decode(code), actionTable.getAction(state, terminal));
+                }
+            }
+        }
+        //V → x •, V → * E •, ...
+        Assert.assertTrue(consistentStates > 0);
+    }
+
+    @Test
+    public void testMarshallCompressedTable() {
+        ActionTable actionTable = ActionTable.lalr1(grammar);
+        ActionTable copy = MarshallingUtil.copyOf(actionTable);
+        Assert.assertEquals(actionTable.toString(), copy.toString());
+        for (int state = 0; state < actionTable.getStatesCount(); state++) {
+            Assert.assertEquals(actionTable.getExpectedTerminals(state), copy.getExpectedTerminals(state));
+        }
+    }
 }
@@ -0,0 +1,90 @@
+package net.jr.parser.impl;
+
+import net.jr.common.Symbol;
+import net.jr.lexer.Lexemes;
+import net.jr.lexer.basicterminals.SingleChar;
+import net.jr.parser.Grammar;
+import net.jr.parser.NonTerminal;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+public class FirstSetsTest {
+
+    Symbol S = new NonTerminal("S");
+    Symbol A = new NonTerminal("A");
+    Symbol B = new NonTerminal("B");
+    Symbol E = new NonTerminal("E");
+    SingleChar a = new SingleChar('a');
+    SingleChar b = new SingleChar('b');
+    SingleChar c = new SingleChar('c');
+    SingleChar x = new SingleChar('x');
+    SingleChar plus = new SingleChar('+');
+    Grammar grammar;
+
+    @Before
+    public void setup() {
+        grammar = new Grammar();
+        //S → A B c | E
+        grammar.addRule(S, A, B, c);
+        grammar.addRule(S, E);
+        //A → a | ε
+        grammar.addRule(A, a);
+        grammar.addEmptyRule(A);
+        //B → b | ε
+        grammar.addRule(B, b);
+        grammar.addEmptyRule(B);
+        //E → E + x | x
+        grammar.addRule(E, E, plus, x);
+        grammar.addRule(E, x);
+    }
+
+    @Test
+    public void testFirst() {
+        FirstSets firstSets = grammar.getFirstSets();
+        Assert.assertEquals(Collections.singleton(a), firstSets.getFirst(A));
+        Assert.assertEquals(Collections.singleton(x), firstSets.getFirst(E));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(a, b, c, x)), firstSets.getFirst(S));
+        Assert.assertEquals(Collections.singleton(plus), firstSets.getFirst(plus));
+        Assert.assertTrue(firstSets.getFirst(Lexemes.empty()).isEmpty());
+    }
+
+    @Test
+    public void testSequence() {
+        FirstSets firstSets = grammar.getFirstSets();
+        Assert.assertEquals(new HashSet<>(Arrays.asList(a, b, c)), firstSets.getFirst(A, B, c));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(a, b)), firstSets.getFirst(A, B));
+        Assert.assertTrue(firstSets.isNullable(A, B));
+        Assert.assertFalse(firstSets.isNullable(A, B, c));
+        Assert.assertTrue(firstSets.getFirst().isEmpty());
+    }
+
+    @Test
+    public void testNullable() {
+        FirstSets firstSets = grammar.getFirstSets();
+        Assert.assertEquals(new HashSet<>(Arrays.asList(A, B, Lexemes.empty())), firstSets.getNullableSymbols());
+        Assert.assertFalse(firstSets.isNullable(S));
+        Assert.assertFalse(firstSets.isNullable(x));
+    }
+
+    @Test
+    public void testCache() {
+        FirstSets firstSets = grammar.getFirstSets();
+        Assert.assertSame(firstSets, grammar.getFirstSets());
+
+        //S becomes nullable
+        grammar.addRule(S, A);
+        Assert.assertNotSame(firstSets, grammar.getFirstSets());
+        Assert.assertTrue(grammar.getFirstSets().isNullable(S));
+        Assert.assertFalse(firstSets.isNullable(S));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownSymbol() {
+        grammar.getFirstSets().getFirst(new NonTerminal("Unknown"));
+    }
+}
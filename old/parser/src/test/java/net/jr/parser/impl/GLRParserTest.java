@@ -0,0 +1,191 @@
+package net.jr.parser.impl;
+
+import net.jr.common.Symbol;
+import net.jr.lexer.Token;
+import net.jr.lexer.basicterminals.SingleChar;
+import net.jr.marshalling.MarshallingUtil;
+import net.jr.parser.Grammar;
+import net.jr.parser.NonTerminal;
+import net.jr.parser.ParseError;
+import net.jr.parser.Reducer;
+import net.jr.parser.Rule;
+import net.jr.parser.ast.AstNode;
+import net.jr.test.TestUtil;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class GLRParserTest {
+
+    Symbol S = new NonTerminal("S");
+    Symbol E = new NonTerminal("E");
+    SingleChar x = new SingleChar('x');
+    SingleChar plus = new SingleChar('+');
+
+    @BeforeClass
+    public static void setupClass() {
+        TestUtil.configureLogging();
+    }
+
+    /**
+     * S → E, E → E + E | x : the associativity of '+' is not given
+     */
+    private Grammar ambiguousGrammar() {
+        Grammar grammar = new Grammar();
+        grammar.addRule(S, E);
+        grammar.addRule(E, E, plus, E).withName("sum");
+        grammar.addRule(E, x);
+        return grammar;
+    }
+
+    private static String bracketed(AstNode node) {
+        if (node.getChildren().isEmpty()) {
+            return node.asToken().getText();
+        }
+        String repr = node.getChildren().stream().map(GLRParserTest::bracketed).collect(Collectors.joining());
+        return "sum".equals(node.getRule().getName()) ? "(" + repr + ")" : repr;
+    }
+
+    private static int countDerivations(ParseForest forest, AstNode node) {
+        int count = 0;
+        for (AstNode alternative : forest.getAlternatives(node)) {
+            int product = 1;
+            for (AstNode child : alternative.getChildren()) {
+                product *= countDerivations(forest, child);
+            }
+            count += product;
+        }
+        return count;
+    }
+
+    @Test
+    public void testAmbiguousGrammar() {
+        Grammar grammar = ambiguousGrammar();
+        ActionTable actionTable = ActionTable.lalr1(grammar);
+        Assert.assertTrue(actionTable.getConflictsCount() > 0);
+
+        GLRParser parser = new GLRParser(grammar, actionTable);
+        ParseForest forest = parser.parseForest("x+x+x");
+        Assert.assertTrue(forest.isAmbiguous());
+        Assert.assertEquals("x+x+x", forest.getRoot().repr().replaceAll("\\s", ""));
+
+        Set<AstNode> ambiguousNodes = forest.getAmbiguousNodes();
+        Assert.assertEquals(1, ambiguousNodes.size());
+        List<String> derivations = forest.getAlternatives(ambiguousNodes.iterator().next()).stream()
+                .map(GLRParserTest::bracketed).sorted().collect(Collectors.toList());
+        Assert.assertEquals(Arrays.asList("((x+x)+x)", "(x+(x+x))"), derivations);
+
+        //4 operands : the last '+' may be any of the 3, and there are 5 ways to put the brackets
+        forest = parser.parseForest("x+x+x+x");
+        AstNode sum = forest.getAmbiguousNodes().stream()
+                .filter(node -> node.repr().replaceAll("\\s", "").equals("x+x+x+x")).findFirst().get();
+        Assert.assertEquals(3, forest.getAlternatives(sum).size());
+        Assert.assertEquals(5, countDerivations(forest, forest.getRoot()));
+
+        Assert.assertFalse(parser.parseForest("x+x").isAmbiguous());
+    }
+
+    @Test
+    public void testReducer() {
+        GLRParser parser = ambiguousGrammar().createGLRParser();
+        Object result = parser.parse("x+x+x+x", (Rule rule, List<Object> values) -> {
+            if (values.size() == 1) {
+                return values.get(0) instanceof Token ? 1 : values.get(0);
+            }
+            return (Integer) values.get(0) + (Integer) values.get(2);
+        });
+        Assert.assertEquals(4, result);
+    }
+
+    @Test
+    public void testReducerWithRepetition() {
+        //S → oneOrMore(E) z, E → a | a a : the stacks share the list of the first occurrences
+        SingleChar a = new SingleChar('a');
+        Grammar grammar = new Grammar();
+        NonTerminal es = new NonTerminal("es");
+        grammar.addRule(S, es, new SingleChar('z'));
+        grammar.addRule(es, grammar.oneOrMore(E));
+        grammar.addRule(E, a).withReduction(values -> "a");
+        grammar.addRule(E, a, a).withReduction(values -> "aa");
+        GLRParser parser = grammar.createGLRParser();
+        for (int n = 1; n <= 8; n++) {
+            String as = String.join("", Collections.nCopies(n, "a"));
+            List<?> result = (List<?>) parser.parse(as + "z", Reducer.rules());
+            //one of the derivations
+            Assert.assertEquals(as, result.stream().map(Object::toString).collect(Collectors.joining()));
+        }
+    }
+
+    @Test(expected = ParseError.class)
+    public void testParseError() {
+        ambiguousGrammar().createGLRParser().parse("x+x+");
+    }
+
+    @Test
+    public void testSameTreeAsLRParser() {
+        //the grammar of ActionTableTest, that has no conflict
+        Symbol N = new NonTerminal("N");
+        Symbol V = new NonTerminal("V");
+        SingleChar eq = new SingleChar('=');
+        SingleChar star = new SingleChar('*');
+        Grammar grammar = new Grammar();
+        grammar.addRule(S, N);
+        grammar.addRule(N, V, eq, E);
+        grammar.addRule(N, E);
+        grammar.addRule(E, V);
+        grammar.addRule(V, x);
+        grammar.addRule(V, star, E);
+
+        ActionTable actionTable = ActionTable.lalr1(grammar);
+        Assert.assertEquals(0, actionTable.getConflictsCount());
+        for (String input : Arrays.asList("x", "*x", "x=**x", "**x=x")) {
+            AstNode expected = new LRParser(grammar, actionTable).parse(input);
+            ParseForest forest = new GLRParser(grammar, actionTable).parseForest(input);
+            Assert.assertFalse(forest.isAmbiguous());
+            Assert.assertEquals(expected.repr(), forest.getRoot().repr());
+        }
+    }
+
+    @Test
+    public void testLalrConflict() {
+        //the grammar of ActionTableTest.testLalrConflict : the reduce/reduce conflict of the LALR(1) table is followed
+        Symbol Z = new NonTerminal("Z");
+        Symbol A = new NonTerminal("A");
+        Symbol B = new NonTerminal("B");
+        SingleChar a = new SingleChar('a');
+        SingleChar b = new SingleChar('b');
+        SingleChar c = new SingleChar('c');
+        SingleChar d = new SingleChar('d');
+        SingleChar e = new SingleChar('e');
+        Grammar g = new Grammar();
+        g.addRule(Z, S);
+        g.addRule(S, a, A, c);
+        g.addRule(S, a, B, d);
+        g.addRule(S, b, A, d);
+        g.addRule(S, b, B, c);
+        g.addRule(A, e);
+        g.addRule(B, e);
+
+        GLRParser parser = new GLRParser(g, ActionTable.lalr1(g));
+        for (String input : Arrays.asList("aec", "aed", "bed", "bec")) {
+            ParseForest forest = parser.parseForest(input);
+            Assert.assertFalse(forest.isAmbiguous());
+            Assert.assertEquals(input, forest.getRoot().repr().replaceAll("\\s", ""));
+        }
+    }
+
+    @Test
+    public void testMarshallConflicts() {
+        Grammar grammar = ambiguousGrammar();
+        ActionTable actionTable = ActionTable.lalr1(grammar);
+        ActionTable copy = MarshallingUtil.copyOf(actionTable);
+        Assert.assertEquals(actionTable.getConflictsCount(), copy.getConflictsCount());
+        Assert.assertTrue(new GLRParser(grammar, copy).parseForest("x+x+x").isAmbiguous());
+    }
+}